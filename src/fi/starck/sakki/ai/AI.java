@@ -1,80 +1,608 @@
 package fi.starck.sakki.ai;
 
 import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.MoveException;
+import fi.starck.sakki.tablebase.Tablebase;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Artificial intelligence for Chess.
  *
+ * Search may run on several threads at once. All of them search
+ * the same root and share a transposition table. When the main
+ * thread is done, helpers are stopped and the result of the
+ * deepest completed search is used.
+ *
+ * An instance is meant to live through a whole game. It keeps its
+ * transposition table and move ordering heuristics from move to move
+ * and follows the game as moves are made with {@link #doMove()} and
+ * {@link #play(String)}. While the opponent is thinking, it may
+ * {@link #ponder()} on the expected reply.
+ *
+ * @see Searcher
+ *
  * @author Tuomas Starck
  */
 public class AI {
     private final int MAX_DEPTH = 4;
+    private final int PONDER_DEPTH = 32;
+    private final int TABLE_BITS = 18;
 
-    private ChessTree tree;
+    private ChessNode root;
     private ChessNode node;
+    private String[] pv;
+    private TranspositionTable table;
+    private Evaluator evaluator;
+    private int threads;
+    private int depth;
+    private long timeLimit;
+    private long nodeLimit;
+    private EnumSet<Pruning> pruning;
+    private Tablebase tablebase;
+    private AnalysisCache cache;
+
+    private Heuristics[] heuristics;
+    private Searcher[] searchers;
+    private AtomicBoolean pondering;
+    private Thread[] ponderers;
+    private ArrayList<SearchListener> listeners;
+    private SearchStats stats;
+    private long started;
 
-    private int mm_laskuri;
-    private int pr_laskuri;
+    /**
+     * Constructs an AI for a game at the initial position.
+     */
+    public AI() {
+        this(new Chess());
+    }
 
+    /**
+     * Constructs a single threaded AI.
+     *
+     * @param game Position to search.
+     */
     public AI(Chess game) {
-        tree = new ChessTree(game);
+        this(game, 1);
+    }
+
+    /**
+     * @param game Position to search.
+     * @param threads Number of search threads.
+     */
+    public AI(Chess game, int threads) {
+        root = new ChessNode(game);
         node = null;
-        
-        mm_laskuri = 0;
-        pr_laskuri = 0;
+        pv = new String[0];
+        table = new TranspositionTable(TABLE_BITS);
+        evaluator = new Evaluator();
+        depth = MAX_DEPTH;
+        timeLimit = 0;
+        nodeLimit = 0;
+        pruning = EnumSet.allOf(Pruning.class);
+        tablebase = null;
+        cache = null;
+
+        listeners = new ArrayList<SearchListener>();
+        stats = null;
+        heuristics = new Heuristics[0];
+        pondering = null;
+        ponderers = null;
+
+        setThreads(threads);
+    }
+
+    /**
+     * @param n Number of search threads, at least one.
+     */
+    public final void setThreads(int n) {
+        stopPondering();
+
+        threads = Math.max(1, n);
+
+        if (heuristics.length < threads) {
+            Heuristics[] more = new Heuristics[threads];
+
+            for (int i=0; i<threads; i++) {
+                more[i] = (i < heuristics.length)? heuristics[i]: new Heuristics();
+            }
+
+            heuristics = more;
+        }
+    }
+
+    /**
+     * @return Number of search threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param d Depth of the search in halfmoves, at least one.
+     */
+    public void setDepth(int d) {
+        depth = Math.max(1, d);
+    }
+
+    /**
+     * @return Depth of the search in halfmoves.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Limit the time of a search. When time is up, the result of the
+     * deepest completed iteration is used. The first iteration is
+     * always completed.
+     *
+     * @param millis Time limit of one search in milliseconds,
+     * or zero for no limit.
+     */
+    public void setTimeLimit(long millis) {
+        timeLimit = Math.max(0, millis);
+    }
+
+    /**
+     * @return Time limit of one search in milliseconds or zero.
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Limit the nodes of a search, counted by the main search thread.
+     * When the limit is reached, the result of the deepest completed
+     * iteration is used. The first iteration is always completed.
+     *
+     * @param nodes Node limit of one search or zero for no limit.
+     */
+    public void setNodeLimit(long nodes) {
+        nodeLimit = Math.max(0, nodes);
+    }
+
+    /**
+     * @return Node limit of one search or zero.
+     */
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * @param technique Selective search technique to switch on.
+     */
+    public void enable(Pruning technique) {
+        pruning.add(technique);
+    }
+
+    /**
+     * @param technique Selective search technique to switch off.
+     */
+    public void disable(Pruning technique) {
+        pruning.remove(technique);
+    }
+
+    /**
+     * @param technique Selective search technique.
+     *
+     * @return True if the technique is in use.
+     */
+    public boolean isEnabled(Pruning technique) {
+        return pruning.contains(technique);
+    }
+
+    /**
+     * @param tablebase Endgame tablebases to consult during search,
+     * or null for none.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        stopPondering();
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * @return Endgame tablebases in use or null.
+     */
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Look up positions in a cache before searching them, and store
+     * the results of new searches in it. Results of searches shallower
+     * than the current depth setting are not used.
+     *
+     * @param cache Cache of analysed positions or null for none.
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return Cache of analysed positions in use or null.
+     */
+    public AnalysisCache getAnalysisCache() {
+        return cache;
+    }
+
+    /**
+     * @param listener Listener to be notified of search progress.
+     */
+    public void addListener(SearchListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener no longer to be notified.
+     */
+    public void removeListener(SearchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Statistics of the last search, or null if nothing has
+     * been searched yet or the last result came from the analysis
+     * cache without a search.
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Jump to a new position. Everything learned so far is kept,
+     * as it may still be of use.
+     *
+     * @param game New position.
+     */
+    public void setPosition(Chess game) {
+        stopPondering();
+        root = new ChessNode(game);
+        pv = new String[0];
+    }
+
+    /**
+     * @return Current position of the game.
+     */
+    public Chess getPosition() {
+        return root;
+    }
+
+    /**
+     * Follow the game: make a move, usually the one opponent made.
+     *
+     * @param move Move in Algebraic chess notation.
+     *
+     * @throws MoveException If the move is not legal.
+     */
+    public void play(String move) throws MoveException {
+        stopPondering();
+
+        ChessNode child = root.play(move);
+
+        if (child == null) {
+            throw new MoveException("Illegal move");
+        }
+
+        root = child;
     }
 
+    /**
+     * Search for the best move and make it.
+     *
+     * @return Position after the move or null if there are no
+     * legal moves.
+     */
     public Chess doMove() {
-        int tmp = minimax(tree, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
-        System.out.println(mm_laskuri + " <- minimax | pruned -> " + pr_laskuri);
-        System.out.println("<<<" +  tmp + ">>>");
+        prepare();
+
+        Variation best = best();
+
+        node = (best == null)? null: root.play(best.getMove());
+        pv = (best == null)? new String[0]: best.getPrincipalVariation();
+
+        if (node != null) {
+            root = node;
+        }
+
         return node;
     }
 
     /**
-     * Minimax algorithm with alpha-beta pruning.
+     * Find the best line of the root, from the analysis cache if
+     * possible. Results of new searches are stored in the cache.
+     *
+     * @return Best line or null if there are no legal moves.
      */
-    private int minimax(ChessTree tree, int depth, int alpha, int beta) {
-        // System.out.println("Minimax @depth " + depth + " with [" + alpha + ", " + beta + "]");
-        // System.out.println("  " + tree.toString());
+    private Variation best() {
+        if (cache != null) {
+            Variation known = cache.get(root, depth);
+
+            if (known != null) {
+                stats = null;
+                return known;
+            }
+        }
+
+        Searcher chosen = search(new ArrayList<String>());
+
+        if (chosen.getPv().length == 0) return null;
+
+        Variation line = new Variation(chosen.getCompletedDepth(),
+            chosen.getBestScore(), chosen.getPv());
+
+        if (cache != null) {
+            cache.put(root, line);
+        }
+
+        return line;
+    }
+
+    /**
+     * Start searching the position after the reply expected by the
+     * last search. The search runs in the background until the game
+     * goes on, filling the transposition table for the next search.
+     *
+     * @return True if pondering started, false if there is no
+     * expected reply to ponder on.
+     */
+    public boolean ponder() {
+        stopPondering();
+
+        if (pv.length < 2) return false;
+
+        ChessNode expected = root.play(pv[1]);
+
+        if (expected == null) return false;
+
+        pondering = new AtomicBoolean(false);
+        ponderers = new Thread[threads];
 
-        mm_laskuri++;
+        for (int i=0; i<threads; i++) {
+            Searcher searcher = new Searcher(expected, table, evaluator,
+                heuristics[i], pondering, i, PONDER_DEPTH, pruning, null);
+            searcher.setTablebase(tablebase);
 
-        if (depth >= MAX_DEPTH) {
-            return tree.getValue();
+            ponderers[i] = new Thread(searcher, "sakki-ponder-" + i);
+            ponderers[i].setDaemon(true);
+            ponderers[i].start();
         }
 
-        if (tree.getPlayer()) {
-            for (ChessTree child : tree) {
-                alpha = Math.max(alpha, minimax(child, depth+1, alpha, beta));
+        return true;
+    }
+
+    /**
+     * @return True if pondering is going on.
+     */
+    public boolean isPondering() {
+        if (ponderers == null) return false;
+
+        for (Thread thread : ponderers) {
+            if (thread.isAlive()) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Stop pondering and wait for the pondering threads to finish.
+     */
+    public void stopPondering() {
+        if (ponderers == null) return;
+
+        pondering.set(true);
+        join(ponderers, 0);
+
+        pondering = null;
+        ponderers = null;
+    }
+
+    /**
+     * Get ready for a new search.
+     */
+    private void prepare() {
+        stopPondering();
+
+        for (Heuristics h : heuristics) {
+            h.age();
+        }
+    }
+
+    /**
+     * Multi-PV analysis. Find the best lines one at a time: each
+     * search leaves out the first moves of the lines already found.
+     * All the searches share the transposition table, so the later
+     * ones are much cheaper than the first. The best line may come
+     * from the analysis cache.
+     *
+     * @param k Number of lines wanted.
+     *
+     * @return Up to k best lines, best first. Fewer lines are returned
+     * only if there are fewer legal moves.
+     */
+    public List<Variation> analyse(int k) {
+        prepare();
+
+        ArrayList<String> found = new ArrayList<String>();
+        ArrayList<Variation> lines = new ArrayList<Variation>();
+
+        while (lines.size() < k) {
+            Variation line;
+
+            if (lines.isEmpty()) {
+                line = best();
+            }
+            else {
+                Searcher chosen = search(found);
 
-                if (beta <= alpha) {
-                    pr_laskuri += 30 * (MAX_DEPTH - depth);
-                    break;
-                }
+                line = (chosen.getPv().length == 0)? null: new Variation(
+                    chosen.getCompletedDepth(), chosen.getBestScore(), chosen.getPv());
             }
 
-            if (depth == 1) {
-                node = tree.getNode();
+            if (line == null) break;
+
+            found.add(line.getMove());
+            lines.add(line);
+
+            if (lines.size() == 1) {
+                node = root.play(line.getMove());
+                pv = line.getPrincipalVariation();
             }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Run a search on all threads.
+     *
+     * @param excluded Root moves not to be searched.
+     *
+     * @return Searcher whose result is to be used.
+     */
+    private Searcher search(List<String> excluded) {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        Thread[] helpers = new Thread[threads];
+
+        searchers = new Searcher[threads];
+        started = System.nanoTime();
+        for (HashTable cache : caches()) {
+            if (cache != null) cache.resetStats();
+        }
 
-            return alpha;
+        for (int i=0; i<threads; i++) {
+            searchers[i] = new Searcher(root, table, evaluator, heuristics[i],
+                stop, i, depth, pruning, (i == 0)? this: null);
+            searchers[i].exclude(excluded);
+            searchers[i].setTablebase(tablebase);
+            searchers[i].setDeadline((timeLimit == 0)? 0: started + 1000000L * timeLimit);
+            searchers[i].setNodeLimit(nodeLimit);
         }
-        else {
-            for (ChessTree child : tree) {
-                beta = Math.min(beta, minimax(child, depth+1, alpha, beta));
 
-                if (beta <= alpha) {
-                    pr_laskuri += 30 * (MAX_DEPTH - depth);
-                    break;
-                }
+        for (int i=1; i<threads; i++) {
+            helpers[i] = new Thread(searchers[i], "sakki-helper-" + i);
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+
+        searchers[0].run();
+        stop.set(true);
+        join(helpers, 1);
+
+        Searcher chosen = merge(searchers);
+
+        stats = snapshot(chosen);
+
+        for (SearchListener listener : listeners) {
+            listener.searchCompleted(stats);
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Wait for threads to finish.
+     *
+     * @param threads Threads.
+     * @param from Index of the first thread to wait for.
+     */
+    private static void join(Thread[] threads, int from) {
+        for (int i=from; i<threads.length; i++) {
+            try {
+                threads[i].join();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
             }
+        }
+    }
 
-            if (depth == 1) {
-                node = tree.getNode();
+    /**
+     * Called by the main searcher after each completed iteration.
+     *
+     * @param main Main searcher.
+     */
+    void iterationCompleted(Searcher main) {
+        if (listeners.isEmpty()) return;
+
+        SearchStats progress = snapshot(main);
+
+        for (SearchListener listener : listeners) {
+            listener.iterationCompleted(progress);
+        }
+    }
+
+    /**
+     * Collect statistics. Counters of helper threads may be read
+     * while they are still searching, so during the search totals
+     * are approximate.
+     *
+     * @param result Searcher whose result is reported.
+     *
+     * @return Statistics of the search so far.
+     */
+    private SearchStats snapshot(Searcher result) {
+        long[] counters = new long[4];
+        long[] tables = new long[6];
+        HashTable[] caches = caches();
+
+        for (Searcher searcher : searchers) {
+            counters[0] += searcher.nodes;
+            counters[1] += searcher.qnodes;
+            counters[2] += searcher.cutoffs;
+            counters[3] += searcher.firstCutoffs;
+        }
+
+        for (int i=0; i<caches.length; i++) {
+            if (caches[i] != null) {
+                tables[2*i] = caches[i].getProbes();
+                tables[2*i+1] = caches[i].getHits();
             }
+        }
+
+        return new SearchStats(result.getCompletedDepth(),
+            result.getBestScore(), result.getPv(), counters,
+            tables, System.nanoTime() - started,
+            searchers[0].getIterationTimes(), searchers[0].getIterationNodes());
+    }
 
-            return beta;
+    /**
+     * @return Transposition table, pawn table and evaluation cache.
+     * The latter two are null if the evaluator does not cache.
+     */
+    private HashTable[] caches() {
+        return new HashTable[] {
+            table, evaluator.getPawnTable(), evaluator.getEvalCache()
+        };
+    }
+
+    /**
+     * @return Principal variation of the last search, i.e. the
+     * expected line of play starting from the chosen move.
+     */
+    public String[] getPrincipalVariation() {
+        return pv.clone();
+    }
+
+    /**
+     * Choose the searcher which completed the deepest iteration.
+     * On equal depth, main searcher and then lower ids are preferred.
+     *
+     * @param searchers All the searchers.
+     *
+     * @return Searcher whose result is to be used.
+     */
+    private Searcher merge(Searcher[] searchers) {
+        Searcher chosen = searchers[0];
+
+        for (Searcher searcher : searchers) {
+            if (searcher.getCompletedDepth() > chosen.getCompletedDepth()) {
+                chosen = searcher;
+            }
         }
+
+        return chosen;
     }
 }
@@ -0,0 +1,238 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.MoveCode;
+import fi.starck.sakki.board.X88Backend;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Cache of analysed positions, keyed by the Zobrist key. Popular
+ * positions are looked up instead of searched again.
+ *
+ * There are two tiers: a fixed number of results in memory, evicted
+ * by the CLOCK algorithm (an approximation of least recently used),
+ * and optionally a memory mapped file (see {@link AnalysisFile}),
+ * which keeps results over restarts. A lookup is answered by a result
+ * of at least the requested depth, whichever tier it is found in.
+ *
+ * Positions are told apart by the key only, so the earlier moves of
+ * the game are not taken into account: a cached line may walk into a
+ * repetition the search would have avoided.
+ *
+ * A cache can be shared by several {@link AI}s on different threads.
+ *
+ * @see AI#setAnalysisCache(AnalysisCache)
+ *
+ * @author Tuomas Starck
+ */
+public class AnalysisCache {
+    private final long[] keys;
+    private final Variation[] lines;
+    private final boolean[] referenced;
+    private final HashMap<Long, Integer> slots;
+    private int used;
+    private int hand;
+
+    private final AnalysisFile file;
+    private final X88Backend board;
+    private final int[] moves;
+    private final int[] legal;
+
+    /**
+     * Cache in memory only.
+     *
+     * @param entries Number of results kept in memory.
+     */
+    public AnalysisCache(int entries) {
+        this(entries, null);
+    }
+
+    /**
+     * Cache in memory and on disk. File is created if there is none.
+     *
+     * @param entries Number of results kept in memory.
+     * @param file Cache file.
+     * @param bits New file has room for 2^bits results.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public AnalysisCache(int entries, File file, int bits) throws IOException {
+        this(entries, AnalysisFile.open(file, bits));
+    }
+
+    private AnalysisCache(int entries, AnalysisFile file) {
+        if (entries < 1) {
+            throw new IllegalArgumentException("No room for entries: " + entries);
+        }
+
+        keys = new long[entries];
+        lines = new Variation[entries];
+        referenced = new boolean[entries];
+        slots = new HashMap<Long, Integer>();
+        used = 0;
+        hand = 0;
+
+        this.file = file;
+        board = new X88Backend();
+        moves = new int[AnalysisFile.MAX_PV];
+        legal = new int[MoveCode.MAX_MOVES];
+    }
+
+    /**
+     * @param game Position.
+     * @param depth Depth wanted.
+     *
+     * @return Best line of the position, searched to at least given
+     * depth, or null if there is none.
+     */
+    public synchronized Variation get(Chess game, int depth) {
+        long key = game.getKey();
+        Integer slot = slots.get(key);
+
+        if (slot != null && lines[slot].getDepth() >= depth) {
+            referenced[slot] = true;
+            return lines[slot];
+        }
+
+        if (file == null) return null;
+
+        int at = file.find(key);
+
+        if (at == -1 || file.depth(at) < depth) return null;
+
+        Variation line = decode(game, file.depth(at), file.score(at), file.moves(at, moves));
+
+        if (line != null) {
+            remember(key, line);
+        }
+
+        return line;
+    }
+
+    /**
+     * Store the best line of a position. Result of an earlier search
+     * is only replaced by a result of equal or deeper search.
+     *
+     * @param game Position.
+     * @param line Best line found.
+     */
+    public synchronized void put(Chess game, Variation line) {
+        long key = game.getKey();
+
+        remember(key, line);
+
+        if (file == null) return;
+
+        String[] pv = line.getPrincipalVariation();
+        int length = 0;
+
+        while (length < Math.min(pv.length, AnalysisFile.MAX_PV)) {
+            int move = MoveCode.parse(pv[length]);
+
+            if (move == MoveCode.NONE) break;
+
+            moves[length++] = move;
+        }
+
+        if (length > 0) {
+            file.store(key, line.getDepth(), line.getScore(), moves, length);
+        }
+    }
+
+    /**
+     * Keep a line in memory, evicting another one if necessary.
+     * New lines start unreferenced, so that a line has to be asked
+     * for to survive a sweep of the clock hand.
+     */
+    private void remember(long key, Variation line) {
+        Integer slot = slots.get(key);
+
+        if (slot == null) {
+            slot = victim();
+            slots.put(key, slot);
+            referenced[slot] = false;
+        }
+        else if (lines[slot].getDepth() > line.getDepth()) {
+            return;
+        }
+        else {
+            referenced[slot] = true;
+        }
+
+        keys[slot] = key;
+        lines[slot] = line;
+    }
+
+    /**
+     * CLOCK: the hand sweeps over the slots, clearing reference bits,
+     * and stops at the first slot not referenced since the last sweep.
+     *
+     * @return Free slot.
+     */
+    private int victim() {
+        if (used < lines.length) {
+            return used++;
+        }
+
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % lines.length;
+        }
+
+        int slot = hand;
+
+        hand = (hand + 1) % lines.length;
+        slots.remove(keys[slot]);
+
+        return slot;
+    }
+
+    /**
+     * Turn stored moves back into a line, checking each move for
+     * legality. Line is cut at the first illegal move.
+     *
+     * @return Line or null if even the first move is not legal.
+     */
+    private Variation decode(Chess game, int depth, int score, int length) {
+        String[] pv = new String[length];
+        int n = 0;
+
+        board.setFen(game.toString());
+
+        for (; n<length; n++) {
+            int count = board.generate(legal, 0);
+            int i = 0;
+
+            while (i < count && legal[i] != moves[n]) i++;
+
+            if (i == count) break;
+
+            pv[n] = board.format(moves[n]);
+            board.make(moves[n]);
+        }
+
+        if (n == 0) return null;
+
+        return new Variation(depth, score, Arrays.copyOf(pv, n));
+    }
+
+    /**
+     * @return Number of results in memory.
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Write changes through to the disk. Results are kept in the
+     * file even without this, unless the system crashes.
+     */
+    public synchronized void flush() {
+        if (file != null) {
+            file.flush();
+        }
+    }
+}
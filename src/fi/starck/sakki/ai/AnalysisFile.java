@@ -0,0 +1,216 @@
+package fi.starck.sakki.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Disk tier of the analysis cache: a hash table of search results in
+ * a memory mapped file, which survives restarts of the program.
+ *
+ * File is a header and a fixed number of slots:
+ * <pre>
+ *  int      magic
+ *  int      bits, the table having 2^bits slots
+ *  long     reserved
+ *  slot[]   slots of {@link #SLOT} bytes
+ * </pre>
+ * Each slot is the key xor'ed with the data, the data and the moves
+ * of the principal variation (see {@link fi.starck.sakki.board.MoveCode})
+ * as shorts. Data is packed into a single long:
+ * <pre>
+ *  bits  0-31  score
+ *  bits 32-39  depth
+ *  bits 40-47  number of moves
+ *  bit  62     slot in use
+ * </pre>
+ * A slot torn by a crash no longer matches its key. The moves are not
+ * covered by the check, so they must be verified when read.
+ *
+ * Access is not synchronized.
+ *
+ * @see AnalysisCache
+ *
+ * @author Tuomas Starck
+ */
+class AnalysisFile extends HashTable {
+    static final int MAGIC = 0x53414331;
+    static final int MAX_BITS = 25;
+    static final int MAX_PV = 16;
+
+    private static final int HEADER = 16;
+    private static final int SLOT = 16 + 2 * MAX_PV;
+    private static final long USED = 1L << 62;
+
+    private final MappedByteBuffer buffer;
+
+    private AnalysisFile(int bits, MappedByteBuffer buffer) {
+        super(bits);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Open a cache file, creating it if there is none. Size of an
+     * existing file is read from its header.
+     *
+     * @param file Cache file.
+     * @param bits File of 2^bits slots is created.
+     *
+     * @return Mapped file.
+     *
+     * @throws IOException If the file cannot be mapped or is not a
+     * cache file.
+     */
+    static AnalysisFile open(File file, int bits) throws IOException {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException("Bits out of range: " + bits);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            boolean fresh = (raf.length() == 0);
+
+            if (!fresh) {
+                if (raf.length() < HEADER || raf.readInt() != MAGIC) {
+                    throw new IOException(file + ": Not an analysis cache");
+                }
+
+                bits = raf.readInt();
+
+                if (bits < 1 || bits > MAX_BITS || raf.length() != size(bits)) {
+                    throw new IOException(file + ": Corrupt analysis cache");
+                }
+            }
+
+            MappedByteBuffer buffer = raf.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, size(bits));
+
+            if (fresh) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, bits);
+            }
+
+            return new AnalysisFile(bits, buffer);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return Size of a file of 2^bits slots in bytes.
+     */
+    private static long size(int bits) {
+        return HEADER + ((long) SLOT << bits);
+    }
+
+    /**
+     * @return Offset of the slot of the key.
+     */
+    private int offset(long key) {
+        return HEADER + SLOT * index(key);
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     *
+     * @return Offset of the slot holding the position or -1.
+     */
+    int find(long key) {
+        int at = offset(key);
+        long data = buffer.getLong(at + 8);
+
+        probes++;
+
+        if ((buffer.getLong(at) ^ data) == key && data != 0L) {
+            hits++;
+            return at;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param slot Offset given by {@link #find}.
+     *
+     * @return Depth of the search.
+     */
+    int depth(int slot) {
+        return (int) (buffer.getLong(slot + 8) >>> 32) & 0xff;
+    }
+
+    /**
+     * @param slot Offset given by {@link #find}.
+     *
+     * @return Score of the position.
+     */
+    int score(int slot) {
+        return (int) buffer.getLong(slot + 8);
+    }
+
+    /**
+     * @param slot Offset given by {@link #find}.
+     * @param moves Buffer of at least {@link #MAX_PV} moves.
+     *
+     * @return Number of moves read.
+     */
+    int moves(int slot, int[] moves) {
+        int length = (int) (buffer.getLong(slot + 8) >>> 40) & 0xff;
+
+        for (int i=0; i<length; i++) {
+            moves[i] = buffer.getShort(slot + 16 + 2 * i) & 0xffff;
+        }
+
+        return length;
+    }
+
+    /**
+     * Store a search result. Existing result of the same position is
+     * replaced only by a result of equal or deeper search, results of
+     * other positions always.
+     *
+     * @param key Zobrist key of the position.
+     * @param depth Depth of the search.
+     * @param score Score of the position.
+     * @param moves Principal variation.
+     * @param length Number of moves, at most {@link #MAX_PV}.
+     */
+    void store(long key, int depth, int score, int[] moves, int length) {
+        int at = find(key);
+
+        if (at != -1 && depth(at) > depth) return;
+
+        at = offset(key);
+
+        long data = (score & 0xffffffffL)
+                  | ((long) (depth & 0xff) << 32)
+                  | ((long) (length & 0xff) << 40)
+                  | USED;
+
+        buffer.putLong(at, 0L);
+
+        for (int i=0; i<length; i++) {
+            buffer.putShort(at + 16 + 2 * i, (short) moves[i]);
+        }
+
+        buffer.putLong(at + 8, data);
+        buffer.putLong(at, key ^ data);
+    }
+
+    /**
+     * Write changes through to the disk.
+     */
+    void flush() {
+        buffer.force();
+    }
+
+    @Override
+    void clear() {
+        for (int at=HEADER; at<buffer.capacity(); at+=8) {
+            buffer.putLong(at, 0L);
+        }
+    }
+}
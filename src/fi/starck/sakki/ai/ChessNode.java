@@ -1,73 +1,45 @@
 package fi.starck.sakki.ai;
 
 import fi.starck.sakki.board.Chess;
-import fi.starck.sakki.board.MoveException;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 /**
- * Chess game tree node (todo: with an evaluation of game status).
+ * Chess game tree node.
  *
  * @author Tuomas Starck
  */
-class ChessNode extends Chess implements Iterable<ChessNode>, Iterator<ChessNode> {
-    private ChessNode child;
-    private ArrayList<String> moves;
-
+class ChessNode extends Chess {
     public ChessNode(String fen) {
         super(fen);
-        moves = new ArrayList<String>();
-    }
-
-    private ChessNode(String fen, String move) throws MoveException {
-        super(fen);
-        moves = new ArrayList<String>();
-        this.move(move);
-    }
-
-    int getValue() {
-        return 3;
     }
 
-    @Override
-    public Iterator iterator() {
-        moves.addAll(board.getAllMoves(this.getTurn()));
-        
-        return this;
-    }
-
-    @Override
-    public boolean hasNext() {
-        String move;
-
-        try {
-            move = moves.remove(0);
-        }
-        catch (IndexOutOfBoundsException ioob) {
-            child = null;
-            return false;
-        }
-
-        try {
-            child = new ChessNode(this.toString(), move);
-        }
-        catch (MoveException me) {
-            /* FIXME:
-             * Which moves are invalid and why?
-             */
-            return hasNext();
-        }
-
-        return true;
+    /**
+     * Node of a game position, knowing the earlier positions of the
+     * game for detection of repetitions.
+     *
+     * @param game Position.
+     */
+    public ChessNode(Chess game) {
+        super(game.toString());
+        this.inherit(game);
     }
 
-    @Override
-    public ChessNode next() {
-        return child;
+    private ChessNode(ChessNode parent) {
+        super(parent);
     }
 
-    @Override
-    public void remove() {
-        throw new UnsupportedOperationException();
+    /**
+     * Create a child node by making a move.
+     *
+     * @param move Move in Algebraic chess notation.
+     *
+     * @return New node or null, if the move is not legal.
+     */
+    ChessNode play(String move) {
+        ChessNode child = new ChessNode(this);
+
+        /* Moves listed by the pieces may still leave own king
+         * in check, and such moves are rejected here.
+         */
+        return child.tryMove(move).isLegal()? child: null;
     }
 }
@@ -0,0 +1,72 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Evaluation cache keyed by the full position key. Same positions
+ * are evaluated over and over again through transpositions and
+ * repeated iterations of the search.
+ *
+ * Table is lock-free in the same way as the transposition table:
+ * key is stored xor'ed with the data.
+ *
+ * @see Evaluator
+ *
+ * @author Tuomas Starck
+ */
+class EvalCache extends HashTable {
+    private static final long USED = 1L << 62;
+
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * @param bits Table has 2^bits entries.
+     */
+    EvalCache(int bits) {
+        super(bits);
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     *
+     * @return Packed entry or zero if there is none.
+     */
+    long probe(long key) {
+        int i = index(key);
+        long d = data[i];
+
+        probes++;
+
+        if ((keys[i] ^ d) == key && d != 0L) {
+            hits++;
+            return d;
+        }
+
+        return 0L;
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     * @param score Score of the position.
+     */
+    void store(long key, int score) {
+        int i = index(key);
+        long d = (score & 0xffffffffL) | USED;
+
+        data[i] = d;
+        keys[i] = key ^ d;
+    }
+
+    @Override
+    void clear() {
+        for (int i=0; i<data.length; i++) {
+            keys[i] = 0L;
+            data[i] = 0L;
+        }
+    }
+
+    static int score(long entry) {
+        return (int) entry;
+    }
+}
@@ -0,0 +1,239 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.Type;
+import fi.starck.sakki.board.X88Backend;
+
+/**
+ * Static evaluation of a position: the tapered piece-square score
+ * maintained by the board plus an evaluation of pawn structure.
+ *
+ * Pawn structure is cached in a pawn hash table and whole evaluations
+ * in an evaluation cache. Both tables may be shared by several search
+ * threads.
+ *
+ * @see PawnTable
+ * @see EvalCache
+ *
+ * @author Tuomas Starck
+ */
+public class Evaluator {
+    private static final int PAWN_BITS = 14;
+    private static final int EVAL_BITS = 16;
+
+    private static final int DOUBLED = -12;
+    private static final int ISOLATED = -15;
+    private static final int CHAIN = 5;
+    private static final int[] PASSED = {0, 5, 10, 20, 35, 60, 100, 0};
+
+    /* Pawn masks by file, and by side and square */
+    private static final long[] FILES = new long[8];
+    private static final long[] NEIGHBOURS = new long[8];
+    private static final long[][] DEFENDERS = new long[2][64];
+    private static final long[][] SPANS = new long[2][64];
+
+    static {
+        for (int j=0; j<8; j++) {
+            FILES[j] = 0x0101010101010101L << j;
+        }
+
+        for (int j=0; j<8; j++) {
+            NEIGHBOURS[j] = ((j > 0)? FILES[j-1]: 0L) | ((j < 7)? FILES[j+1]: 0L);
+        }
+
+        for (int sq=0; sq<64; sq++) {
+            int i = sq >> 3;
+            int j = sq & 7;
+
+            for (int side=0; side<2; side++) {
+                int forward = (side == 0)? -1: 1;
+                int back = i - forward;
+
+                if (0 <= back && back < 8) {
+                    if (j > 0) DEFENDERS[side][sq] |= 1L << (8 * back + j - 1);
+                    if (j < 7) DEFENDERS[side][sq] |= 1L << (8 * back + j + 1);
+                }
+
+                for (int r = i + forward; 0 <= r && r < 8; r += forward) {
+                    for (int f = Math.max(0, j-1); f <= Math.min(7, j+1); f++) {
+                        SPANS[side][sq] |= 1L << (8 * r + f);
+                    }
+                }
+            }
+        }
+    }
+
+    private final PawnTable pawns;
+    private final EvalCache cache;
+
+    /**
+     * Evaluator with caches.
+     */
+    public Evaluator() {
+        this(true);
+    }
+
+    /**
+     * @param cached False to evaluate everything from scratch.
+     */
+    public Evaluator(boolean cached) {
+        pawns = cached? new PawnTable(PAWN_BITS): null;
+        cache = cached? new EvalCache(EVAL_BITS): null;
+    }
+
+    /**
+     * @param game Position.
+     *
+     * @return Score in centipawns from white's point of view.
+     */
+    public int evaluate(Chess game) {
+        long key = game.getKey();
+
+        if (cache != null) {
+            long entry = cache.probe(key);
+
+            if (entry != 0L) {
+                return EvalCache.score(entry);
+            }
+        }
+
+        long white = 0L;
+        long black = 0L;
+
+        for (int sq=0; sq<64; sq++) {
+            Type type = game.typeAt(sq);
+
+            if (type == Type.P) white |= 1L << sq;
+            if (type == Type.p) black |= 1L << sq;
+        }
+
+        int score = game.getEvaluation() + pawns(game.getPawnKey(), white, black);
+
+        if (cache != null) {
+            cache.store(key, score);
+        }
+
+        return score;
+    }
+
+    /**
+     * Same as {@link #evaluate(Chess)}, but nothing is allocated.
+     *
+     * @param board Position.
+     *
+     * @return Score in centipawns from white's point of view.
+     */
+    public int evaluate(X88Backend board) {
+        long key = board.getKey();
+
+        if (cache != null) {
+            long entry = cache.probe(key);
+
+            if (entry != 0L) {
+                return EvalCache.score(entry);
+            }
+        }
+
+        int score = board.getEvaluation()
+            + pawns(board.getPawnKey(), board.getPawns(true), board.getPawns(false));
+
+        if (cache != null) {
+            cache.store(key, score);
+        }
+
+        return score;
+    }
+
+    /**
+     * @param key Pawn key of the position.
+     * @param white White pawns as a bit mask.
+     * @param black Black pawns as a bit mask.
+     *
+     * @return Score of the pawn structure.
+     */
+    int pawns(long key, long white, long black) {
+        if (pawns != null) {
+            long entry = pawns.probe(key);
+
+            if (entry != 0L) {
+                return PawnTable.score(entry);
+            }
+        }
+
+        int score = structure(white, black);
+
+        if (pawns != null) {
+            pawns.store(key, score);
+        }
+
+        return score;
+    }
+
+    /**
+     * Evaluate pawn structure. Doubled and isolated pawns are weak,
+     * pawns defended by other pawns form strong chains and passed
+     * pawns are the more valuable the further they are advanced.
+     *
+     * Pawns are given as bit masks, where bit <tt>8 * rank + file</tt>
+     * is set for each pawn (rank 0 being the 8th rank, as in the game
+     * board state).
+     *
+     * @param white White pawns.
+     * @param black Black pawns.
+     *
+     * @return Score from white's point of view.
+     */
+    static int structure(long white, long black) {
+        return side(white, black, true) - side(black, white, false);
+    }
+
+    /**
+     * @return Score of the pawn structure of one side.
+     */
+    private static int side(long own, long enemy, boolean white) {
+        int score = 0;
+
+        for (int j=0; j<8; j++) {
+            int count = Long.bitCount(own & FILES[j]);
+
+            if (count > 1) {
+                score += DOUBLED * (count - 1);
+            }
+
+            if (count > 0 && (own & NEIGHBOURS[j]) == 0L) {
+                score += ISOLATED * count;
+            }
+        }
+
+        int s = white? 0: 1;
+
+        for (long bits = own; bits != 0L; bits &= bits - 1) {
+            int sq = Long.numberOfTrailingZeros(bits);
+
+            if ((own & DEFENDERS[s][sq]) != 0L) {
+                score += CHAIN;
+            }
+
+            if ((enemy & SPANS[s][sq]) == 0L) {
+                int advance = white? 6 - (sq >> 3): (sq >> 3) - 1;
+                score += PASSED[Math.max(0, advance)];
+            }
+        }
+
+        return score;
+    }
+
+    /**
+     * @return Pawn hash table or null.
+     */
+    PawnTable getPawnTable() {
+        return pawns;
+    }
+
+    /**
+     * @return Evaluation cache or null.
+     */
+    EvalCache getEvalCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,70 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Common base of the hash tables used by the search: sizing, indexing
+ * and instrumentation.
+ *
+ * Tables are shared by search threads without locking, so probe and
+ * hit counters are not exact when several threads are searching. They
+ * are statistics, not bookkeeping.
+ *
+ * @author Tuomas Starck
+ */
+abstract class HashTable {
+    private final int mask;
+
+    protected long probes;
+    protected long hits;
+
+    /**
+     * @param bits Table has 2^bits entries.
+     */
+    protected HashTable(int bits) {
+        mask = (1 << bits) - 1;
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * @param key Zobrist key.
+     *
+     * @return Index of the key in the table.
+     */
+    protected final int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * @return Number of entries in the table.
+     */
+    int getSize() {
+        return mask + 1;
+    }
+
+    /**
+     * @return Number of probes since the last reset.
+     */
+    long getProbes() {
+        return probes;
+    }
+
+    /**
+     * @return Number of successful probes since the last reset.
+     */
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * Reset probe and hit counters.
+     */
+    void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Forget everything.
+     */
+    abstract void clear();
+}
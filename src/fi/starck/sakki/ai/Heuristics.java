@@ -0,0 +1,110 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.MoveCode;
+
+/**
+ * Move ordering heuristics of one search thread: history of quiet
+ * moves causing cutoffs and killer moves of each ply.
+ *
+ * Heuristics outlive a single search. Before each new search they
+ * are aged, so that the knowledge of the previous moves of the game
+ * helps but does not dominate.
+ *
+ * @see Searcher
+ *
+ * @author Tuomas Starck
+ */
+class Heuristics {
+    static final int MAX_PLY = 64;
+
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    private final int[][] history;
+    private final int[][] killers;
+
+    Heuristics() {
+        history = new int[2][64 * 64];
+        killers = new int[MAX_PLY][2];
+    }
+
+    /**
+     * @param move Encoded move (see {@link MoveCode}).
+     *
+     * @return Index of departure and target square pair.
+     */
+    static int squares(int move) {
+        return move & 0xfff;
+    }
+
+    /**
+     * @param side Side to move.
+     *
+     * @return History table of the side, indexed by {@link #squares}.
+     */
+    int[] history(boolean side) {
+        return history[side? 0: 1];
+    }
+
+    /**
+     * History heuristic: quiet moves which cause cutoffs deep in
+     * the tree are likely to be good elsewhere too.
+     *
+     * @param side Side to move.
+     * @param move Quiet move which caused a cutoff.
+     * @param depth Remaining depth.
+     */
+    void addHistory(boolean side, int move, int depth) {
+        int[] table = history[side? 0: 1];
+        int i = squares(move);
+
+        table[i] += depth * depth;
+
+        if (table[i] > HISTORY_LIMIT) {
+            for (int j=0; j<table.length; j++) {
+                table[j] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Killer heuristic: quiet move which caused a cutoff is likely
+     * to cause one in sibling positions too. Two are kept per ply.
+     *
+     * @param ply Distance from the root.
+     * @param move Quiet move which caused a cutoff.
+     */
+    void addKiller(int ply, int move) {
+        if (move != killers[ply][0]) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    /**
+     * @param ply Distance from the root.
+     * @param move Move.
+     *
+     * @return True if move is a killer of the ply.
+     */
+    boolean isKiller(int ply, int move) {
+        return move == killers[ply][0] || move == killers[ply][1];
+    }
+
+    /**
+     * Prepare for a search from a root two halfmoves further in
+     * the game. History counts are halved and killers move two
+     * plies closer to the root.
+     */
+    void age() {
+        for (int[] table : history) {
+            for (int j=0; j<table.length; j++) {
+                table[j] /= 2;
+            }
+        }
+
+        for (int ply=0; ply<MAX_PLY; ply++) {
+            killers[ply][0] = (ply+2 < MAX_PLY)? killers[ply+2][0]: MoveCode.NONE;
+            killers[ply][1] = (ply+2 < MAX_PLY)? killers[ply+2][1]: MoveCode.NONE;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.MoveCode;
+import fi.starck.sakki.board.X88Backend;
+
+/**
+ * Solver of mate puzzles by depth-first proof-number search (df-pn).
+ *
+ * Side to move is the attacker. A position is proven when attacker
+ * can force a mate within the given number of moves and disproven
+ * when defender can avoid it. Proof number of a position is the
+ * number of positions which still need to be proven to prove it, and
+ * disproof number the same for disproving. Search always expands the
+ * most proving position, going deeper only as long as the numbers stay
+ * below thresholds set by the parent. Unlike the regular search, the
+ * solver has no evaluation and no fixed depth: it follows forcing
+ * lines as deep as they go.
+ *
+ * A new position is not counted as one position to prove: after
+ * attacker's move, its proof number is the number of replies left to
+ * the defender, so that checks and moves which hem in the king are
+ * tried first. A child is searched until its
+ * numbers exceed those of the second best child by a quarter, not
+ * just by one, which saves switching back and forth between two
+ * children of about equal promise.
+ *
+ * Once a mate is found, solver keeps looking for a shorter one until
+ * there is none or its share of the node budget runs out. Showing that
+ * there is no shorter mate may take far longer than finding the mate,
+ * so the share is a few times the nodes the first mate took.
+ *
+ * Positions are expanded on an {@link X88Backend} by making and taking
+ * back moves, and looked up in the table by its incremental key. Moves
+ * and keys of the children are kept in buffers allocated once per
+ * puzzle, one per ply.
+ *
+ * <p>{@link http://chessprogramming.wikispaces.com/Proof-number+search}</p>
+ *
+ * @see ProofTable
+ *
+ * @author Tuomas Starck
+ */
+public class MateSolver {
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final int TABLE_BITS = 20;
+    private static final long NODE_LIMIT = 100000;
+
+    /* Replies assumed after a move which is not looked into */
+    private static final int QUIET = 4;
+
+    /* Nodes for shorter mates per node spent on the first one,
+     * but at least a hundredth of the limit
+     */
+    private static final int SHORTER = 4;
+
+    private final ProofTable table;
+    private final X88Backend board;
+
+    private long limit;
+    private long budget;
+    private long nodes;
+    private boolean exhausted;
+    private boolean attacker;
+
+    /* Children of the positions on the current path, one row per ply */
+    private int[][] moves;
+    private long[][] keys;
+    private int[][] replies;
+
+    /* Numbers given by the latest call to numbers() */
+    private int pn;
+    private int dn;
+
+    public MateSolver() {
+        this(TABLE_BITS);
+    }
+
+    /**
+     * @param bits Hash table has 2^bits entries.
+     */
+    public MateSolver(int bits) {
+        table = new ProofTable(bits);
+        board = new X88Backend();
+        limit = NODE_LIMIT;
+        nodes = 0;
+        exhausted = false;
+    }
+
+    /**
+     * @param n Largest number of positions to expand per puzzle.
+     */
+    public void setNodeLimit(long n) {
+        limit = Math.max(1, n);
+    }
+
+    /**
+     * @return Largest number of positions to expand per puzzle.
+     */
+    public long getNodeLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Number of positions expanded for the last puzzle.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return True if the node budget ran out during the last puzzle,
+     * so a missing mate may exist after all and a found one may not
+     * be the shortest.
+     *
+     * @see #setNodeLimit(long)
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Find a forced mate for the side to move.
+     *
+     * @param game Position.
+     * @param moves Largest number of attacker's moves to mate.
+     *
+     * @return The shortest mating line found, ending in checkmate, in
+     * the long form of {@link Chess#getMoves()}, or null if no mate
+     * was found.
+     */
+    public String[] solve(Chess game, int moves) {
+        int plies = 2 * moves - 1;
+        String[] line = null;
+
+        board.setPosition(game);
+        table.clear();
+        table.resetStats();
+        nodes = 0;
+        budget = limit;
+        exhausted = false;
+        attacker = board.getTurn();
+
+        this.moves = new int[Math.max(plies, 0) + 1][MoveCode.MAX_MOVES];
+        this.keys = new long[Math.max(plies, 0) + 1][MoveCode.MAX_MOVES];
+        this.replies = new int[Math.max(plies, 0) + 1][MoveCode.MAX_MOVES];
+
+        while (plies > 0 && prove(0, plies)) {
+            String[] shorter = line(plies);
+
+            if (shorter == null) break;
+
+            if (line == null) {
+                budget = Math.min(limit, nodes + Math.max(SHORTER * nodes, limit / 100));
+            }
+
+            line = shorter;
+            plies = line.length - 2;
+        }
+
+        return line;
+    }
+
+    /**
+     * @param ply Distance of the current position from the root.
+     * @param plies Plies left to mate.
+     *
+     * @return True if mate was proven.
+     */
+    private boolean prove(int ply, int plies) {
+        search(ply, INFINITY, INFINITY, plies);
+        numbers(board.getKey(), plies);
+
+        return !exhausted && pn == 0;
+    }
+
+    /**
+     * Follow a proven position to the mate: attacker takes the shortest
+     * route, defender the longest. Board is back at the root after.
+     *
+     * @return Mating line or null.
+     */
+    private String[] line(int plies) {
+        String[] line = new String[plies];
+        boolean retried = false;
+        int ply = 0;
+
+        while (true) {
+            boolean or = board.getTurn() == attacker;
+            int count = expand(ply);
+
+            if (count == 0) break;
+
+            if (ply == line.length) {
+                line = null;
+                break;
+            }
+
+            int next = -1;
+            boolean complete = true;
+            int best = or? Integer.MAX_VALUE: -1;
+
+            for (int i=0; i<count; i++) {
+                int slot = table.find(keys[ply][i]);
+
+                if (slot == -1 || table.distance(slot) > plies - 1) {
+                    complete = false;
+                    continue;
+                }
+
+                int distance = table.distance(slot);
+
+                if (or? distance < best: distance > best) {
+                    best = distance;
+                    next = i;
+                }
+            }
+
+            if (next == -1 || (!or && !complete)) {
+                /* Proof was overwritten in the table, find it again */
+                if (retried || !prove(ply, plies)) {
+                    line = null;
+                    break;
+                }
+
+                retried = true;
+                continue;
+            }
+
+            line[ply] = board.format(moves[ply][next]);
+            board.make(moves[ply][next]);
+            ply++;
+            plies--;
+            retried = false;
+        }
+
+        for (int i=0; i<ply; i++) {
+            board.unmake();
+        }
+
+        if (line == null) return null;
+
+        String[] mate = new String[ply];
+        System.arraycopy(line, 0, mate, 0, ply);
+
+        return mate;
+    }
+
+    /**
+     * Generate the legal children of the current position into the
+     * buffers of given ply, together with their keys.
+     *
+     * @return Number of children.
+     */
+    private int expand(int ply) {
+        int count = board.generate(moves[ply], 0);
+
+        for (int i=0; i<count; i++) {
+            board.make(moves[ply][i]);
+            keys[ply][i] = board.getKey();
+            board.unmake();
+        }
+
+        return count;
+    }
+
+    /**
+     * Proof and disproof numbers of a position as far as they apply
+     * to given number of plies: mate in fewer plies is mate in more,
+     * and no mate in more plies is no mate in fewer. Numbers are left
+     * in {@link #pn} and {@link #dn}.
+     */
+    private void numbers(long key, int plies) {
+        numbers(key, plies, 1, 1);
+    }
+
+    /**
+     * @param p0 Proof number of a position not in the table.
+     * @param d0 Disproof number of a position not in the table.
+     */
+    private void numbers(long key, int plies, int p0, int d0) {
+        int slot = table.find(key);
+
+        if (slot != -1) {
+            if (table.distance(slot) <= plies) {
+                pn = 0;
+                dn = INFINITY;
+                return;
+            }
+
+            if (plies <= table.disproof(slot)) {
+                pn = INFINITY;
+                dn = 0;
+                return;
+            }
+        }
+
+        slot = table.find(key, plies);
+
+        pn = (slot == -1)? p0: table.pn(slot);
+        dn = (slot == -1)? d0: table.dn(slot);
+    }
+
+    /**
+     * Multiple iterative deepening. Numbers are handled from the point
+     * of view of the side to move (phi and delta), which is the proof
+     * number at attacker's turn and the disproof number at defender's.
+     *
+     * @param ply Distance of the current position from the root.
+     * @param thphi Threshold of phi.
+     * @param thdelta Threshold of delta.
+     * @param plies Plies left to mate.
+     */
+    private void search(int ply, int thphi, int thdelta, int plies) {
+        if (++nodes > budget) {
+            exhausted = true;
+            return;
+        }
+
+        long key = board.getKey();
+        boolean or = board.getTurn() == attacker;
+        int count = expand(ply);
+
+        if (count == 0) {
+            if (!or && board.inCheck()) {
+                table.store(key, 0, INFINITY, plies, 0);
+            }
+            else {
+                table.store(key, INFINITY, 0, plies, 0);
+            }
+
+            return;
+        }
+
+        if (plies == 0) {
+            table.store(key, INFINITY, 0, plies, 0);
+            return;
+        }
+
+        if (or) estimate(ply, count, plies);
+
+        while (true) {
+            int phi = INFINITY;
+            int delta = 0;
+            int delta2 = INFINITY;
+            int best = -1;
+            int bestPhi = 0;
+
+            for (int i=0; i<count; i++) {
+                numbers(keys[ply][i], plies - 1, or? replies[ply][i]: 1, 1);
+
+                int childPhi = or? dn: pn;
+                int childDelta = or? pn: dn;
+
+                delta = Math.min(INFINITY, delta + childPhi);
+
+                if (childDelta < phi) {
+                    delta2 = phi;
+                    phi = childDelta;
+                    best = i;
+                    bestPhi = childPhi;
+                }
+                else if (childDelta < delta2) {
+                    delta2 = childDelta;
+                }
+            }
+
+            if (phi == 0) delta = INFINITY;
+
+            if (phi >= thphi || delta >= thdelta) {
+                int p = or? phi: delta;
+                int d = or? delta: phi;
+
+                table.store(key, p, d, plies,
+                    (p == 0)? distance(ply, count, or, plies): 0);
+                return;
+            }
+
+            board.make(moves[ply][best]);
+            search(ply + 1, Math.min(INFINITY, thdelta - delta + bestPhi),
+                Math.min(thphi, delta2 + delta2 / 4 + 1), plies - 1);
+            board.unmake();
+
+            if (exhausted) return;
+        }
+    }
+
+    /**
+     * Estimate the children of attacker's position which are not in
+     * the table yet by the number of replies left to the defender: the
+     * fewer there are, the easier the child is to prove. Replies are
+     * counted after checks, and after any move when the defender has
+     * only king and pawns, which is cheap. Other moves are taken to
+     * leave {@link #QUIET} replies. Mates and stalemates found on the
+     * way, as well as last moves which do not mate, are stored as solved
+     * right away.
+     */
+    private void estimate(int ply, int count, int plies) {
+        boolean officers = board.hasOfficers(!board.getTurn());
+
+        for (int i=0; i<count; i++) {
+            long key = keys[ply][i];
+
+            replies[ply][i] = QUIET;
+
+            /* Zero for both numbers means there was no entry */
+            numbers(key, plies - 1, 0, 0);
+
+            if (pn != 0 || dn != 0) continue;
+
+            board.make(moves[ply][i]);
+            boolean check = board.inCheck();
+            int n = (check || !officers)? board.generate(moves[ply+1], 0): QUIET;
+            board.unmake();
+
+            if (n == 0 && check) {
+                table.store(key, 0, INFINITY, plies - 1, 0);
+            }
+            else if (n == 0 || plies == 1) {
+                table.store(key, INFINITY, 0, plies - 1, 0);
+            }
+            else {
+                replies[ply][i] = n;
+            }
+        }
+    }
+
+    /**
+     * @return Distance to mate of a proven position: through the
+     * shortest proven child at attacker's turn and through the
+     * longest one at defender's.
+     */
+    private int distance(int ply, int count, boolean or, int plies) {
+        int best = or? Integer.MAX_VALUE: 0;
+
+        for (int i=0; i<count; i++) {
+            int slot = table.find(keys[ply][i]);
+
+            if (slot == -1 || table.distance(slot) > plies - 1) {
+                continue;
+            }
+
+            best = or? Math.min(best, table.distance(slot)): Math.max(best, table.distance(slot));
+        }
+
+        return (best == Integer.MAX_VALUE)? plies: best + 1;
+    }
+}
@@ -0,0 +1,79 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Pawn hash table. Pawn structure changes seldom compared to the rest
+ * of the position, so its evaluation is cached by the pawn-only key.
+ *
+ * Table is lock-free in the same way as the transposition table:
+ * key is stored xor'ed with the data, so an entry torn by concurrent
+ * writes is treated as a miss. The score is the only data, so a probe
+ * verifies and returns it as a single word. Nothing is allocated after
+ * construction.
+ *
+ * @see Evaluator
+ *
+ * @author Tuomas Starck
+ */
+class PawnTable extends HashTable {
+    private static final long USED = 1L << 62;
+
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * @param bits Table has 2^bits entries.
+     */
+    PawnTable(int bits) {
+        super(bits);
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+    }
+
+    /**
+     * @param key Pawn key of the position.
+     *
+     * @return Packed entry or zero if there is none.
+     */
+    long probe(long key) {
+        int i = index(key);
+        long d = data[i];
+
+        probes++;
+
+        if ((keys[i] ^ d) == key && d != 0L) {
+            hits++;
+            return d;
+        }
+
+        return 0L;
+    }
+
+    /**
+     * @param key Pawn key of the position.
+     * @param score Score from white's point of view.
+     */
+    void store(long key, int score) {
+        int i = index(key);
+        long d = (score & 0xffffffffL) | USED;
+
+        data[i] = d;
+        keys[i] = key ^ d;
+    }
+
+    @Override
+    void clear() {
+        for (int i=0; i<data.length; i++) {
+            keys[i] = 0L;
+            data[i] = 0L;
+        }
+    }
+
+    /**
+     * @param entry Entry given by {@link #probe}.
+     *
+     * @return Score from white's point of view.
+     */
+    static int score(long entry) {
+        return (int) entry;
+    }
+}
@@ -0,0 +1,161 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Hash table of the mate solver.
+ *
+ * A position has two kinds of entries. Its solved entry holds the
+ * shortest distance to mate it is proven with and the most plies it
+ * is disproven with. Those hold whatever the number of plies left when
+ * the position is reached again: mate in fewer plies is mate in more,
+ * and no mate in more plies is no mate in fewer. Proof and disproof
+ * numbers of an unsolved position, on the other hand, only apply to
+ * the number of plies they were found with, so each number of plies
+ * has an entry of its own. A position met again deeper in its own
+ * subtree therefore does not wipe out the numbers of the shallower one.
+ *
+ * Table belongs to a single solver and is not thread-safe. New entries
+ * always replace old ones.
+ *
+ * @see MateSolver
+ *
+ * @author Tuomas Starck
+ */
+class ProofTable extends HashTable {
+    /* Entries of unsolved positions are placed by key and plies */
+    private static final long PLIES = 0x9e3779b97f4a7c15L;
+
+    private static final long SOLVED = -1L;
+    private static final int NONE = 0xff;
+
+    private final long[] keys;
+    private final long[] numbers;
+    private final int[] info;
+
+    /**
+     * @param bits Table has 2^bits entries.
+     */
+    ProofTable(int bits) {
+        super(bits);
+        keys = new long[1 << bits];
+        numbers = new long[1 << bits];
+        info = new int[1 << bits];
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     *
+     * @return Slot of the solved entry or -1 if there is none.
+     */
+    int find(long key) {
+        int i = index(key);
+
+        probes++;
+
+        if (keys[i] == key && numbers[i] == SOLVED) {
+            hits++;
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     * @param plies Plies left to mate.
+     *
+     * @return Slot of the unsolved entry or -1 if there is none.
+     */
+    int find(long key, int plies) {
+        int i = index(key ^ (plies * PLIES));
+
+        probes++;
+
+        if (keys[i] == key && numbers[i] != 0L && numbers[i] != SOLVED && info[i] == plies) {
+            hits++;
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     * @param pn Proof number.
+     * @param dn Disproof number.
+     * @param plies Plies left to mate.
+     * @param distance Distance to mate in plies, if proven.
+     */
+    void store(long key, int pn, int dn, int plies, int distance) {
+        if (pn != 0 && dn != 0) {
+            int i = index(key ^ (plies * PLIES));
+
+            keys[i] = key;
+            numbers[i] = ((long) pn << 32) | (dn & 0xffffffffL);
+            info[i] = plies;
+            return;
+        }
+
+        int i = index(key);
+        int proof = NONE;
+        int disproof = -1;
+
+        if (keys[i] == key && numbers[i] == SOLVED) {
+            proof = info[i] & 0xff;
+            disproof = (info[i] >> 8) - 1;
+        }
+
+        if (pn == 0) proof = Math.min(proof, distance);
+        else disproof = Math.max(disproof, plies);
+
+        keys[i] = key;
+        numbers[i] = SOLVED;
+        info[i] = ((disproof + 1) << 8) | proof;
+    }
+
+    /**
+     * @param slot Slot of a solved entry.
+     *
+     * @return Distance to mate in plies, or more than any number of
+     * plies if the position is not proven.
+     */
+    int distance(int slot) {
+        return info[slot] & 0xff;
+    }
+
+    /**
+     * @param slot Slot of a solved entry.
+     *
+     * @return Largest number of plies the position is disproven with,
+     * or -1.
+     */
+    int disproof(int slot) {
+        return (info[slot] >> 8) - 1;
+    }
+
+    /**
+     * @param slot Slot of an unsolved entry.
+     *
+     * @return Proof number.
+     */
+    int pn(int slot) {
+        return (int) (numbers[slot] >>> 32);
+    }
+
+    /**
+     * @param slot Slot of an unsolved entry.
+     *
+     * @return Disproof number.
+     */
+    int dn(int slot) {
+        return (int) numbers[slot];
+    }
+
+    @Override
+    void clear() {
+        for (int i=0; i<keys.length; i++) {
+            keys[i] = 0L;
+            numbers[i] = 0L;
+            info[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Selective search techniques. Each of them can be switched on or off
+ * independently, see {@link AI#enable(Pruning)}.
+ *
+ * @author Tuomas Starck
+ */
+public enum Pruning {
+    /**
+     * Give opponent a free move. If position is still too good,
+     * there is no need to search it. In endgames without officers
+     * zugzwang is likely, so the result is verified with a reduced
+     * search of real moves.
+     */
+    NULL_MOVE,
+
+    /**
+     * Search quiet moves late in the move order with reduced depth,
+     * even more reduced if history heuristic deems them poor. Root
+     * moves are never reduced.
+     */
+    LATE_MOVE_REDUCTIONS,
+
+    /**
+     * Near the leaves, skip quiet moves which cannot raise alpha
+     * (futility) and cut positions which are far above beta
+     * (reverse futility).
+     */
+    FUTILITY
+}
@@ -0,0 +1,27 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Receives statistics of a search as it progresses.
+ *
+ * Listeners are called from the thread which called
+ * {@link AI#doMove()}, so they should return quickly.
+ *
+ * @see AI#addListener(SearchListener)
+ *
+ * @author Tuomas Starck
+ */
+public interface SearchListener {
+    /**
+     * Main search thread has completed an iteration.
+     *
+     * @param stats Statistics of the search so far.
+     */
+    void iterationCompleted(SearchStats stats);
+
+    /**
+     * Search is over.
+     *
+     * @param stats Final statistics of the search.
+     */
+    void searchCompleted(SearchStats stats);
+}
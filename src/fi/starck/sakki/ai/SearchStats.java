@@ -0,0 +1,222 @@
+package fi.starck.sakki.ai;
+
+/**
+ * Snapshot of the statistics of a search.
+ *
+ * Node and cutoff counts are summed over all search threads. Iteration
+ * times and node counts are those of the main search thread. There is
+ * no quiescence search, so horizon nodes (leaves evaluated statically)
+ * are reported as qnodes.
+ *
+ * @see SearchListener
+ *
+ * @author Tuomas Starck
+ */
+public class SearchStats {
+    private final int depth;
+    private final int score;
+    private final String[] pv;
+    private final long nodes;
+    private final long qnodes;
+    private final long cutoffs;
+    private final long firstMoveCutoffs;
+    private final long probes;
+    private final long hits;
+    private final long pawnProbes;
+    private final long pawnHits;
+    private final long evalProbes;
+    private final long evalHits;
+    private final long time;
+    private final long[] iterationTimes;
+    private final long[] iterationNodes;
+
+    /**
+     * @param depth Depth of the last completed iteration.
+     * @param score Score of the last completed iteration.
+     * @param pv Principal variation of the last completed iteration.
+     * @param counters Nodes, qnodes, cutoffs and first move cutoffs.
+     * @param tables Probes and hits of the transposition table,
+     * pawn table and evaluation cache, in that order.
+     * @param time Elapsed time in nanoseconds.
+     * @param iterationTimes Time of each iteration in nanoseconds.
+     * @param iterationNodes Nodes of each iteration.
+     */
+    SearchStats(int depth, int score, String[] pv, long[] counters,
+                long[] tables, long time,
+                long[] iterationTimes, long[] iterationNodes) {
+        this.depth = depth;
+        this.score = score;
+        this.pv = pv.clone();
+        this.nodes = counters[0];
+        this.qnodes = counters[1];
+        this.cutoffs = counters[2];
+        this.firstMoveCutoffs = counters[3];
+        this.probes = tables[0];
+        this.hits = tables[1];
+        this.pawnProbes = tables[2];
+        this.pawnHits = tables[3];
+        this.evalProbes = tables[4];
+        this.evalHits = tables[5];
+        this.time = time;
+        this.iterationTimes = iterationTimes.clone();
+        this.iterationNodes = iterationNodes.clone();
+    }
+
+    /**
+     * @return Depth of the last completed iteration.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Score in centipawns from the point of view of
+     * the side to move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return Principal variation.
+     */
+    public String[] getPrincipalVariation() {
+        return pv.clone();
+    }
+
+    /**
+     * @return Number of nodes visited.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Number of horizon nodes evaluated.
+     */
+    public long getQNodes() {
+        return qnodes;
+    }
+
+    /**
+     * @return Number of beta cutoffs.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * @return Number of beta cutoffs caused by the first move tried.
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Share of cutoffs caused by the first move. The closer to one,
+     * the better the move ordering.
+     *
+     * @return Ratio between zero and one.
+     */
+    public double getFirstMoveCutoffRatio() {
+        return (cutoffs == 0)? 0.0: (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * @return Number of transposition table probes.
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * @return Number of transposition table hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of pawn table probes.
+     */
+    public long getPawnProbes() {
+        return pawnProbes;
+    }
+
+    /**
+     * @return Number of pawn table hits.
+     */
+    public long getPawnHits() {
+        return pawnHits;
+    }
+
+    /**
+     * @return Number of evaluation cache probes.
+     */
+    public long getEvalProbes() {
+        return evalProbes;
+    }
+
+    /**
+     * @return Number of evaluation cache hits.
+     */
+    public long getEvalHits() {
+        return evalHits;
+    }
+
+    /**
+     * @return Elapsed time in milliseconds.
+     */
+    public long getTime() {
+        return time / 1000000;
+    }
+
+    /**
+     * @return Nodes per second.
+     */
+    public long getNps() {
+        return (time == 0)? 0: nodes * 1000000000L / time;
+    }
+
+    /**
+     * @param d Depth of an iteration.
+     *
+     * @return Time taken by that iteration in milliseconds or
+     * -1 if there was no such iteration.
+     */
+    public long getIterationTime(int d) {
+        if (d < 1 || d >= iterationTimes.length) return -1;
+        return iterationTimes[d] / 1000000;
+    }
+
+    /**
+     * Effective branching factor: how many times more nodes the last
+     * iteration needed than the one before it.
+     *
+     * @return Branching factor or zero, if there are not enough
+     * iterations to tell.
+     */
+    public double getEffectiveBranchingFactor() {
+        if (depth < 2 || depth >= iterationNodes.length
+                || iterationNodes[depth-1] == 0) {
+            return 0.0;
+        }
+
+        return (double) iterationNodes[depth] / iterationNodes[depth-1];
+    }
+
+    /**
+     * @return Statistics in one line.
+     */
+    @Override
+    public String toString() {
+        return String.format(
+            "depth %d score %d nodes %d qnodes %d nps %d time %d "
+            + "cutoffs %d first %.2f probes %d hits %d "
+            + "pawn %d/%d eval %d/%d ebf %.2f",
+            depth, score, nodes, qnodes, getNps(), getTime(),
+            cutoffs, getFirstMoveCutoffRatio(), probes, hits,
+            pawnHits, pawnProbes, evalHits, evalProbes,
+            getEffectiveBranchingFactor());
+    }
+}
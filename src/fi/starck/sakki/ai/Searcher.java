@@ -0,0 +1,692 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.MoveCode;
+import fi.starck.sakki.board.X88Backend;
+import fi.starck.sakki.tablebase.Tablebase;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One search thread. All the searchers of a single search share the
+ * root position, the transposition table and the stop flag, but
+ * otherwise work independently (a.k.a. Lazy SMP).
+ *
+ * Searcher with id zero is the main searcher. Helpers iterate with
+ * slightly varied depths and move order, so they fill the shared
+ * transposition table with results main searcher will soon need.
+ *
+ * Search runs on a private {@link X88Backend}, making and taking back
+ * moves in place. Moves are plain integers and every ply has a frame
+ * of move and score buffers allocated up front, so searching a node
+ * allocates nothing. Only the principal variation of each completed
+ * iteration is turned into strings.
+ *
+ * @see AI
+ *
+ * @author Tuomas Starck
+ */
+class Searcher implements Runnable {
+    static final int INFINITY = 1000000;
+    static final int MATE = 100000;
+
+    /* Scores beyond this are mates, tablebase mates included */
+    private static final int MATE_BOUND = MATE - 1000;
+
+    private static final int MAX_PLY = Heuristics.MAX_PLY;
+    private static final int WINDOW = 25;
+    private static final int FUTILITY_MARGIN = 200;
+    private static final int REVERSE_MARGIN = 120;
+    private static final int LATE_MOVES = 3;
+
+    private static final int HINTED = Integer.MAX_VALUE;
+    private static final int KILLER = 1 << 30;
+
+    private final X88Backend board;
+    private final Frame[] frames;
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private final Heuristics heuristics;
+    private final AtomicBoolean stop;
+    private final int id;
+    private final int maxDepth;
+    private final EnumSet<Pruning> pruning;
+
+    private final int[][] pvTable;
+    private final int[] pvLength;
+
+    private boolean aborted;
+
+    private int completedDepth;
+    private int bestScore;
+    private String[] pv;
+
+    private final AI owner;
+    private int[] excluded;
+    private Tablebase tablebase;
+    private final byte[] squares;
+    private long deadline;
+    private long nodeLimit;
+
+    private final long[] iterationTimes;
+    private final long[] iterationNodes;
+
+    long nodes;
+    long qnodes;
+    long cutoffs;
+    long firstCutoffs;
+
+    /**
+     * Move buffers of one ply.
+     */
+    private static final class Frame {
+        final int[] moves = new int[MoveCode.MAX_MOVES];
+        final int[] scores = new int[MoveCode.MAX_MOVES];
+    }
+
+    /**
+     * @param root Position to search.
+     * @param table Shared transposition table.
+     * @param evaluator Shared evaluator.
+     * @param heuristics Move ordering heuristics of this thread.
+     * @param stop Shared stop flag.
+     * @param id Number of this searcher, zero for the main searcher.
+     * @param maxDepth Depth of the last iteration.
+     * @param pruning Selective techniques in use.
+     * @param owner AI to be notified of completed iterations or null.
+     */
+    Searcher(ChessNode root, TranspositionTable table, Evaluator evaluator,
+             Heuristics heuristics, AtomicBoolean stop, int id, int maxDepth,
+             EnumSet<Pruning> pruning, AI owner) {
+        this.owner = owner;
+        this.table = table;
+        this.evaluator = evaluator;
+        this.heuristics = heuristics;
+        this.stop = stop;
+        this.id = id;
+        this.maxDepth = maxDepth + (id & 1);
+        this.pruning = EnumSet.copyOf(pruning);
+
+        board = new X88Backend();
+        board.setPosition(root);
+        squares = new byte[64];
+        frames = new Frame[MAX_PLY];
+
+        for (int ply=0; ply<MAX_PLY; ply++) {
+            frames[ply] = new Frame();
+        }
+
+        pvTable = new int[MAX_PLY][MAX_PLY];
+        pvLength = new int[MAX_PLY];
+
+        aborted = false;
+        completedDepth = 0;
+        bestScore = 0;
+        pv = new String[0];
+
+        excluded = new int[0];
+        tablebase = null;
+        deadline = 0;
+        nodeLimit = 0;
+        iterationTimes = new long[this.maxDepth + 1];
+        iterationNodes = new long[this.maxDepth + 1];
+
+        nodes = 0;
+        qnodes = 0;
+        cutoffs = 0;
+        firstCutoffs = 0;
+    }
+
+    /**
+     * Leave some root moves out of the search. Used for searching
+     * the next best line after the best ones are already known.
+     *
+     * @param moves Root moves not to be searched.
+     */
+    void exclude(Collection<String> moves) {
+        int n = excluded.length;
+
+        excluded = Arrays.copyOf(excluded, n + moves.size());
+
+        for (String move : moves) {
+            excluded[n++] = MoveCode.parse(move);
+        }
+    }
+
+    /**
+     * @return True if the root move is left out of the search.
+     */
+    private boolean isExcluded(int move) {
+        for (int i=0; i<excluded.length; i++) {
+            if (excluded[i] == move) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param tablebase Endgame tablebases to probe or null.
+     */
+    void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Main searcher stops all the searchers at the deadline, once it
+     * has completed at least one iteration.
+     *
+     * @param deadline Value of {@link System#nanoTime()} to stop at,
+     * or zero for no deadline.
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Main searcher stops all the searchers after searching given
+     * number of nodes, once it has completed at least one iteration.
+     *
+     * @param nodeLimit Number of nodes or zero for no limit.
+     */
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Iterative deepening. Every completed iteration replaces the
+     * result of the previous one.
+     *
+     * From the third iteration on, search starts with an aspiration
+     * window around the score of the previous iteration. If the score
+     * falls outside of the window, the window is widened on that side
+     * and the iteration is searched again.
+     */
+    @Override
+    public void run() {
+        for (int depth = 1 + (id & 1); depth <= maxDepth; depth++) {
+            long start = System.nanoTime();
+            long before = nodes;
+            int delta = WINDOW;
+            int alpha = -INFINITY;
+            int beta = INFINITY;
+            int score;
+
+            if (completedDepth >= 2) {
+                alpha = Math.max(-INFINITY, bestScore - delta);
+                beta = Math.min(INFINITY, bestScore + delta);
+            }
+
+            while (true) {
+                score = search(depth, alpha, beta, 0, false);
+
+                if (aborted) break;
+
+                if (score <= alpha && alpha > -INFINITY) {
+                    alpha = Math.max(-INFINITY, score - delta);
+                }
+                else if (score >= beta && beta < INFINITY) {
+                    beta = Math.min(INFINITY, score + delta);
+                }
+                else {
+                    break;
+                }
+
+                delta *= 2;
+            }
+
+            if (aborted || pvLength[0] == 0) break;
+
+            completedDepth = depth;
+            bestScore = score;
+            pv = line(pvTable[0], pvLength[0]);
+
+            iterationTimes[depth] = System.nanoTime() - start;
+            iterationNodes[depth] = nodes - before;
+
+            if (owner != null) {
+                owner.iterationCompleted(this);
+            }
+        }
+    }
+
+    /**
+     * @return True if the deadline has passed or node limit is reached.
+     */
+    private boolean isOutOfBudget() {
+        return (deadline != 0 && System.nanoTime() - deadline > 0)
+            || (nodeLimit != 0 && nodes >= nodeLimit);
+    }
+
+    /**
+     * @param moves Encoded moves from the root.
+     * @param length Number of moves.
+     *
+     * @return Moves in the long form of {@link Chess#getMoves()}.
+     */
+    private String[] line(int[] moves, int length) {
+        String[] line = new String[length];
+
+        for (int i=0; i<length; i++) {
+            line[i] = board.format(moves[i]);
+            board.make(moves[i]);
+        }
+
+        for (int i=0; i<length; i++) {
+            board.unmake();
+        }
+
+        return line;
+    }
+
+    /**
+     * @return Static value of the current position from the point
+     * of view of the side to move.
+     */
+    private int evaluate() {
+        int value = evaluator.evaluate(board);
+        return board.getTurn()? value: -value;
+    }
+
+    /**
+     * Mate scores count plies from the root, but the same position
+     * may be reached at another distance. In the transposition table
+     * they count plies from the position itself.
+     *
+     * @param score Score of the search.
+     * @param ply Distance from the root.
+     *
+     * @return Score to store.
+     */
+    private static int toTable(int score, int ply) {
+        if (score > MATE_BOUND) return score + ply;
+        if (score < -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    /**
+     * @param score Score of a transposition table entry.
+     * @param ply Distance from the root.
+     *
+     * @return Score for the search, see {@link #toTable(int, int)}.
+     */
+    private static int fromTable(int score, int ply) {
+        if (score > MATE_BOUND) return score - ply;
+        if (score < -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    /**
+     * Principal variation search, a.k.a. negascout. First move of each
+     * node is searched with the full window and the rest of the moves
+     * with a null window around alpha, which is enough to prove them
+     * worse. If the proof fails, the move is searched again with the
+     * full window.
+     *
+     * Scores are from the point of view of the side to move. Whenever
+     * a move raises alpha, the line is copied to the triangular
+     * principal variation table.
+     *
+     * Selective techniques (see {@link Pruning}) are only applied at
+     * nodes outside of the principal variation and never when the
+     * side to move is in check.
+     *
+     * @param depth Remaining depth.
+     * @param alpha Lower bound.
+     * @param beta Upper bound.
+     * @param ply Distance from the root.
+     * @param nullAllowed False right after a null move.
+     *
+     * @return Score of the position.
+     */
+    private int search(int depth, int alpha, int beta, int ply, boolean nullAllowed) {
+        nodes++;
+        pvLength[ply] = 0;
+
+        if (id == 0 && completedDepth > 0 && (nodes & 63) == 0 && isOutOfBudget()) {
+            stop.set(true);
+        }
+
+        if (stop.get()) {
+            aborted = true;
+            return 0;
+        }
+
+        /* Positions which have occurred before are draws:
+         * if repeating was good once, it is good again.
+         */
+        if (ply > 0 && (board.getHalfmove() >= 100 || board.getRepetitions() > 0)) {
+            return 0;
+        }
+
+        /* Exact result of an endgame. Root is searched anyway
+         * to find the move.
+         */
+        if (tablebase != null && ply > 0 && board.getMen() <= Tablebase.MAX_MEN && !board.hasRights()) {
+            int dtm = tablebase.probe(board.snapshot(squares), board.getTurn());
+
+            if (dtm == Tablebase.DRAW) return 0;
+            if (Tablebase.isWin(dtm)) return MATE - ply - dtm;
+            if (Tablebase.isLoss(dtm)) return -MATE + ply + dtm;
+        }
+
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            qnodes++;
+            return evaluate();
+        }
+
+        boolean pvNode = (beta - alpha > 1);
+        long entry = table.probe(board.getKey());
+
+        if (!pvNode && entry != 0L && TranspositionTable.depth(entry) >= depth) {
+            int score = fromTable(TranspositionTable.score(entry), ply);
+
+            switch (TranspositionTable.bound(entry)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER:
+                    if (score >= beta) return score;
+                    break;
+                case TranspositionTable.UPPER:
+                    if (score <= alpha) return score;
+                    break;
+            }
+        }
+
+        boolean inCheck = board.inCheck();
+        boolean selective = !pvNode && !inCheck;
+        int eval = selective? evaluate(): 0;
+
+        /* Reverse futility: position is so good, that even
+         * a generous margin per ply keeps it above beta.
+         */
+        if (selective && pruning.contains(Pruning.FUTILITY)
+                && depth <= 2 && eval - REVERSE_MARGIN * depth >= beta) {
+            return eval - REVERSE_MARGIN * depth;
+        }
+
+        if (selective && nullAllowed && pruning.contains(Pruning.NULL_MOVE)
+                && depth >= 3 && eval >= beta) {
+            int r = (depth > 6)? 3: 2;
+            board.makeNull();
+            int value = -search(depth-1-r, -beta, -beta+1, ply+1, false);
+            board.unmake();
+
+            if (aborted) return 0;
+
+            if (value >= beta) {
+                if (board.hasOfficers(board.getTurn())) {
+                    return value;
+                }
+
+                /* Zugzwang is likely, so verify with real moves.
+                 */
+                value = search(depth-1-r, beta-1, beta, ply, false);
+
+                if (aborted) return 0;
+
+                if (value >= beta) {
+                    return value;
+                }
+            }
+        }
+
+        boolean futile = selective && pruning.contains(Pruning.FUTILITY)
+            && depth == 1 && eval + FUTILITY_MARGIN <= alpha;
+
+        int original = alpha;
+        int score = -INFINITY;
+        int searched = 0;
+        int move = MoveCode.NONE;
+        boolean turn = board.getTurn();
+
+        Frame frame = frames[ply];
+        int[] moves = frame.moves;
+        int count = order(frame, entry, ply);
+
+        for (int i=0; i<count; i++) {
+            pick(frame, i, count);
+
+            int candidate = moves[i];
+
+            if (ply == 0 && isExcluded(candidate)) continue;
+
+            boolean tactical = board.isCapture(candidate) || MoveCode.promotion(candidate) != 0;
+
+            board.make(candidate);
+
+            boolean quiet = !tactical && !board.inCheck();
+
+            /* Futility: quiet move cannot bring the score up to alpha.
+             */
+            if (futile && quiet && searched > 0) {
+                board.unmake();
+                continue;
+            }
+
+            int value;
+
+            if (searched == 0) {
+                value = -search(depth-1, -beta, -alpha, ply+1, true);
+            }
+            else {
+                int reduction = 0;
+
+                if (ply > 0 && !inCheck && quiet && depth >= 3 && searched >= LATE_MOVES
+                        && pruning.contains(Pruning.LATE_MOVE_REDUCTIONS)) {
+                    reduction = 1;
+
+                    if (!pvNode && searched >= 2 * LATE_MOVES
+                            && heuristics.history(turn)[Heuristics.squares(candidate)] == 0) {
+                        reduction = 2;
+                    }
+                }
+
+                value = -search(depth-1-reduction, -alpha-1, -alpha, ply+1, true);
+
+                if (reduction > 0 && value > alpha && !aborted) {
+                    value = -search(depth-1, -alpha-1, -alpha, ply+1, true);
+                }
+
+                if (value > alpha && value < beta && !aborted) {
+                    value = -search(depth-1, -beta, -alpha, ply+1, true);
+                }
+            }
+
+            board.unmake();
+
+            if (aborted) return 0;
+
+            searched++;
+
+            if (value > score) {
+                score = value;
+                move = candidate;
+
+                if (value > alpha) {
+                    alpha = value;
+                    updatePv(ply, candidate);
+
+                    if (alpha >= beta) {
+                        if (!tactical) {
+                            heuristics.addHistory(turn, candidate, depth);
+                            heuristics.addKiller(ply, candidate);
+                        }
+
+                        cutoffs++;
+
+                        if (searched == 1) {
+                            firstCutoffs++;
+                        }
+
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (move == MoveCode.NONE) {
+            if (ply == 0 && excluded.length > 0) {
+                /* Every line is already known */
+                return -INFINITY;
+            }
+
+            /* No legal moves: checkmate or stalemate */
+            return inCheck? -MATE + ply: 0;
+        }
+
+        if (ply == 0 && excluded.length > 0) {
+            /* Score of a partial root is no good for others */
+            return score;
+        }
+
+        int bound = TranspositionTable.EXACT;
+
+        if (score <= original) {
+            bound = TranspositionTable.UPPER;
+        }
+        else if (score >= beta) {
+            bound = TranspositionTable.LOWER;
+        }
+
+        table.store(board.getKey(), depth, toTable(score, ply), bound, move);
+
+        return score;
+    }
+
+    /**
+     * Principal variation of a ply is the move just found followed
+     * by the principal variation of the next ply.
+     *
+     * @param ply Distance from the root.
+     * @param move The new best move at that ply.
+     */
+    private void updatePv(int ply, int move) {
+        pvTable[ply][0] = move;
+        System.arraycopy(pvTable[ply+1], 0, pvTable[ply], 1, pvLength[ply+1]);
+        pvLength[ply] = pvLength[ply+1] + 1;
+    }
+
+    /**
+     * Generate and score moves for searching. Move from the
+     * transposition table goes before all the others, then killer
+     * moves and the rest by history. Helpers rotate the moves to
+     * look at different moves first among equals.
+     *
+     * @param frame Buffers of the ply.
+     * @param entry Transposition table entry of the position or zero.
+     * @param ply Distance from the root.
+     *
+     * @return Number of moves.
+     */
+    private int order(Frame frame, long entry, int ply) {
+        int[] moves = frame.moves;
+        int[] scores = frame.scores;
+        int count = board.generate(moves, 0);
+        int[] table = heuristics.history(board.getTurn());
+        int hint = (entry != 0L)? TranspositionTable.move(entry): MoveCode.NONE;
+
+        if (id != 0 && count > 1) {
+            rotate(moves, count, id % count);
+        }
+
+        for (int i=0; i<count; i++) {
+            int move = moves[i];
+
+            if (move == hint) {
+                scores[i] = HINTED;
+            }
+            else if (heuristics.isKiller(ply, move)) {
+                scores[i] = KILLER;
+            }
+            else {
+                scores[i] = table[Heuristics.squares(move)];
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Selection sort one step at a time: most moves are never looked
+     * at after a cutoff, so they need not be sorted.
+     *
+     * @param frame Buffers of the ply.
+     * @param i Index to fill with the best of the remaining moves.
+     * @param count Number of moves.
+     */
+    private static void pick(Frame frame, int i, int count) {
+        int[] moves = frame.moves;
+        int[] scores = frame.scores;
+        int best = i;
+
+        for (int j=i+1; j<count; j++) {
+            if (scores[j] > scores[best]) best = j;
+        }
+
+        if (best != i) {
+            int move = moves[i];
+            int score = scores[i];
+
+            moves[i] = moves[best];
+            scores[i] = scores[best];
+            moves[best] = move;
+            scores[best] = score;
+        }
+    }
+
+    /**
+     * Rotate moves to the right in place, like
+     * {@link java.util.Collections#rotate}.
+     */
+    private static void rotate(int[] moves, int count, int distance) {
+        reverse(moves, 0, count);
+        reverse(moves, 0, distance);
+        reverse(moves, distance, count);
+    }
+
+    private static void reverse(int[] moves, int from, int to) {
+        for (int i=from, j=to-1; i<j; i++, j--) {
+            int move = moves[i];
+            moves[i] = moves[j];
+            moves[j] = move;
+        }
+    }
+
+    /**
+     * @return Depth of the last completed iteration.
+     */
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return Score of the last completed iteration from the
+     * point of view of the side to move at the root.
+     */
+    int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * @return Principal variation of the last completed iteration.
+     */
+    String[] getPv() {
+        return pv;
+    }
+
+    /**
+     * @return Time of each completed iteration in nanoseconds.
+     */
+    long[] getIterationTimes() {
+        return iterationTimes;
+    }
+
+    /**
+     * @return Nodes of each completed iteration.
+     */
+    long[] getIterationNodes() {
+        return iterationNodes;
+    }
+}
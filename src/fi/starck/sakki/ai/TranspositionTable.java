@@ -0,0 +1,112 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.MoveCode;
+
+/**
+ * Transposition table shared by all the search threads.
+ *
+ * Table is lock-free. Each entry is two longs: the data and the key
+ * xor'ed with the data. Writes from different threads may interleave,
+ * but a torn entry no longer matches its key and is treated as a miss.
+ *
+ * Data is packed into a single long:
+ * <pre>
+ *  bits  0-31  score
+ *  bits 32-39  remaining depth
+ *  bits 40-41  bound (exact, lower or upper)
+ *  bits 42-57  best move (see {@link MoveCode})
+ *  bit  62     entry in use
+ * </pre>
+ *
+ * @author Tuomas Starck
+ */
+class TranspositionTable extends HashTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    private static final long USED = 1L << 62;
+
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * @param bits Table has 2^bits entries.
+     */
+    TranspositionTable(int bits) {
+        super(bits);
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+    }
+
+    /**
+     * @param key Zobrist key of the position.
+     *
+     * @return Packed entry or zero if there is none.
+     */
+    long probe(long key) {
+        int i = index(key);
+        long d = data[i];
+
+        probes++;
+
+        if ((keys[i] ^ d) == key && d != 0L) {
+            hits++;
+            return d;
+        }
+
+        return 0L;
+    }
+
+    /**
+     * Store a search result. Existing entry of the same position
+     * is replaced only by a result of equal or deeper search.
+     *
+     * @param key Zobrist key of the position.
+     * @param depth Remaining depth of the search.
+     * @param score Score of the position.
+     * @param bound Type of the score.
+     * @param move Best move or {@link MoveCode#NONE}.
+     */
+    void store(long key, int depth, int score, int bound, int move) {
+        int i = index(key);
+        long old = data[i];
+
+        if ((keys[i] ^ old) == key && depth(old) > depth) {
+            return;
+        }
+
+        long d = (score & 0xffffffffL)
+               | ((long) (depth & 0xff) << 32)
+               | ((long) (bound & 0x3) << 40)
+               | ((long) (move & 0xffff) << 42)
+               | USED;
+
+        data[i] = d;
+        keys[i] = key ^ d;
+    }
+
+    @Override
+    void clear() {
+        for (int i=0; i<data.length; i++) {
+            keys[i] = 0L;
+            data[i] = 0L;
+        }
+    }
+
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xff;
+    }
+
+    static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    static int move(long entry) {
+        return (int) (entry >>> 42) & 0xffff;
+    }
+}
@@ -0,0 +1,69 @@
+package fi.starck.sakki.ai;
+
+/**
+ * One line of play found by the search: a root move, its score and
+ * the principal variation starting from it.
+ *
+ * @see AI#analyse(int)
+ *
+ * @author Tuomas Starck
+ */
+public class Variation {
+    private final int depth;
+    private final int score;
+    private final String[] pv;
+
+    /**
+     * @param depth Depth of the search.
+     * @param score Score from the point of view of the side to move.
+     * @param pv Principal variation, at least one move.
+     */
+    Variation(int depth, int score, String[] pv) {
+        this.depth = depth;
+        this.score = score;
+        this.pv = pv.clone();
+    }
+
+    /**
+     * @return The first move of the line.
+     */
+    public String getMove() {
+        return pv[0];
+    }
+
+    /**
+     * @return Score in centipawns from the point of view of
+     * the side to move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return Depth of the search.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Principal variation.
+     */
+    public String[] getPrincipalVariation() {
+        return pv.clone();
+    }
+
+    /**
+     * @return Score and moves of the line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(String.valueOf(score));
+
+        for (String move : pv) {
+            str.append(' ').append(move);
+        }
+
+        return str.toString();
+    }
+}
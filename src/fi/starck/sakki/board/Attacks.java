@@ -0,0 +1,136 @@
+package fi.starck.sakki.board;
+
+/**
+ * Attack tables on bitboards. A bitboard is a long with bit <i>s</i>
+ * set for each square <i>s</i> in the set, squares numbered as in
+ * {@link MoveCode} (<tt>a8</tt> is 0, <tt>h1</tt> is 63).
+ *
+ * Knights, kings and pawns attack a fixed set of squares from each
+ * square, so those are looked up. Sliders are looked up ray by ray:
+ * the nearest occupied square on a ray is found with a single bit
+ * scan, and the part of the ray behind it is cut off.
+ *
+ * <p>{@link http://chessprogramming.wikispaces.com/Classical+Approach}</p>
+ *
+ * @author Tuomas Starck
+ */
+final class Attacks {
+    /* Directions as steps of rank and file. The first four run towards
+     * higher square numbers, the last four towards lower ones.
+     */
+    private static final int[][] DIRECTIONS = {
+        {0, 1}, {1, -1}, {1, 0}, {1, 1}, {0, -1}, {-1, 1}, {-1, 0}, {-1, -1}
+    };
+
+    private static final long[][] RAYS = new long[8][64];
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+
+    /* Squares attacked by a white [0] or black [1] pawn */
+    private static final long[][] PAWN = new long[2][64];
+
+    static {
+        int[][] knight = {
+            {-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}
+        };
+
+        for (int sq=0; sq<64; sq++) {
+            int rank = sq >> 3;
+            int file = sq & 7;
+
+            for (int d=0; d<8; d++) {
+                int r = rank + DIRECTIONS[d][0];
+                int f = file + DIRECTIONS[d][1];
+
+                KING[sq] |= bit(r, f);
+
+                while (bit(r, f) != 0L) {
+                    RAYS[d][sq] |= bit(r, f);
+                    r += DIRECTIONS[d][0];
+                    f += DIRECTIONS[d][1];
+                }
+
+                KNIGHT[sq] |= bit(rank + knight[d][0], file + knight[d][1]);
+            }
+
+            PAWN[0][sq] = bit(rank - 1, file - 1) | bit(rank - 1, file + 1);
+            PAWN[1][sq] = bit(rank + 1, file - 1) | bit(rank + 1, file + 1);
+        }
+    }
+
+    private Attacks() {}
+
+    /**
+     * @return Bitboard of the square, or empty if it is off the board.
+     */
+    private static long bit(int rank, int file) {
+        if (rank < 0 || rank > 7 || file < 0 || file > 7) return 0L;
+
+        return 1L << MoveCode.square(rank, file);
+    }
+
+    /**
+     * @param sq Square.
+     *
+     * @return Squares a knight on the square attacks.
+     */
+    static long knight(int sq) {
+        return KNIGHT[sq];
+    }
+
+    /**
+     * @param sq Square.
+     *
+     * @return Squares a king on the square attacks.
+     */
+    static long king(int sq) {
+        return KING[sq];
+    }
+
+    /**
+     * @param sq Square.
+     * @param side True for white, false for black.
+     *
+     * @return Squares a pawn of given side on the square attacks.
+     */
+    static long pawn(int sq, boolean side) {
+        return PAWN[side? 0: 1][sq];
+    }
+
+    /**
+     * @param sq Square.
+     * @param occupied Occupied squares.
+     *
+     * @return Squares a bishop on the square attacks.
+     */
+    static long bishop(int sq, long occupied) {
+        return ray(1, sq, occupied) | ray(3, sq, occupied) | ray(5, sq, occupied) | ray(7, sq, occupied);
+    }
+
+    /**
+     * @param sq Square.
+     * @param occupied Occupied squares.
+     *
+     * @return Squares a rook on the square attacks.
+     */
+    static long rook(int sq, long occupied) {
+        return ray(0, sq, occupied) | ray(2, sq, occupied) | ray(4, sq, occupied) | ray(6, sq, occupied);
+    }
+
+    /**
+     * @return Squares on the ray up to and including the first
+     * occupied one.
+     */
+    private static long ray(int d, int sq, long occupied) {
+        long ray = RAYS[d][sq];
+        long blockers = ray & occupied;
+
+        if (blockers == 0L) return ray;
+
+        int first = (d < 4)?
+            Long.numberOfTrailingZeros(blockers):
+            63 - Long.numberOfLeadingZeros(blockers);
+
+        return ray ^ RAYS[d][first];
+    }
+}
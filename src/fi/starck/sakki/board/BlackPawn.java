@@ -29,14 +29,18 @@ class BlackPawn extends Piece {
         markIfCapturable(se, status);
         markIfCapturable(sw, status);
 
-        if (enpassant == null) return;
-
-        if (enpassant.equals(se)) {
-            view[se.rank][se.file] = Type.capturable;
-        }
-        if (enpassant.equals(sw)) {
-            view[sw.rank][sw.file] = Type.capturable;
+        if (enpassant != null) {
+            if (enpassant.equals(se)) {
+                view[se.rank][se.file] = Type.capturable;
+                moves.add(loc + "x" + se);
+            }
+            if (enpassant.equals(sw)) {
+                view[sw.rank][sw.file] = Type.capturable;
+                moves.add(loc + "x" + sw);
+            }
         }
+
+        addPromotions(PROMOTION_RANK);
     }
 
     @Override
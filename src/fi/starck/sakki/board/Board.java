@@ -1,6 +1,7 @@
 package fi.starck.sakki.board;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Model of a chess board and pieces on it.
@@ -14,18 +15,28 @@ import java.util.ArrayList;
  */
 class Board {
     private int[] material;
+    private int[] mg;
+    private int[] eg;
+    private int phase;
     private boolean[] checked;
     private Coord[] kings;
     private Type[][] state;
     private ArrayList<Piece> board;
 
+    /* Pieces by square (see MoveCode) for constant time lookup */
+    private Piece[] squares;
+
+    /* Bitboards of each type of piece and of all pieces */
+    private long[] bitboards;
+    private long occupied;
+
+    /* Piece chosen by the latest successful check() */
+    private Piece selected;
+
     /**
-     * Constructs the initial position. Pieces are placed to their
-     * standard start-of-game positions.
+     * Pieces of the initial position in FEN.
      */
-    Board() {
-        this("rnbqkbnr/pppppppp/////PPPPPPPP/RNBQKBNR", null);
-    }
+    static final String INITIAL = "rnbqkbnr/pppppppp/////PPPPPPPP/RNBQKBNR";
 
     /**
      * Constructs a game board with piece positions parsed from given FEN.
@@ -37,21 +48,86 @@ class Board {
      * interpret in any way.
      */
     Board(String fen, Coord enpassant) {
+        this();
+        reset(fen, enpassant);
+    }
+
+    /**
+     * Constructs an empty board. Pieces are placed by {@link #reset}.
+     */
+    Board() {
         material = new int[2];
+        mg = new int[2];
+        eg = new int[2];
         checked = new boolean[2];
         kings = new Coord[2];
         state = new Type[8][8];
-        board = parseFEN(fen);
+        squares = new Piece[64];
+        bitboards = new long[Type.values().length];
+        board = new ArrayList<Piece>();
+    }
+
+    /**
+     * Place the pieces anew, reusing the board. Board is left as it
+     * was if the FEN cannot be read.
+     *
+     * @param fen First part of FEN string containing board outlook.
+     * @param enpassant En passant target square (or null if none).
+     *
+     * @throws IllegalArgumentException If given FEN string could not be
+     * interpret in any way.
+     */
+    void reset(String fen, Coord enpassant) {
+        ArrayList<Piece> pieces = parseFEN(fen);
 
         /* If given FEN produced something silly,
          * it will be caught and handled here.
          */
-        try {
-            update(enpassant);
-        }
-        catch (NullPointerException npe) {
+        if (pieces.contains(null)) {
             throw new IllegalArgumentException();
         }
+
+        board.clear();
+        board.addAll(pieces);
+        kings[0] = kings[1] = null;
+
+        update(enpassant);
+
+        /* From now on, evaluation is kept up to date as pieces move.
+         */
+        Arrays.fill(material, 0);
+        Arrays.fill(mg, 0);
+        Arrays.fill(eg, 0);
+        phase = 0;
+
+        for (Piece piece : board) {
+            place(piece.getType(), piece.getLocation(), 1);
+        }
+    }
+
+    /**
+     * Make this board a copy of another. The evaluation sums are
+     * copied as they are and only the pieces are created anew, since
+     * each of them keeps a view of its own.
+     *
+     * @param that Board to copy.
+     * @param enpassant En passant target square (or null if none).
+     */
+    void copyFrom(Board that, Coord enpassant) {
+        board.clear();
+
+        for (Piece piece : that.board) {
+            board.add(createByType(piece.getType(), piece.getLocation()));
+        }
+
+        System.arraycopy(that.material, 0, material, 0, 2);
+        System.arraycopy(that.mg, 0, mg, 0, 2);
+        System.arraycopy(that.eg, 0, eg, 0, 2);
+        phase = that.phase;
+        kings[0] = that.kings[0];
+        kings[1] = that.kings[1];
+
+        update(enpassant);
     }
 
     /**
@@ -148,7 +224,6 @@ class Board {
      * @param enpassant En passant target square (or null if none).
      */
     private void update(Coord enpassant) {
-        material = new int[2];
         checked = new boolean[2];
 
         /* Reset state.
@@ -159,6 +234,10 @@ class Board {
             }
         }
 
+        Arrays.fill(squares, null);
+        Arrays.fill(bitboards, 0L);
+        occupied = 0L;
+
         /* Write new board state.
          */
         for (Piece piece : board) {
@@ -167,6 +246,9 @@ class Board {
             Coord loc = piece.getLocation();
 
             state[loc.rank][loc.file] = piece.getType();
+            squares[square(loc)] = piece;
+            bitboards[piece.getType().ordinal()] |= bit(loc);
+            occupied |= bit(loc);
         }
 
         /* Update the views of the pieces.
@@ -174,22 +256,93 @@ class Board {
         for (Piece piece : board) {
             piece.update(state, enpassant);
 
-            Type type   = piece.getType();
-            int  side   = type.getSide()? 0: 1;
-            int  target = piece.isChecking();
-
-            if (target != -1) {
-                checked[target] = true;
-            }
+            Type type = piece.getType();
+            int  side = type.getSide()? 0: 1;
 
             if (type == Type.K || type == Type.k) {
                 kings[side] = piece.getLocation();
             }
+        }
 
-            material[side] += type.getValue();
+        /* Kings in check are found by attack queries.
+         */
+        for (int side=0; side<2; side++) {
+            checked[side] = kings[side] != null && isSquareAttacked(square(kings[side]), side == 1);
         }
     }
 
+    /**
+     * @return Square index of the coordinate (see {@link MoveCode}).
+     */
+    private static int square(Coord co) {
+        return MoveCode.square(co.rank, co.file);
+    }
+
+    /**
+     * @return Bitboard of the coordinate, or empty if there is none.
+     */
+    private static long bit(Coord co) {
+        return (co == null)? 0L: 1L << square(co);
+    }
+
+    /**
+     * @param type Type of piece.
+     *
+     * @return Bitboard of the pieces of given type.
+     */
+    private long bits(Type type) {
+        return bitboards[type.ordinal()];
+    }
+
+    /**
+     * @param square Square (see {@link MoveCode}).
+     * @param side True for white, false for black.
+     *
+     * @return True if any piece of given side attacks the square.
+     */
+    boolean isSquareAttacked(int square, boolean side) {
+        return attackersOf(square, side, occupied) != 0L;
+    }
+
+    /**
+     * @param square Square (see {@link MoveCode}).
+     * @param side True for white, false for black.
+     *
+     * @return Bitboard of the pieces of given side attacking the square.
+     */
+    long attackersOf(int square, boolean side) {
+        return attackersOf(square, side, occupied);
+    }
+
+    /**
+     * @param occupied Occupied squares, which block sliders.
+     */
+    private long attackersOf(int square, boolean side, long occupied) {
+        long queens = bits(side? Type.Q: Type.q);
+
+        return (Attacks.pawn(square, !side) & bits(side? Type.P: Type.p))
+             | (Attacks.knight(square) & bits(side? Type.N: Type.n))
+             | (Attacks.king(square) & bits(side? Type.K: Type.k))
+             | (Attacks.bishop(square, occupied) & (bits(side? Type.B: Type.b) | queens))
+             | (Attacks.rook(square, occupied) & (bits(side? Type.R: Type.r) | queens));
+    }
+
+    /**
+     * Add or remove a piece to or from material and evaluation sums.
+     *
+     * @param type Type of the piece.
+     * @param co Location of the piece.
+     * @param sign One when piece arrives, minus one when it leaves.
+     */
+    private void place(Type type, Coord co, int sign) {
+        int side = type.getSide()? 0: 1;
+
+        material[side] += sign * type.getValue();
+        mg[side] += sign * PieceSquare.mg(type, co.rank, co.file);
+        eg[side] += sign * PieceSquare.eg(type, co.rank, co.file);
+        phase += sign * PieceSquare.phase(type);
+    }
+
     /**
      * Select only pieces which match given information.
      *
@@ -220,12 +373,10 @@ class Board {
      * @param move Move object.
      * @param enpassant Target of en passant.
      *
-     * @return Piece to be moved.
-     *
-     * @throws MoveException If given information does not
-     * explicitly and exclusively define a single piece.
+     * @return Pieces matching given information. Move is only possible
+     * if there is exactly one.
      */
-    private Piece whichPiece(Move move, Coord enpassant) throws MoveException {
+    private ArrayList<Piece> whichPiece(Move move, Coord enpassant) {
         ArrayList<Piece> options = new ArrayList<Piece>();
 
         for (Piece piece : board) {
@@ -238,116 +389,246 @@ class Board {
                 else if (!move.isCapturing() && target == Type.movable) {
                     options.add(piece);
                 }
-                else if (piece.viewAt(enpassant) == Type.capturable) {
+                else if (move.to().equals(enpassant) && piece.viewAt(enpassant) == Type.capturable) {
                     options.add(piece);
                 }
             }
         }
 
-        options = crop(options, move.from());
+        return crop(options, move.from());
+    }
 
-        if (options.isEmpty()) {
-            /* No piece matches given information */
-            throw new MoveException("No such move available");
+    /**
+     * Check that a capture is claimed if and only if there is
+     * something to capture.
+     *
+     * @param coord Target square.
+     * @param capture True if capture was claimed.
+     *
+     * @return Status of the capture.
+     */
+    private MoveStatus claim(Coord coord, boolean capture) {
+        Piece target = pieceAt(coord);
+
+        if (target != null && !capture) {
+            return MoveStatus.UNCLAIMED_CAPTURE;
         }
 
-        if (options.size() != 1) {
-            /* Too many pieces match given information */
-            throw new MoveException("Ambiguous move");
+        if (target == null && capture) {
+            return MoveStatus.CAPTURE_IN_VAIN;
         }
 
-        return options.get(0);
+        return MoveStatus.OK;
     }
 
     /**
-     * Capture a opponents piece if required.
+     * Capture a opponents piece if there is one.
      *
      * @param coord Target square.
-     * @param capture True if capture was claimed.
      *
      * @return Capture of some pieces affect the availability
      * of castling. Such information must be returned.
-     *
-     * @throws MoveException If capture cannot be executed.
      */
-    private String capture(Coord coord, boolean capture) throws MoveException {
+    private String capture(Coord coord) {
         String effect = "";
         Piece target = pieceAt(coord);
 
         if (target != null) {
-            if (capture) {
-                effect = target.castlingEffect;
-                board.remove(target);
-            }
-            else {
-                throw new MoveException("Unclaimed capture");
-            }
-        }
-        else if (capture) {
-            throw new MoveException("Capture claimed in vain");
+            effect = target.castlingEffect;
+            board.remove(target);
+            squares[square(coord)] = null;
+            place(target.getType(), coord, -1);
         }
 
         return effect;
     }
 
     /**
-     * Check if king on either side is checked.
-     *
      * @param move Move object.
+     * @param rebound Feedback of the move.
      *
-     * @return True if opponent is checked or false on there is no check.
+     * @return Feedback with the check status of the opponent.
+     */
+    private Rebound checkCheck(Move move, Rebound rebound) {
+        int otherside = move.getSide()? 1: 0;
+
+        rebound.kingChecked(checked[otherside]);
+
+        return rebound;
+    }
+
+    /**
+     * Find out whether a move could be executed, without touching
+     * anything. The piece to move is left in {@link #selected}.
      *
-     * @throws MoveException If self checking move is made.
+     * @param move Move object.
+     * @param enpassant En passant condition.
+     *
+     * @return Status of the move.
      */
-    private boolean checkCheck(Move move) throws MoveException {
-        int side = move.getSide()? 0: 1;
-        int otherside = (side == 0)? 1: 0;
+    MoveStatus check(Move move, Coord enpassant) {
+        selected = null;
+
+        ArrayList<Piece> options = whichPiece(move, enpassant);
+
+        if (options.isEmpty()) {
+            /* No piece matches given information */
+            return MoveStatus.NO_SUCH_MOVE;
+        }
+
+        Coord passed = null;
+        MoveStatus status;
+
+        /* En passant moves require additional logic, so check
+         * if this is such a move.
+         */
+        if (move.piece().isPawn() && move.to().equals(enpassant)) {
+            passed = move.getSide()? enpassant.south(1): enpassant.north(1);
+            status = claim(passed, true);
+        }
+        else {
+            status = claim(move.to(), move.isCapturing());
+        }
+
+        if (status != MoveStatus.OK) {
+            return status;
+        }
+
+        /* A piece which would expose its own king cannot make the
+         * move, so it does not make the move ambiguous either.
+         */
+        int to = square(move.to());
+        int ep = (passed == null)? -1: square(passed);
+        Piece piece = null;
+
+        for (Piece option : options) {
+            if (exposesKing(option, to, ep)) continue;
+
+            if (piece != null) {
+                /* Too many pieces match given information */
+                return MoveStatus.AMBIGUOUS;
+            }
+
+            piece = option;
+        }
 
-        if (checked[side]) {
+        if (piece == null) {
             /* After a move, ones king may not be checked */
-            throw new MoveException("Self check not allowed", true);
+            return MoveStatus.SELF_CHECK;
         }
 
-        if (checked[otherside]) {
-            return true;
+        selected = piece;
+
+        return MoveStatus.OK;
+    }
+
+    /**
+     * See if a move would leave the king of the moving side in check.
+     * Move is played on a copy of the occupancy only, so nothing is
+     * changed.
+     *
+     * @param piece Piece to move.
+     * @param to Target square.
+     * @param passed Square of a pawn captured en passant or -1.
+     *
+     * @return True if the move would leave own king in check.
+     */
+    private boolean exposesKing(Piece piece, int to, int passed) {
+        Type type = piece.getType();
+        boolean side = type.getSide();
+        Coord king = kings[side? 0: 1];
+
+        if (type != Type.K && type != Type.k && king == null) return false;
+
+        long captured = (1L << to) | ((passed == -1)? 0L: 1L << passed);
+        long after = (occupied & ~bit(piece.getLocation()) & ~captured) | (1L << to);
+        int target = (type == Type.K || type == Type.k)? to: square(king);
+
+        return (attackersOf(target, !side, after) & ~captured) != 0L;
+    }
+
+    /**
+     * Find out whether given side has any legal move. Candidate moves
+     * of the pieces are tried one by one, and the search stops at the
+     * first one which does not leave own king in check. Castlings need
+     * not be tried, since a king able to castle can also step aside.
+     *
+     * @param side True for white, false for black.
+     * @param enpassant En passant target square (or null if none).
+     *
+     * @return True if there is a legal move.
+     */
+    boolean hasLegalMove(boolean side, Coord enpassant) {
+        int ep = (enpassant == null)? -1: square(enpassant);
+
+        for (Piece piece : board) {
+            if (piece.getSide() != side) continue;
+
+            boolean pawn = piece.getType().isPawn();
+            ArrayList<String> moves = piece.getMoves();
+
+            for (int i=0; i<moves.size(); i++) {
+                int to = target(moves.get(i));
+                int passed = (pawn && to == ep)? to + (side? 8: -8): -1;
+
+                if (!exposesKing(piece, to, passed)) return true;
+            }
         }
 
         return false;
     }
 
     /**
-     * Execute requested move if conditions allow it.
+     * @param move Move in the long form, e.g. <tt>Ng1f3</tt> or
+     * <tt>e7xd8=Q</tt>.
+     *
+     * @return Target square of the move.
+     */
+    private static int target(String move) {
+        int end = move.length();
+
+        if (move.charAt(end - 2) == '=') end -= 2;
+
+        return MoveCode.square('8' - move.charAt(end - 1), move.charAt(end - 2) - 'a');
+    }
+
+    /**
+     * Execute requested move if conditions allow it. Move is fully
+     * validated before anything is changed, so a move which cannot
+     * be executed leaves the board untouched.
      *
      * @param move Move object.
      * @param enpassant En passant condition.
      *
-     * @return Feedback of the new game status.
-     *
-     * @throws MoveException If move cannot be executed.
+     * @return Feedback of the new game status, or a failure telling
+     * why the move cannot be executed.
      */
-    Rebound move(Move move, Coord enpassant) throws MoveException {
+    Rebound move(Move move, Coord enpassant) {
+        MoveStatus status = check(move, enpassant);
+
+        if (status != MoveStatus.OK) {
+            return Rebound.failure(status);
+        }
+
         Rebound rebound;
-        String castling = "";
+        String castling;
+        Piece piece = selected;
         boolean turn = move.getSide();
 
-        Piece piece = whichPiece(move, enpassant);
-
-        /* En passant moves require additional logic, so check
-         * if this is such a move.
-         */
         if (move.piece().isPawn() && move.to().equals(enpassant)) {
-            /* This seems like en passant, so deduce the target
-             * and capture it.
-             */
-            Coord coord = turn? enpassant.south(1): enpassant.north(1);
-            capture(coord, true);
+            capture(turn? enpassant.south(1): enpassant.north(1));
+            castling = "";
         }
         else {
-            castling = capture(move.to(), move.isCapturing());
+            castling = capture(move.to());
         }
 
+        place(piece.getType(), piece.getLocation(), -1);
+
         rebound = piece.move(move);
 
+        place(piece.getType(), move.to(), 1);
+
         rebound.disableCastling(castling);
 
         if (rebound.canPromote()) {
@@ -356,64 +637,82 @@ class Board {
             if (officer != null) {
                 board.remove(piece);
                 board.add(createByType(officer, move.to()));
+                place(piece.getType(), move.to(), -1);
+                place(officer, move.to(), 1);
             }
         }
 
         update(rebound.getEnpassant());
 
-        rebound.kingChecked(checkCheck(move));
-
-        return rebound;
+        return checkCheck(move, rebound);
     }
 
     /**
-     * Handle everything required when castling is requested.
+     * Find out whether castling could be executed, without touching
+     * anything. King must not pass or land on an attacked square, so
+     * castling never leaves own king in check.
      *
      * @param move Move object.
      * @param castling Castling availability.
      *
-     * @return Feedback of the new game status.
-     *
-     * @throws MoveException If castling cannot be executed.
+     * @return Status of the castling.
      */
-    Rebound castling(Move move, Castle castling) throws MoveException {
-        Rebound rebound;
-
+    MoveStatus checkCastling(Move move, Castle castling) {
         if (!castling.isAllowed(move)) {
-            throw new MoveException("Castling not possible");
+            return MoveStatus.CASTLING_NOT_ALLOWED;
         }
 
         for (Coord co : castling.getFreeSqrs(move)) {
             if (state[co.rank][co.file] != Type.empty) {
-                throw new MoveException("Castling requires vacant squares");
+                return MoveStatus.CASTLING_BLOCKED;
             }
         }
 
-        for (Piece piece : board) {
-            for (Coord co : castling.getSafeSqrs(move)) {
-                if (piece.getType().isEnemy(move.piece())) {
-                    if (piece.viewAt(co) != Type.empty) {
-                        throw new MoveException("King must have safe passage");
-                    }
-                }
+        for (Coord co : castling.getSafeSqrs(move)) {
+            if (isSquareAttacked(square(co), !move.getSide())) {
+                return MoveStatus.CASTLING_THROUGH_CHECK;
             }
         }
 
+        if (pieceAt(castling.getKingsSqr(move)) == null || pieceAt(castling.getRooksSqr(move)) == null) {
+            return MoveStatus.CASTLING_UNABLE;
+        }
+
+        return MoveStatus.OK;
+    }
+
+    /**
+     * Handle everything required when castling is requested.
+     *
+     * @param move Move object.
+     * @param castling Castling availability.
+     *
+     * @return Feedback of the new game status, or a failure telling
+     * why castling cannot be executed.
+     */
+    Rebound castling(Move move, Castle castling) {
+        MoveStatus status = checkCastling(move, castling);
+
+        if (status != MoveStatus.OK) {
+            return Rebound.failure(status);
+        }
+
+        Rebound rebound;
         Piece king = pieceAt(castling.getKingsSqr(move));
         Piece rook = pieceAt(castling.getRooksSqr(move));
 
-        if (king == null || rook == null) {
-            throw new MoveException("Unable to castle");
-        }
+        place(king.getType(), king.getLocation(), -1);
+        place(rook.getType(), rook.getLocation(), -1);
 
         rebound = king.move(castling.getKingsTarget(move));
         rook.move(castling.getRooksTarget(move));
 
-        update(null);
+        place(king.getType(), king.getLocation(), 1);
+        place(rook.getType(), rook.getLocation(), 1);
 
-        rebound.kingChecked(checkCheck(move));
+        update(null);
 
-        return rebound;
+        return checkCheck(move, rebound);
     }
 
     /**
@@ -424,13 +723,7 @@ class Board {
      * @return Piece or null.
      */
     Piece pieceAt(Coord target) {
-        for (Piece piece : board) {
-            if (piece.getLocation().equals(target)) {
-                return piece;
-            }
-        }
-
-        return null;
+        return squares[square(target)];
     }
 
     /**
@@ -464,6 +757,21 @@ class Board {
         return material;
     }
 
+    /**
+     * Tapered evaluation. Middlegame and endgame sums are blended
+     * according to the game phase. Sums are maintained as pieces
+     * move, so this is a constant time operation.
+     *
+     * @return Score in centipawns from white's point of view.
+     */
+    int evaluate() {
+        int p = Math.min(phase, PieceSquare.OPENING);
+        int middle = mg[0] - mg[1];
+        int end = eg[0] - eg[1];
+
+        return (middle * p + end * (PieceSquare.OPENING - p)) / PieceSquare.OPENING;
+    }
+
     /**
      * @param turn Player of the next move.
      *
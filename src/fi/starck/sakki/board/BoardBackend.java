@@ -0,0 +1,101 @@
+package fi.starck.sakki.board;
+
+/**
+ * Internal interface of a board implementation.
+ *
+ * A backend holds one position and covers what the engine needs of
+ * it: making and taking back moves, generating legal moves, attack
+ * queries, export of the state and hashing. Moves and squares are
+ * plain integers (see {@link MoveCode}), so that a backend can be
+ * driven without allocating anything.
+ *
+ * Different backends must agree on everything, including the keys,
+ * so they can be replaced by one another and tested against each
+ * other.
+ *
+ * Note that {@link Chess} is not built on a backend. It keeps its own
+ * board of pieces and their views, and {@link MailboxBackend} is an
+ * adapter on top of a game rather than the board underneath it, so
+ * choosing a backend does not make a game any faster. Code which needs
+ * speed, like the search, sets up an {@link X88Backend} from the game
+ * (see {@link X88Backend#setPosition(Chess)}) and works on that,
+ * and the game only sees the moves finally played.
+ *
+ * The interface is therefore not a way to plug in a board from
+ * outside. It is kept within the package, where it lets the backends
+ * be replayed side by side and checked against each other.
+ *
+ * @see MoveCode
+ * @see X88Backend
+ *
+ * @author Tuomas Starck
+ */
+interface BoardBackend {
+    /**
+     * Set up a position.
+     *
+     * @param fen Position in FEN.
+     *
+     * @throws IllegalArgumentException If the position cannot be read.
+     */
+    void setFen(String fen);
+
+    /**
+     * @return Current position in FEN.
+     */
+    String getFen();
+
+    /**
+     * @return True if white holds the next move.
+     */
+    boolean getTurn();
+
+    /**
+     * @return Zobrist key of the current position, the same as
+     * {@link Chess#getKey()} would give.
+     */
+    long getKey();
+
+    /**
+     * @param square Square index.
+     *
+     * @return Piece on the square or {@link Type#empty}.
+     */
+    Type typeAt(int square);
+
+    /**
+     * Generate the legal moves of the side to move.
+     *
+     * @param moves Buffer for the moves, large enough for any position
+     * (see {@link MoveCode#MAX_MOVES}).
+     * @param offset Index of the first move in the buffer.
+     *
+     * @return Number of moves generated.
+     */
+    int generate(int[] moves, int offset);
+
+    /**
+     * Make a legal move, e.g. one given by {@link #generate}.
+     *
+     * @param move Encoded move.
+     */
+    void make(int move);
+
+    /**
+     * Take back the latest move made.
+     */
+    void unmake();
+
+    /**
+     * @param square Square index.
+     * @param side True for white, false for black.
+     *
+     * @return True if any piece of given side attacks the square.
+     */
+    boolean isAttacked(int square, boolean side);
+
+    /**
+     * @return True if the side to move is in check.
+     */
+    boolean inCheck();
+}
@@ -11,35 +11,35 @@ import java.util.HashSet;
  * @author Tuomas Starck
  */
 class Castle {
-    private final String valid = "KQkq";
+    private static final String VALID = "KQkq";
 
-    private final Coord[] kingsSquares = {
+    private static final Coord[] KINGS_SQUARES = {
         new Coord("e1", true), new Coord("e8", true)
     };
 
-    private final Coord[] kingsTargets = {
+    private static final Coord[] KINGS_TARGETS = {
         new Coord("g1", true), new Coord("c1", true),
         new Coord("g8", true), new Coord("c8", true)
     };
 
-    private final Coord[] rooksSquares = {
+    private static final Coord[] ROOKS_SQUARES = {
         new Coord("h1", true), new Coord("a1", true),
         new Coord("h8", true), new Coord("a8", true)
     };
 
-    private final Coord[] rooksTargets = {
+    private static final Coord[] ROOKS_TARGETS = {
         new Coord("f1", true), new Coord("d1", true),
         new Coord("f8", true), new Coord("d8", true)
     };
 
-    private final Coord[][] freeSquares = {
+    private static final Coord[][] FREE_SQUARES = {
         {new Coord("f1", true), new Coord("g1", true)},
         {new Coord("b1", true), new Coord("c1", true), new Coord("d1", true)},
         {new Coord("f8", true), new Coord("g8", true)},
         {new Coord("b8", true), new Coord("c8", true), new Coord("d8", true)}
     };
 
-    private final Coord[][] safeSquares = {
+    private static final Coord[][] SAFE_SQUARES = {
         {new Coord("e1", true), new Coord("f1", true), new Coord("g1", true)},
         {new Coord("c1", true), new Coord("d1", true), new Coord("e1", true)},
         {new Coord("e8", true), new Coord("f8", true), new Coord("g8", true)},
@@ -65,13 +65,33 @@ class Castle {
         enable(str);
     }
 
+    /**
+     * Replace the castling options.
+     *
+     * @param str Castling choices available.
+     */
+    void reset(String str) {
+        castling.clear();
+        enable(str);
+    }
+
+    /**
+     * Take over the castling options of another.
+     *
+     * @param that Castling options to copy.
+     */
+    void copyFrom(Castle that) {
+        castling.clear();
+        castling.addAll(that.castling);
+    }
+
     /**
      * @param c Character of castling options.
      *
      * @return True if character is valid.
      */
     private boolean isValid(Character c) {
-        return (valid.indexOf(c) != -1);
+        return (VALID.indexOf(c) != -1);
     }
 
     /**
@@ -102,7 +122,7 @@ class Castle {
      * @return True if castling is allowed.
      */
     public boolean isAllowed(Move move) {
-        return castling.contains(valid.charAt(index(move)));
+        return castling.contains(VALID.charAt(index(move)));
     }
 
     /**
@@ -111,13 +131,13 @@ class Castle {
      * @param status Status of the board.
      */
     void crop(Type[][] status) {
-        Coord K = kingsSquares[0];
-        Coord k = kingsSquares[1];
+        Coord K = KINGS_SQUARES[0];
+        Coord k = KINGS_SQUARES[1];
 
-        Coord hR = rooksSquares[0];
-        Coord aR = rooksSquares[1];
-        Coord hr = rooksSquares[2];
-        Coord ar = rooksSquares[3];
+        Coord hR = ROOKS_SQUARES[0];
+        Coord aR = ROOKS_SQUARES[1];
+        Coord hr = ROOKS_SQUARES[2];
+        Coord ar = ROOKS_SQUARES[3];
 
         if (status[K.rank][K.file] != Type.K) disable("KQ");
         if (status[k.rank][k.file] != Type.k) disable("kq");
@@ -150,7 +170,7 @@ class Castle {
      * @return Square where king ought to be.
      */
     public Coord getKingsSqr(Move move) {
-        return kingsSquares[move.getSide()? 0: 1];
+        return KINGS_SQUARES[move.getSide()? 0: 1];
     }
 
     /**
@@ -159,7 +179,7 @@ class Castle {
      * @return Square to which king should move when castled.
      */
     public Coord getKingsTarget(Move move) {
-        return kingsTargets[index(move)];
+        return KINGS_TARGETS[index(move)];
     }
 
     /**
@@ -168,7 +188,7 @@ class Castle {
      * @return Square where rook ought to be.
      */
     public Coord getRooksSqr(Move move) {
-        return rooksSquares[index(move)];
+        return ROOKS_SQUARES[index(move)];
     }
 
     /**
@@ -177,7 +197,7 @@ class Castle {
      * @return Square to which rook moves at castling.
      */
     public Coord getRooksTarget(Move move) {
-        return rooksTargets[index(move)];
+        return ROOKS_TARGETS[index(move)];
     }
 
     /**
@@ -186,7 +206,7 @@ class Castle {
      * @return Squares which need to be vacant at castling.
      */
     public Coord[] getFreeSqrs(Move move) {
-        return freeSquares[index(move)];
+        return FREE_SQUARES[index(move)];
     }
 
     /**
@@ -195,7 +215,7 @@ class Castle {
      * @return Squares which must not be threatened at castling.
      */
     public Coord[] getSafeSqrs(Move move) {
-        return safeSquares[index(move)];
+        return SAFE_SQUARES[index(move)];
     }
 
     /**
@@ -205,7 +225,7 @@ class Castle {
     public String toString() {
         String str = "";
 
-        for (Character c : valid.toCharArray()) {
+        for (Character c : VALID.toCharArray()) {
             if (castling.contains(c)) {
                 str += c;
             }
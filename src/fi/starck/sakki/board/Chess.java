@@ -1,5 +1,8 @@
 package fi.starck.sakki.board;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * <p>An implementation of The Game of Chess.</p>
  *
@@ -44,6 +47,8 @@ package fi.starck.sakki.board;
  * @author Tuomas Starck
  */
 public class Chess {
+    private static final int HISTORY = 16;
+
     private Board board;
 
     private boolean turn;
@@ -52,6 +57,12 @@ public class Chess {
     private int halfmove;
     private int fullmove;
     private boolean checked;
+    private long key;
+    private long pawnKey;
+
+    /* Keys of the earlier positions, oldest first */
+    private long[] history;
+    private int plies;
 
     /**
      * Constructs the initial position. Pieces and game settings
@@ -91,40 +102,69 @@ public class Chess {
      * are discarded if provided.
      */
     public Chess(String[] fenArray) {
-        turn = true;
-        enpassant = null;
-        halfmove = 0;
-        fullmove = 1;
+        board = new Board();
+        castling = new Castle();
+        history = new long[HISTORY];
+
+        reset(fenArray);
+    }
+
+    /**
+     * Constructs a copy of a game, history included.
+     *
+     * @param that Game to copy.
+     *
+     * @see #copyFrom(Chess)
+     */
+    public Chess(Chess that) {
+        board = new Board();
+        castling = new Castle();
+        history = new long[that.history.length];
+
+        copyFrom(that);
+    }
+
+    /**
+     * Set up a new position in place, reusing this game. Parsing is
+     * the same as that of {@link #Chess(String)}, and history of the
+     * earlier positions is forgotten.
+     *
+     * @param fenString FEN to be used to initialize the game, or null
+     * for the initial position.
+     *
+     * @throws IllegalArgumentException If the piece placement could
+     * not be read. Game is left as it was.
+     */
+    public void reset(String fenString) {
+        reset(fenString == null? new String[]{}: fenString.split(" "));
+    }
+
+    /**
+     * @param fenArray An array of FEN primitives.
+     *
+     * @see #Chess(String[])
+     */
+    private void reset(String[] fenArray) {
+        Coord ep = null;
 
         if (fenArray.length >= 4) {
             try {
-                enpassant = new Coord(fenArray[3]);
+                ep = new Coord(fenArray[3]);
             }
             catch (Exception pass) {}
         }
 
-        if (fenArray.length >= 1) {
-            board = new Board(fenArray[0], enpassant);
-        }
-        else {
-            board = new Board();
-        }
-
-        if (fenArray.length >= 2) {
-            if (fenArray[1].equals("b")) {
-                turn = false;
-            }
-        }
+        board.reset((fenArray.length >= 1)? fenArray[0]: Board.INITIAL, ep);
 
-        if (fenArray.length >= 3) {
-            castling = new Castle(fenArray[2]);
-        }
-        else {
-            castling = new Castle();
-        }
+        enpassant = ep;
+        turn = !(fenArray.length >= 2 && fenArray[1].equals("b"));
 
+        castling.reset((fenArray.length >= 3)? fenArray[2]: "KQkq");
         castling.crop(board.getState());
 
+        halfmove = 0;
+        fullmove = 1;
+
         if (fenArray.length >= 6) {
             try {
                 halfmove = Integer.parseInt(fenArray[4]);
@@ -132,6 +172,41 @@ public class Chess {
             }
             catch (NumberFormatException pass) {}
         }
+
+        checked = false;
+        key = Zobrist.hash(board.getState(), turn, castling.toString(), enpassant);
+        pawnKey = Zobrist.pawns(board.getState());
+
+        plies = 0;
+    }
+
+    /**
+     * Make this game a copy of another, history included. The state
+     * is copied as it is, so no FEN is written or parsed, and the
+     * history buffer is reused when it is large enough.
+     *
+     * @param that Game to copy.
+     */
+    public void copyFrom(Chess that) {
+        if (that == this) return;
+
+        board.copyFrom(that.board, that.enpassant);
+        castling.copyFrom(that.castling);
+
+        turn = that.turn;
+        enpassant = that.enpassant;
+        halfmove = that.halfmove;
+        fullmove = that.fullmove;
+        checked = that.checked;
+        key = that.key;
+        pawnKey = that.pawnKey;
+
+        if (history.length < that.plies) {
+            history = new long[that.history.length];
+        }
+
+        System.arraycopy(that.history, 0, history, 0, that.plies);
+        plies = that.plies;
     }
 
     /**
@@ -140,11 +215,58 @@ public class Chess {
      * @param algebraic Move in Algebraic chess notation.
      *
      * @throws MoveException If move cannot be executed.
+     *
+     * @see #tryMove(String)
      */
     public void move(String algebraic) throws MoveException {
+        MoveStatus status = tryMove(algebraic);
+
+        if (status != MoveStatus.OK) {
+            throw new MoveException(status.toString());
+        }
+    }
+
+    /**
+     * Check whether a move could be made, without making it.
+     *
+     * @param algebraic Move in Algebraic chess notation.
+     *
+     * @return True if the move is legal.
+     */
+    public boolean isLegal(String algebraic) {
+        Move move = Move.parse(algebraic, turn);
+
+        if (move == null) {
+            return false;
+        }
+
+        if (move.isCastling()) {
+            return board.checkCastling(move, castling).isLegal();
+        }
+
+        return board.check(move, enpassant).isLegal();
+    }
+
+    /**
+     * Make a move if it is legal. Nothing is thrown, so this is the
+     * way to go when illegal moves are common.
+     *
+     * Move is validated in full before anything is changed, so an
+     * illegal move leaves the game as it was.
+     *
+     * @param algebraic Move in Algebraic chess notation.
+     *
+     * @return Status of the move. Move is made only if the status
+     * is {@link MoveStatus#OK}.
+     */
+    public MoveStatus tryMove(String algebraic) {
         Rebound rebound;
 
-        Move move = new Move(algebraic, turn);
+        Move move = Move.parse(algebraic, turn);
+
+        if (move == null) {
+            return MoveStatus.UNREADABLE;
+        }
 
         if (move.isCastling()) {
             /* Castlings are tricky and handled separately */
@@ -155,6 +277,10 @@ public class Chess {
             rebound = board.move(move, enpassant);
         }
 
+        if (rebound.getStatus() != MoveStatus.OK) {
+            return rebound.getStatus();
+        }
+
         if (turn) {
             turn = false;
         }
@@ -182,6 +308,181 @@ public class Chess {
         else {
             halfmove++;
         }
+
+        if (plies == history.length) {
+            history = Arrays.copyOf(history, 2 * plies);
+        }
+
+        history[plies++] = key;
+
+        key = Zobrist.hash(board.getState(), turn, castling.toString(), enpassant);
+        pawnKey = Zobrist.pawns(board.getState());
+
+        return MoveStatus.OK;
+    }
+
+    /**
+     * Make a sequence of moves, stopping at the first one which cannot
+     * be made. Game is left in the position before that move.
+     *
+     * @param moves Moves in Algebraic chess notation.
+     *
+     * @return Index and reason of the first failure, if any.
+     *
+     * @see #applyAll(CharSequence[], boolean)
+     */
+    public Replay applyAll(CharSequence[] moves) {
+        return applyAll(moves, false);
+    }
+
+    /**
+     * Make a sequence of moves, stopping at the first one which cannot
+     * be made. Game is left in the position before that move.
+     *
+     * @param moves Moves in Algebraic chess notation.
+     * @param fen True if FEN of the final position is wanted.
+     *
+     * @return Index and reason of the first failure, if any.
+     */
+    public Replay applyAll(CharSequence[] moves, boolean fen) {
+        MoveStatus status = MoveStatus.OK;
+        int ply = 0;
+
+        while (ply < moves.length) {
+            CharSequence move = moves[ply];
+
+            status = (move == null)? MoveStatus.UNREADABLE: tryMove(move.toString());
+
+            if (status != MoveStatus.OK) break;
+
+            ply++;
+        }
+
+        return new Replay(ply, status, fen? toString(): null);
+    }
+
+    /**
+     * Take over the history of an earlier position of the same game,
+     * so that repetitions of positions before this one are detected.
+     * Only the part since the last capture or pawn move is kept, since
+     * no position before it can occur again.
+     *
+     * @param earlier Position this game was continued from, with the
+     * same halfmove count.
+     */
+    protected void inherit(Chess earlier) {
+        int n = Math.min(halfmove, earlier.plies);
+
+        if (history.length < n + 1) {
+            history = new long[Math.max(HISTORY, 2 * n)];
+        }
+
+        System.arraycopy(earlier.history, earlier.plies - n, history, 0, n);
+        plies = n;
+    }
+
+    /**
+     * @return Keys of the positions since the last capture or pawn
+     * move, oldest first.
+     */
+    long[] getReversible() {
+        int n = Math.min(halfmove, plies);
+
+        return Arrays.copyOfRange(history, plies - n, plies);
+    }
+
+    /**
+     * Count the earlier occurrences of the current position. Only
+     * positions with the same side to move since the last capture or
+     * pawn move are compared, so this takes time in proportion to the
+     * number of reversible moves and allocates nothing.
+     *
+     * @return Number of times the current position has been on the
+     * board before.
+     */
+    public int getRepetitions() {
+        int count = 0;
+        int last = Math.max(0, plies - halfmove);
+
+        for (int i=plies-2; i>=last; i-=2) {
+            if (history[i] == key) count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Find out whether the game has ended. Mate and stalemate are found
+     * by looking for a single legal move, so this is cheap enough to be
+     * called after every move. Mate takes precedence over the draws, as
+     * a mate on the fiftieth move still wins.
+     *
+     * @return State of the game.
+     */
+    public GameStatus status() {
+        if (!board.hasLegalMove(turn, enpassant)) {
+            return (board.isChecked(turn) != null)? GameStatus.CHECKMATE: GameStatus.STALEMATE;
+        }
+
+        if (isInsufficientMaterial()) {
+            return GameStatus.INSUFFICIENT_MATERIAL;
+        }
+
+        if (halfmove >= 100) {
+            return GameStatus.FIFTY_MOVES;
+        }
+
+        if (getRepetitions() >= 2) {
+            return GameStatus.REPETITION;
+        }
+
+        return GameStatus.ONGOING;
+    }
+
+    /**
+     * Check whether the game is drawn by the rules: the current
+     * position has occurred for the third time, fifty moves have
+     * been made without a capture or a pawn move, or neither side
+     * has enough material to mate.
+     *
+     * @return True if the game is drawn.
+     */
+    public boolean isDraw() {
+        return halfmove >= 100 || getRepetitions() >= 2 || isInsufficientMaterial();
+    }
+
+    /**
+     * @return True if neither side can mate: bare kings, kings and
+     * a single bishop or knight, or kings and any number of bishops
+     * all on squares of the same colour.
+     */
+    public boolean isInsufficientMaterial() {
+        Type[][] state = board.getState();
+        int knights = 0;
+        int light = 0;
+        int dark = 0;
+
+        for (int i=0; i<8; i++) {
+            for (int j=0; j<8; j++) {
+                switch (state[i][j]) {
+                    case K: case k: case empty:
+                        break;
+                    case N: case n:
+                        knights++;
+                        break;
+                    case B: case b:
+                        if (((i + j) & 1) == 0) light++;
+                        else dark++;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+        }
+
+        if (knights == 0) return light == 0 || dark == 0;
+
+        return knights == 1 && light + dark == 0;
     }
 
     /**
@@ -202,13 +503,137 @@ public class Chess {
     }
 
     /**
-     * Return the state of the board.
+     * Constant time lookup of a square.
+     *
+     * @param square Square index (see {@link MoveCode}).
+     *
+     * @return Piece on the square or {@link Type#empty}.
+     */
+    public Type typeAt(int square) {
+        return board.getState()[square >> 3][square & 7];
+    }
+
+    /**
+     * @param square Square index (see {@link MoveCode}).
+     * @param side True for white, false for black.
+     *
+     * @return True if any piece of given side attacks the square.
+     */
+    public boolean isSquareAttacked(int square, boolean side) {
+        return board.isSquareAttacked(square, side);
+    }
+
+    /**
+     * Find the pieces attacking a square, e.g. for static exchange
+     * evaluation or for showing threats.
+     *
+     * @param square Square index (see {@link MoveCode}).
+     * @param side True for white, false for black.
+     *
+     * @return Pieces of given side attacking the square, as a bit mask
+     * where bit <i>s</i> is set for a piece on square <i>s</i>.
+     */
+    public long attackersOf(int square, boolean side) {
+        return board.attackersOf(square, side);
+    }
+
+    /**
+     * Copy the board into a buffer, one byte per square in the order
+     * of {@link MoveCode} squares. Each byte is the index of the piece
+     * (see {@link Type#getIndex()}), plus 8 for black pieces, or zero
+     * for an empty square. Nothing is allocated.
+     *
+     * @param squares Buffer of at least 64 bytes.
+     *
+     * @return The buffer.
+     */
+    public byte[] snapshot(byte[] squares) {
+        Type[][] state = board.getState();
+
+        for (int i=0; i<64; i++) {
+            Type type = state[i >> 3][i & 7];
+
+            int black = (type == Type.empty || type.getSide())? 0: 8;
+
+            squares[i] = (byte) (type.getIndex() | black);
+        }
+
+        return squares;
+    }
+
+    /**
+     * Return the state of the board. The array is a copy, so changing
+     * it does not affect the game.
      *
      * @return Two dimensional array of type Type containing
      * the state of the board.
+     *
+     * @see #typeAt(int)
+     * @see #snapshot(byte[])
      */
     public Type[][] getState() {
-        return board.getState();
+        Type[][] state = board.getState();
+        Type[][] copy = new Type[8][];
+
+        for (int i=0; i<8; i++) {
+            copy[i] = state[i].clone();
+        }
+
+        return copy;
+    }
+
+    /**
+     * List the moves of the side holding the next move. Moves are
+     * written with full square of departure (e.g. <tt>Ng1f3</tt> or
+     * <tt>e7xd8=Q</tt>), so each of them is unambiguous. Castlings
+     * are written as king moves (e.g. <tt>Ke1g1</tt>). Some of them
+     * may still turn out to be illegal, e.g. by leaving own king
+     * checked.
+     *
+     * @return Candidate moves in Algebraic chess notation.
+     */
+    public ArrayList<String> getMoves() {
+        ArrayList<String> moves = board.getAllMoves(turn);
+        String options = castling.toString();
+
+        if (turn) {
+            if (options.indexOf('K') != -1) moves.add("Ke1g1");
+            if (options.indexOf('Q') != -1) moves.add("Ke1c1");
+        }
+        else {
+            if (options.indexOf('k') != -1) moves.add("Ke8g8");
+            if (options.indexOf('q') != -1) moves.add("Ke8c8");
+        }
+
+        return moves;
+    }
+
+    /**
+     * Evaluate the position with piece-square tables tapered by
+     * game phase. This is a constant time operation.
+     *
+     * @return Score in centipawns from white's point of view.
+     */
+    public int getEvaluation() {
+        return board.evaluate();
+    }
+
+    /**
+     * @return Zobrist key of the current position.
+     *
+     * @see Zobrist
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return Zobrist key of the pawns of the current position.
+     *
+     * @see Zobrist
+     */
+    public long getPawnKey() {
+        return pawnKey;
     }
 
     /**
@@ -27,9 +27,9 @@ public class Coord {
      * @param f File index.
      * @param r Rank index.
      *
-     * @throws Exception If indices are out of bounds.
+     * @throws IllegalArgumentException If indices are out of bounds.
      */
-    public Coord(int f, int r) throws Exception {
+    public Coord(int f, int r) {
         file = verify(f);
         rank = verify(r);
         readable = lookupTable[f] + String.valueOf(8-r);
@@ -40,27 +40,21 @@ public class Coord {
      *
      * @param loc SAN square string.
      *
-     * @throws Exception If input is invalid.
+     * @throws IllegalArgumentException If input is invalid.
      */
-    public Coord(String loc) throws Exception {
+    public Coord(String loc) {
         parse(loc);
     }
 
     /**
-     * Unsafe create coordinate. This constructor only throws
-     * unchecked exceptions and is meant to be used internally
-     * only.
+     * Create coordinate for internal use. Same as {@link #Coord(String)},
+     * which no longer throws checked exceptions either.
      *
      * @param loc SAN square string.
      * @param any Ignored.
      */
     Coord(String loc, boolean any) {
-        try {
-            parse(loc);
-        }
-        catch (Exception e) {
-            throw new IllegalArgumentException();
-        }
+        parse(loc);
     }
 
     /**
@@ -68,11 +62,11 @@ public class Coord {
      *
      * @return Valid index.
      *
-     * @throws Exception If index is not valid.
+     * @throws IllegalArgumentException If index is not valid.
      */
-    private int verify(int x) throws Exception {
+    private static int verify(int x) {
         if (x < 0 || 8 <= x) {
-            throw new Exception("Out of bounds value");
+            throw new IllegalArgumentException("Out of bounds value");
         }
         return x;
     }
@@ -82,11 +76,11 @@ public class Coord {
      *
      * @param loc SAN square string.
      *
-     * @throws Exception If input is invalid.
+     * @throws IllegalArgumentException If input is invalid.
      */
-    private void parse(String loc) throws Exception {
+    private void parse(String loc) {
         if (loc == null) {
-            throw new Exception("Null pointer");
+            throw new IllegalArgumentException("Null pointer");
         }
 
         if (loc.matches(regex)) {
@@ -105,7 +99,7 @@ public class Coord {
             rank = 8 - rawRank;
         }
         else {
-            throw new Exception("Parse error");
+            throw new IllegalArgumentException("Parse error");
         }
     }
 
@@ -115,17 +109,15 @@ public class Coord {
      * @param fDelta Distance on file.
      * @param rDelta Distance on rank.
      *
-     * @return New coordinate.
+     * @return New coordinate or null, if it is off the board.
      */
     private Coord relativeCoord(int fDelta, int rDelta) {
-        Coord ret = null;
+        int f = file + fDelta;
+        int r = rank + rDelta;
 
-        try {
-            ret = new Coord(file+fDelta, rank+rDelta);
-        }
-        catch (Exception pass) {}
+        if (f < 0 || 8 <= f || r < 0 || 8 <= r) return null;
 
-        return ret;
+        return new Coord(f, r);
     }
 
     Coord north(int dist) {
@@ -0,0 +1,67 @@
+package fi.starck.sakki.board;
+
+/**
+ * State of a game, see {@link Chess#status()}. Each way for a game to
+ * end has a message of its own.
+ *
+ * @author Tuomas Starck
+ */
+public enum GameStatus {
+    /**
+     * Game goes on.
+     */
+    ONGOING("Game goes on"),
+
+    /**
+     * Side to move is in check and has no legal moves.
+     */
+    CHECKMATE("Checkmate"),
+
+    /**
+     * Side to move is not in check, but has no legal moves.
+     */
+    STALEMATE("Stalemate"),
+
+    /**
+     * Neither side has enough material to mate.
+     */
+    INSUFFICIENT_MATERIAL("Draw by insufficient material"),
+
+    /**
+     * Fifty moves have been made without a capture or a pawn move.
+     */
+    FIFTY_MOVES("Draw by the fifty-move rule"),
+
+    /**
+     * Position has occurred for the third time.
+     */
+    REPETITION("Draw by threefold repetition");
+
+    private final String message;
+
+    private GameStatus(String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return True if the game has ended.
+     */
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+
+    /**
+     * @return True if the game has ended in a draw.
+     */
+    public boolean isDraw() {
+        return this != ONGOING && this != CHECKMATE;
+    }
+
+    /**
+     * @return User-friendly message.
+     */
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,155 @@
+package fi.starck.sakki.board;
+
+import java.util.ArrayList;
+
+/**
+ * Board backend on top of {@link Chess}, i.e. the piece list and the
+ * views of the pieces.
+ *
+ * Moves are handed over to {@link Chess#move(String)} in long form and
+ * taken back by parsing the FEN of the earlier position, and legality
+ * is found out by trying each candidate move on a copy. This is slow,
+ * but it is the reference the other backends are tested against.
+ *
+ * @author Tuomas Starck
+ */
+final class MailboxBackend implements BoardBackend {
+    private static final int[][] KNIGHT_STEPS = {
+        {-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}
+    };
+    private static final int[][] KING_STEPS = {
+        {-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}
+    };
+
+    private Chess game;
+    private final ArrayList<String> history;
+
+    MailboxBackend(String fen) {
+        history = new ArrayList<String>();
+        setFen(fen);
+    }
+
+    @Override
+    public void setFen(String fen) {
+        game = new Chess(fen);
+        history.clear();
+    }
+
+    @Override
+    public String getFen() {
+        return game.toString();
+    }
+
+    @Override
+    public boolean getTurn() {
+        return game.getTurn();
+    }
+
+    @Override
+    public long getKey() {
+        return game.getKey();
+    }
+
+    @Override
+    public Type typeAt(int square) {
+        return game.typeAt(square);
+    }
+
+    @Override
+    public int generate(int[] moves, int offset) {
+        int count = 0;
+
+        for (String candidate : game.getMoves()) {
+            if (game.isLegal(candidate)) {
+                moves[offset + count++] = MoveCode.parse(candidate);
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public void make(int move) {
+        history.add(game.toString());
+
+        MoveStatus status = game.tryMove(format(move));
+
+        if (!status.isLegal()) {
+            history.remove(history.size() - 1);
+            throw new IllegalArgumentException(MoveCode.toString(move) + ": " + status);
+        }
+    }
+
+    /**
+     * @return Move in the long form understood by {@link Move}.
+     */
+    private String format(int move) {
+        Type[][] state = game.getState();
+        int from = MoveCode.from(move);
+        int to = MoveCode.to(move);
+        Type piece = state[from >> 3][from & 7];
+        boolean capture = state[to >> 3][to & 7] != Type.empty
+            || (piece.isPawn() && (from & 7) != (to & 7));
+
+        String str = piece.nameToSan() + MoveCode.name(from) + (capture? "x": "") + MoveCode.name(to);
+        String code = MoveCode.toString(move);
+
+        return str + code.substring(4);
+    }
+
+    @Override
+    public void unmake() {
+        game.reset(history.remove(history.size() - 1));
+    }
+
+    @Override
+    public boolean isAttacked(int square, boolean side) {
+        Type[][] state = game.getState();
+        int rank = square >> 3;
+        int file = square & 7;
+        int behind = side? 1: -1;
+
+        for (int df=-1; df<=1; df+=2) {
+            if (is(state, rank + behind, file + df, side? Type.P: Type.p)) return true;
+        }
+
+        for (int[] step : KNIGHT_STEPS) {
+            if (is(state, rank + step[0], file + step[1], side? Type.N: Type.n)) return true;
+        }
+
+        for (int[] step : KING_STEPS) {
+            if (is(state, rank + step[0], file + step[1], side? Type.K: Type.k)) return true;
+
+            Type slider = (step[0] == 0 || step[1] == 0)? (side? Type.R: Type.r): (side? Type.B: Type.b);
+            Type queen = side? Type.Q: Type.q;
+
+            for (int i=1; i<8; i++) {
+                int r = rank + i * step[0];
+                int f = file + i * step[1];
+
+                if (r < 0 || r > 7 || f < 0 || f > 7) break;
+
+                if (state[r][f] == Type.empty) continue;
+                if (state[r][f] == slider || state[r][f] == queen) return true;
+
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean is(Type[][] state, int rank, int file, Type type) {
+        return rank >= 0 && rank <= 7 && file >= 0 && file <= 7 && state[rank][file] == type;
+    }
+
+    @Override
+    public boolean inCheck() {
+        return game.isChecked() != null;
+    }
+
+    @Override
+    public String toString() {
+        return getFen();
+    }
+}
@@ -45,15 +45,13 @@ class Move {
     public final int KINGSIDE = 1;
     public final int QUEENSIDE = 2;
 
-    private final String castlingregex ="[0O]((-[0O]){1,2})([#+])?";
+    private static final Pattern castlingregex =
+    Pattern.compile("[0O]((-[0O]){1,2})([#+])?");
 
-    private final String regularregex =
-    "([NBRQK])?([a-h]?[1-8]?)(x)?([a-h][1-8])(=?([NBRQ]))?([#+])?(ep)?[!?]*";
+    private static final Pattern regularregex = Pattern.compile(
+    "([NBRQK])?([a-h]?[1-8]?)(x)?([a-h][1-8])(=?([NBRQ]))?([#+])?(ep)?[!?]*");
     /*1:piece   2:from       3:x  4:to           6:promo   7:act */
 
-    private Matcher move;
-    private Matcher castle;
-
     private boolean side;
     private Coord to;
     private Type piece;
@@ -73,6 +71,14 @@ class Move {
      * @throws MoveException If SAN cannot be parsed.
      */
     public Move(String str, boolean turn) throws MoveException {
+        this(turn);
+
+        if (!read(str)) {
+            throw new MoveException(MoveStatus.UNREADABLE.toString());
+        }
+    }
+
+    private Move(boolean turn) {
         side = turn;
         to = null;
         piece = null;
@@ -82,9 +88,31 @@ class Move {
         capture = false;
         check = false;
         mate = false;
+    }
+
+    /**
+     * Parse SAN without throwing anything.
+     *
+     * @param str SAN string.
+     * @param turn Which side hold move (true for white and vise versa).
+     *
+     * @return Move or null, if SAN cannot be parsed.
+     */
+    static Move parse(String str, boolean turn) {
+        Move move = new Move(turn);
+        return move.read(str)? move: null;
+    }
 
-        move = Pattern.compile(regularregex).matcher(str);
-        castle = Pattern.compile(castlingregex).matcher(str);
+    /**
+     * @param str SAN string.
+     *
+     * @return False if SAN cannot be parsed.
+     */
+    private boolean read(String str) {
+        if (str == null) return false;
+
+        Matcher move = regularregex.matcher(str);
+        Matcher castle = castlingregex.matcher(str);
 
         /* Before anything else, check if the move seems like castling
          * move generated by graphical frontend.
@@ -111,13 +139,8 @@ class Move {
                 capture = true;
             }
 
-            /* 4: To (target square) */
-            try {
-                to = new Coord(move.group(4));
-            }
-            catch (Exception e) {
-                throw new MoveException("Impossible error");
-            }
+            /* 4: To (target square), valid by the pattern */
+            to = new Coord(move.group(4));
 
             /* 6: Officer to which pawn is to be promoted */
             if (move.group(6) != null) {
@@ -132,8 +155,10 @@ class Move {
             setupCastling(direction, castle.group(3));
         }
         else {
-            throw new MoveException("Incomprehensible command");
+            return false;
         }
+
+        return true;
     }
 
     /**
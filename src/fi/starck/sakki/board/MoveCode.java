@@ -0,0 +1,167 @@
+package fi.starck.sakki.board;
+
+/**
+ * Moves and squares encoded as integers.
+ *
+ * Squares are numbered from 0 to 63 in the order of FEN and the game
+ * board state, i.e. <tt>a8</tt> is 0, <tt>h8</tt> is 7 and <tt>h1</tt>
+ * is 63, so square <i>s</i> is <tt>state[s / 8][s % 8]</tt>.
+ *
+ * A move has the square of departure in bits 0-5, the target square
+ * in bits 6-11 and the index (see {@link Type#getIndex()}) of the
+ * officer to promote to in bits 12-14. Castlings are king moves of two
+ * squares. Zero is never a move.
+ *
+ * @see X88Backend
+ *
+ * @author Tuomas Starck
+ */
+public final class MoveCode {
+    /**
+     * No move.
+     */
+    public static final int NONE = 0;
+
+    /**
+     * Largest number of legal moves in any position.
+     */
+    public static final int MAX_MOVES = 256;
+
+    private MoveCode() {}
+
+    /**
+     * @param from Square of departure.
+     * @param to Target square.
+     * @param promotion Index of the officer to promote to or zero.
+     *
+     * @return Encoded move.
+     */
+    public static int encode(int from, int to, int promotion) {
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    /**
+     * @param move Encoded move.
+     *
+     * @return Square of departure.
+     */
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    /**
+     * @param move Encoded move.
+     *
+     * @return Target square.
+     */
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * @param move Encoded move.
+     *
+     * @return Index of the officer to promote to or zero.
+     */
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    /**
+     * @param rank Rank index (0 for the 8th rank).
+     * @param file File index.
+     *
+     * @return Square.
+     */
+    public static int square(int rank, int file) {
+        return 8 * rank + file;
+    }
+
+    /**
+     * @param name Square in SAN, e.g. <tt>e4</tt>.
+     *
+     * @return Square or -1 if the name is not a square.
+     */
+    public static int square(CharSequence name) {
+        if (name.length() != 2) return -1;
+
+        int file = name.charAt(0) - 'a';
+        int rank = '8' - name.charAt(1);
+
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+
+        return square(rank, file);
+    }
+
+    /**
+     * @param square Square.
+     *
+     * @return Name of the square in SAN.
+     */
+    public static String name(int square) {
+        return new String(new char[] {
+            (char) ('a' + (square & 7)), (char) ('8' - (square >> 3))
+        });
+    }
+
+    /**
+     * Read a move written with full square of departure, as listed by
+     * {@link Chess#getMoves()}, e.g. <tt>Ng1f3</tt>, <tt>e7xd8=Q</tt>
+     * or <tt>Ke1g1</tt>.
+     *
+     * @param str Move.
+     *
+     * @return Encoded move or {@link #NONE} if it cannot be read.
+     */
+    public static int parse(String str) {
+        int i = 0;
+
+        if (i < str.length() && "NBRQK".indexOf(str.charAt(i)) != -1) i++;
+        if (str.length() < i + 4) return NONE;
+
+        int from = square(str.subSequence(i, i + 2));
+        i += 2;
+
+        if (str.charAt(i) == 'x') i++;
+        if (str.length() < i + 2) return NONE;
+
+        int to = square(str.subSequence(i, i + 2));
+        i += 2;
+
+        int promotion = 0;
+
+        if (i < str.length() && str.charAt(i) == '=') i++;
+
+        if (i < str.length()) {
+            int officer = "BNRQ".indexOf(str.charAt(i));
+
+            if (officer == -1) return NONE;
+
+            promotion = Type.valueOf(str.substring(i, i + 1)).getIndex();
+            i++;
+        }
+
+        if (from == -1 || to == -1 || from == to || i != str.length()) return NONE;
+
+        return encode(from, to, promotion);
+    }
+
+    /**
+     * @param move Encoded move.
+     *
+     * @return Move as squares of departure and target, e.g.
+     * <tt>g1f3</tt> or <tt>e7e8=Q</tt>.
+     */
+    public static String toString(int move) {
+        String str = name(from(move)) + name(to(move));
+
+        switch (promotion(move)) {
+            case 2: return str + "=B";
+            case 3: return str + "=N";
+            case 4: return str + "=R";
+            case 5: return str + "=Q";
+        }
+
+        return str;
+    }
+}
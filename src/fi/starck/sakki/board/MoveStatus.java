@@ -0,0 +1,86 @@
+package fi.starck.sakki.board;
+
+/**
+ * Outcome of an attempt to make a move, see {@link Chess#tryMove(String)}.
+ * Each reason for rejecting a move has a message of its own, the same
+ * one {@link MoveException} carries.
+ *
+ * @author Tuomas Starck
+ */
+public enum MoveStatus {
+    /**
+     * Move is legal.
+     */
+    OK("OK"),
+
+    /**
+     * Move is not written in any known notation.
+     */
+    UNREADABLE("Incomprehensible command"),
+
+    /**
+     * No piece can make the move.
+     */
+    NO_SUCH_MOVE("No such move available"),
+
+    /**
+     * More than one piece can make the move.
+     */
+    AMBIGUOUS("Ambiguous move"),
+
+    /**
+     * Move captures, but no capture is written.
+     */
+    UNCLAIMED_CAPTURE("Unclaimed capture"),
+
+    /**
+     * Capture is written, but there is nothing to capture.
+     */
+    CAPTURE_IN_VAIN("Capture claimed in vain"),
+
+    /**
+     * Move would leave own king in check.
+     */
+    SELF_CHECK("Self check not allowed"),
+
+    /**
+     * Castling right has been lost.
+     */
+    CASTLING_NOT_ALLOWED("Castling not possible"),
+
+    /**
+     * There are pieces between king and rook.
+     */
+    CASTLING_BLOCKED("Castling requires vacant squares"),
+
+    /**
+     * King is in check or would pass an attacked square.
+     */
+    CASTLING_THROUGH_CHECK("King must have safe passage"),
+
+    /**
+     * King or rook is not in place.
+     */
+    CASTLING_UNABLE("Unable to castle");
+
+    private final String message;
+
+    private MoveStatus(String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return True if the move was legal.
+     */
+    public boolean isLegal() {
+        return this == OK;
+    }
+
+    /**
+     * @return User-friendly message.
+     */
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -103,7 +103,7 @@ abstract class Piece {
 
         if (status[co.rank][co.file] == Type.empty) {
             view[co.rank][co.file] = Type.movable;
-            moves.add(type.nameToSan() + co.toString());
+            moves.add(type.nameToSan() + loc + co);
             return true;
         }
 
@@ -115,7 +115,8 @@ abstract class Piece {
      * piece's view.
      *
      * Also if capturable piece happens to be opponents king, make
-     * a note of it too.
+     * a note of it too. An empty square is marked as well, since it
+     * is attacked all the same (this matters for castling).
      *
      * @param co Target square.
      * @param status Status of the board.
@@ -125,7 +126,7 @@ abstract class Piece {
 
         Type target = status[co.rank][co.file];
 
-        if (target.isEnemy(type)) {
+        if (target == Type.empty || target.isEnemy(type)) {
             if (target == Type.K) {
                 checked = 0;
                 view[co.rank][co.file] = Type.checked;
@@ -136,10 +137,37 @@ abstract class Piece {
             }
             else {
                 view[co.rank][co.file] = Type.capturable;
+
+                if (target.getIndex() != 0) {
+                    moves.add(type.nameToSan() + loc + "x" + co);
+                }
             }
         }
     }
 
+    /**
+     * Pawn reaching the last rank must be promoted, so replace each
+     * such move with one move for each officer.
+     *
+     * @param rank Promotion rank index.
+     */
+    protected void addPromotions(int rank) {
+        ArrayList<String> promotions = new ArrayList<String>();
+
+        for (String move : moves) {
+            if (move.charAt(move.length()-1) - '0' == 8 - rank) {
+                for (String officer : new String[]{"Q", "R", "B", "N"}) {
+                    promotions.add(move + "=" + officer);
+                }
+            }
+            else {
+                promotions.add(move);
+            }
+        }
+
+        moves = promotions;
+    }
+
     /**
      * Kings options. Go through all squares next to current
      * location and see if they can be moved to.
@@ -0,0 +1,171 @@
+package fi.starck.sakki.board;
+
+/**
+ * Piece-square tables for a tapered evaluation.
+ *
+ * Each piece has a value and a bonus for each square, one set for the
+ * middlegame and one for the endgame. Board keeps sums of both sets
+ * for both sides up to date as pieces move. Final score is a blend of
+ * the two, weighted by the game phase, which is derived from the
+ * officers still on the board.
+ *
+ * Tables are written from white's point of view with the 8th rank
+ * first, just like the board state. Black uses them mirrored.
+ *
+ * <p>{@link http://chessprogramming.wikispaces.com/Simplified+evaluation+function}</p>
+ *
+ * @see Board
+ *
+ * @author Tuomas Starck
+ */
+final class PieceSquare {
+    /**
+     * Phase of the game with all officers on the board.
+     */
+    static final int OPENING = 24;
+
+    /* Indexed by Type.getIndex(): -, p, b, n, r, q, k */
+    private static final int[] mgValue = {0, 82, 365, 337, 477, 1025, 0};
+    private static final int[] egValue = {0, 94, 297, 281, 512, 936, 0};
+    private static final int[] phaseValue = {0, 0, 1, 1, 2, 4, 0};
+
+    private static final int[] mgPawn = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         10,  10,  20,  30,  30,  20,  10,  10,
+          5,   5,  10,  25,  25,  10,   5,   5,
+          0,   0,   0,  20,  20,   0,   0,   0,
+          5,  -5, -10,   0,   0, -10,  -5,   5,
+          5,  10,  10, -20, -20,  10,  10,   5,
+          0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    private static final int[] egPawn = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         80,  80,  80,  80,  80,  80,  80,  80,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         30,  30,  30,  30,  30,  30,  30,  30,
+         20,  20,  20,  20,  20,  20,  20,  20,
+         10,  10,  10,  10,  10,  10,  10,  10,
+          5,   5,   5,   5,   5,   5,   5,   5,
+          0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    private static final int[] knight = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50
+    };
+
+    private static final int[] bishop = {
+        -20, -10, -10, -10, -10, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,  10,  10,   5,   0, -10,
+        -10,   5,   5,  10,  10,   5,   5, -10,
+        -10,   0,  10,  10,  10,  10,   0, -10,
+        -10,  10,  10,  10,  10,  10,  10, -10,
+        -10,   5,   0,   0,   0,   0,   5, -10,
+        -20, -10, -10, -10, -10, -10, -10, -20
+    };
+
+    private static final int[] rook = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+          5,  10,  10,  10,  10,  10,  10,   5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+          0,   0,   0,   5,   5,   0,   0,   0
+    };
+
+    private static final int[] queen = {
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,   5,   5,   5,   0, -10,
+         -5,   0,   5,   5,   5,   5,   0,  -5,
+          0,   0,   5,   5,   5,   5,   0,  -5,
+        -10,   5,   5,   5,   5,   5,   0, -10,
+        -10,   0,   5,   0,   0,   0,   0, -10,
+        -20, -10, -10,  -5,  -5, -10, -10, -20
+    };
+
+    private static final int[] mgKing = {
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+         20,  20,   0,   0,   0,   0,  20,  20,
+         20,  30,  10,   0,   0,  10,  30,  20
+    };
+
+    private static final int[] egKing = {
+        -50, -40, -30, -20, -20, -30, -40, -50,
+        -30, -20, -10,   0,   0, -10, -20, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -30,   0,   0,   0,   0, -30, -30,
+        -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    private static final int[][] mgTable = {
+        null, mgPawn, bishop, knight, rook, queen, mgKing
+    };
+
+    private static final int[][] egTable = {
+        null, egPawn, bishop, knight, rook, queen, egKing
+    };
+
+    private PieceSquare() {}
+
+    /**
+     * @return Index of the square in the tables above.
+     */
+    private static int square(Type type, int rank, int file) {
+        return 8 * (type.getSide()? rank: 7-rank) + file;
+    }
+
+    /**
+     * @param type Type of a piece.
+     * @param rank Rank index.
+     * @param file File index.
+     *
+     * @return Middlegame value of the piece on the square.
+     */
+    static int mg(Type type, int rank, int file) {
+        int i = type.getIndex();
+        if (i == 0) return 0;
+        return mgValue[i] + mgTable[i][square(type, rank, file)];
+    }
+
+    /**
+     * @param type Type of a piece.
+     * @param rank Rank index.
+     * @param file File index.
+     *
+     * @return Endgame value of the piece on the square.
+     */
+    static int eg(Type type, int rank, int file) {
+        int i = type.getIndex();
+        if (i == 0) return 0;
+        return egValue[i] + egTable[i][square(type, rank, file)];
+    }
+
+    /**
+     * @param type Type of a piece.
+     *
+     * @return Weight of the piece in the game phase.
+     */
+    static int phase(Type type) {
+        return phaseValue[type.getIndex()];
+    }
+}
@@ -1,23 +1,41 @@
 package fi.starck.sakki.board;
 
 /**
- * Class to convey feedback about executed move.
+ * Class to convey feedback about executed move, or the reason why the
+ * move could not be executed.
  *
  * @author Tuomas Starck
  */
 public class Rebound {
+    private MoveStatus status;
     private boolean checked;
     private boolean promotion;
     private String castlings;
     private Coord enpassant;
 
     Rebound() {
+        status = MoveStatus.OK;
         checked = false;
         promotion = false;
         castlings = "";
         enpassant = null;
     }
 
+    /**
+     * @param status Reason for not executing a move.
+     *
+     * @return Feedback of a move not executed.
+     */
+    static Rebound failure(MoveStatus status) {
+        Rebound rebound = new Rebound();
+        rebound.status = status;
+        return rebound;
+    }
+
+    MoveStatus getStatus() {
+        return status;
+    }
+
     void kingChecked(boolean bool) {
         checked = bool;
     }
@@ -0,0 +1,55 @@
+package fi.starck.sakki.board;
+
+/**
+ * Outcome of applying a sequence of moves, see
+ * {@link Chess#applyAll(CharSequence[], boolean)}.
+ *
+ * @author Tuomas Starck
+ */
+public class Replay {
+    private final int ply;
+    private final MoveStatus status;
+    private final String fen;
+
+    Replay(int ply, MoveStatus status, String fen) {
+        this.ply = ply;
+        this.status = status;
+        this.fen = fen;
+    }
+
+    /**
+     * @return True if every move was made.
+     */
+    public boolean isLegal() {
+        return status == MoveStatus.OK;
+    }
+
+    /**
+     * @return Index of the first move not made, or the number of moves
+     * if all of them were made.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * @return Reason for not making the move at {@link #getPly()}, or
+     * {@link MoveStatus#OK} if all moves were made.
+     */
+    public MoveStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return FEN of the position after the last move made, or null
+     * if it was not asked for.
+     */
+    public String getFen() {
+        return fen;
+    }
+
+    @Override
+    public String toString() {
+        return ply + ": " + status;
+    }
+}
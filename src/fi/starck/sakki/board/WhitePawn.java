@@ -29,14 +29,18 @@ class WhitePawn extends Piece {
         markIfCapturable(ne, status);
         markIfCapturable(nw, status);
 
-        if (enpassant == null) return;
-
-        if (enpassant.equals(ne)) {
-            view[ne.rank][ne.file] = Type.capturable;
-        }
-        if (enpassant.equals(nw)) {
-            view[nw.rank][nw.file] = Type.capturable;
+        if (enpassant != null) {
+            if (enpassant.equals(ne)) {
+                view[ne.rank][ne.file] = Type.capturable;
+                moves.add(loc + "x" + ne);
+            }
+            if (enpassant.equals(nw)) {
+                view[nw.rank][nw.file] = Type.capturable;
+                moves.add(loc + "x" + nw);
+            }
         }
+
+        addPromotions(PROMOTION_RANK);
     }
 
     @Override
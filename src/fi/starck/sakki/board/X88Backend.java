@@ -0,0 +1,1095 @@
+package fi.starck.sakki.board;
+
+import java.util.Arrays;
+
+/**
+ * Board backend on a 0x88 board.
+ *
+ * Board is an array of 128 squares, of which those with index bit 3 or
+ * 7 set (<tt>index & 0x88</tt>) are off the board. A step off the edge
+ * is thus detected with one test, which makes move generation and
+ * attack queries short loops over direction offsets. Pieces are small
+ * integers: index of the type (see {@link Type#getIndex()}), plus
+ * {@link #BLACK} for black pieces.
+ *
+ * Moves are made and taken back in place. Zobrist key is updated
+ * incrementally and everything needed to take a move back is kept in
+ * preallocated arrays, so after warming up nothing is allocated.
+ *
+ * <p>{@link http://chessprogramming.wikispaces.com/0x88}</p>
+ *
+ * @author Tuomas Starck
+ */
+public final class X88Backend implements BoardBackend {
+    static final int PAWN = 1;
+    static final int BISHOP = 2;
+    static final int KNIGHT = 3;
+    static final int ROOK = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+    static final int BLACK = 8;
+
+    /* Rank index 0 is the 8th rank, so north is towards lower indices */
+    private static final int N = -16;
+    private static final int S = 16;
+    private static final int E = 1;
+    private static final int W = -1;
+
+    private static final int[] KNIGHT_STEPS = {
+        N+N+E, N+N+W, S+S+E, S+S+W, N+E+E, N+W+W, S+E+E, S+W+W
+    };
+    private static final int[] KING_STEPS = {N, S, E, W, N+E, N+W, S+E, S+W};
+    private static final int[] ROOK_STEPS = {N, S, E, W};
+    private static final int[] BISHOP_STEPS = {N+E, N+W, S+E, S+W};
+
+    /* Flags of rivals() */
+    private static final int RIVAL = 1;
+    private static final int SAME_FILE = 2;
+    private static final int SAME_RANK = 4;
+
+    /* Castling options as bits in the order of KQkq */
+    private static final int[] CASTLING_MASK = new int[128];
+
+    private static final long[] NO_PAST = new long[0];
+
+    private static final Type[] TYPES = new Type[16];
+    private static final long[][] KEYS = new long[16][128];
+    private static final long[] CASTLING_KEYS = new long[16];
+
+    /* Piece-square values, negative for black */
+    private static final int[][] MG = new int[16][128];
+    private static final int[][] EG = new int[16][128];
+    private static final int[] PHASE = new int[16];
+
+    static {
+        for (Type type : Type.values()) {
+            if (type.getIndex() != 0) {
+                TYPES[type.getIndex() | (type.getSide()? 0: BLACK)] = type;
+            }
+        }
+
+        TYPES[0] = Type.empty;
+
+        for (int piece=1; piece<16; piece++) {
+            if (TYPES[piece] == null) continue;
+
+            for (int sq=0; sq<128; sq++) {
+                if ((sq & 0x88) == 0) {
+                    int sign = (piece < BLACK)? 1: -1;
+
+                    KEYS[piece][sq] = Zobrist.piece(TYPES[piece], sq >> 4, sq & 7);
+                    MG[piece][sq] = sign * PieceSquare.mg(TYPES[piece], sq >> 4, sq & 7);
+                    EG[piece][sq] = sign * PieceSquare.eg(TYPES[piece], sq >> 4, sq & 7);
+                }
+            }
+
+            PHASE[piece] = PieceSquare.phase(TYPES[piece]);
+        }
+
+        for (int options=0; options<16; options++) {
+            for (int i=0; i<4; i++) {
+                if ((options & (1 << i)) != 0) CASTLING_KEYS[options] ^= Zobrist.castling(i);
+            }
+        }
+
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0x74] = ~3;
+        CASTLING_MASK[0x77] = ~1;
+        CASTLING_MASK[0x70] = ~2;
+        CASTLING_MASK[0x04] = ~12;
+        CASTLING_MASK[0x07] = ~4;
+        CASTLING_MASK[0x00] = ~8;
+    }
+
+    private final int[] board;
+    private final int[] kings;
+    private boolean turn;
+    private int castling;
+    private int enpassant;
+    private int halfmove;
+    private int fullmove;
+    private long key;
+    private long pawnKey;
+
+    /* Evaluation sums and number of pieces */
+    private int mg;
+    private int eg;
+    private int phase;
+    private int men;
+
+    /* Keys of the positions before the first one set up */
+    private long[] past;
+
+    /* Undo records, one per move made */
+    private int[] undoMoves;
+    private int[] undoCaptures;
+    private int[] undoStates;
+    private long[] undoKeys;
+    private int depth;
+
+    /* Pseudo-legal moves before the legality test */
+    private final int[] scratch;
+
+    /**
+     * Constructs the initial position.
+     */
+    public X88Backend() {
+        this("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+    }
+
+    /**
+     * @param fen Position in FEN.
+     *
+     * @throws IllegalArgumentException If the position cannot be read.
+     */
+    public X88Backend(String fen) {
+        board = new int[128];
+        kings = new int[2];
+        undoMoves = new int[64];
+        undoCaptures = new int[64];
+        undoStates = new int[64];
+        undoKeys = new long[64];
+        scratch = new int[MoveCode.MAX_MOVES];
+
+        setFen(fen);
+    }
+
+    /**
+     * Parsing is permissive in the same way as that of {@link Chess}:
+     * missing fields take their default values and castling options
+     * which the placement of kings and rooks rules out are dropped.
+     */
+    @Override
+    public void setFen(String fen) {
+        String[] fields = fen.trim().split(" +");
+        int rank = 0;
+        int file = 0;
+
+        clear();
+
+        for (char chr : fields[0].toCharArray()) {
+            if (chr == '/') {
+                rank++;
+                file = 0;
+            }
+            else if (Character.isDigit(chr)) {
+                file += Character.digit(chr, 10);
+            }
+            else {
+                int piece = piece(chr);
+
+                if (piece == 0 || rank > 7 || file > 7) {
+                    throw new IllegalArgumentException(fen);
+                }
+
+                put(piece, 16*rank + file);
+
+                if ((piece & 7) == KING) kings[piece >> 3] = 16*rank + file;
+
+                file++;
+            }
+        }
+
+        turn = !(fields.length >= 2 && fields[1].equals("b"));
+
+        castling = 0;
+
+        if (fields.length >= 3) {
+            for (int i=0; i<4; i++) {
+                if (fields[2].indexOf("KQkq".charAt(i)) != -1) castling |= 1 << i;
+            }
+        }
+        else {
+            castling = 15;
+        }
+
+        if (board[0x74] != KING) castling &= ~3;
+        if (board[0x04] != (KING | BLACK)) castling &= ~12;
+        if (board[0x77] != ROOK) castling &= ~1;
+        if (board[0x70] != ROOK) castling &= ~2;
+        if (board[0x07] != (ROOK | BLACK)) castling &= ~4;
+        if (board[0x00] != (ROOK | BLACK)) castling &= ~8;
+
+        enpassant = -1;
+
+        if (fields.length >= 4) {
+            int square = MoveCode.square(fields[3]);
+            if (square != -1) enpassant = x88(square);
+        }
+
+        halfmove = 0;
+        fullmove = 1;
+
+        if (fields.length >= 6) {
+            try {
+                halfmove = Integer.parseInt(fields[4]);
+                fullmove = Integer.parseInt(fields[5]);
+            }
+            catch (NumberFormatException pass) {}
+        }
+
+        key = hash();
+        depth = 0;
+    }
+
+    /**
+     * Set up a position without castling rights or en passant target
+     * from a board in the form of {@link #snapshot(byte[])}. Nothing is
+     * allocated.
+     *
+     * @param squares Board of 64 bytes.
+     * @param turn True if white holds the next move.
+     */
+    public void setSquares(byte[] squares, boolean turn) {
+        clear();
+
+        for (int square=0; square<64; square++) {
+            int piece = squares[square];
+
+            if (piece == 0) continue;
+
+            put(piece, x88(square));
+
+            if ((piece & 7) == KING) kings[piece >> 3] = x88(square);
+        }
+
+        this.turn = turn;
+        castling = 0;
+        enpassant = -1;
+        halfmove = 0;
+        fullmove = 1;
+        key = hash();
+        depth = 0;
+    }
+
+    /**
+     * Empty the board.
+     */
+    private void clear() {
+        Arrays.fill(board, 0);
+        kings[0] = kings[1] = -1;
+        pawnKey = 0L;
+        mg = eg = phase = men = 0;
+        past = NO_PAST;
+    }
+
+    /**
+     * Set up the position of a game, including the positions since
+     * the last capture or pawn move, so that repetitions of them are
+     * detected.
+     *
+     * @param game Game.
+     */
+    public void setPosition(Chess game) {
+        setFen(game.toString());
+        past = game.getReversible();
+    }
+
+    /**
+     * @param chr FEN character of a piece.
+     *
+     * @return Piece or zero.
+     */
+    private static int piece(char chr) {
+        int index = "PBNRQK".indexOf(Character.toUpperCase(chr)) + 1;
+
+        if (index == 0) return 0;
+
+        return Character.isUpperCase(chr)? index: index | BLACK;
+    }
+
+    /**
+     * @return Zobrist key calculated from scratch.
+     */
+    private long hash() {
+        long hash = turn? 0L: Zobrist.side();
+
+        for (int sq=0; sq<128; sq++) {
+            if ((sq & 0x88) == 0) hash ^= KEYS[board[sq]][sq];
+        }
+
+        hash ^= CASTLING_KEYS[castling];
+
+        if (enpassant != -1) hash ^= Zobrist.enpassant(enpassant & 7);
+
+        return hash;
+    }
+
+    @Override
+    public String getFen() {
+        StringBuilder fen = new StringBuilder();
+
+        for (int rank=0; rank<8; rank++) {
+            int empties = 0;
+
+            if (rank > 0) fen.append('/');
+
+            for (int file=0; file<8; file++) {
+                int piece = board[16*rank + file];
+
+                if (piece == 0) {
+                    empties++;
+                    continue;
+                }
+
+                if (empties != 0) fen.append(empties);
+                empties = 0;
+                fen.append(TYPES[piece].name());
+            }
+
+            if (empties != 0) fen.append(empties);
+        }
+
+        fen.append(turn? " w ": " b ");
+
+        for (int i=0; i<4; i++) {
+            if ((castling & (1 << i)) != 0) fen.append("KQkq".charAt(i));
+        }
+
+        if (castling == 0) fen.append('-');
+
+        fen.append(' ').append((enpassant == -1)? "-": MoveCode.name(square(enpassant)));
+        fen.append(' ').append(halfmove).append(' ').append(fullmove);
+
+        return fen.toString();
+    }
+
+    @Override
+    public boolean getTurn() {
+        return turn;
+    }
+
+    @Override
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return Zobrist key of the pawns, the same as
+     * {@link Chess#getPawnKey()} would give.
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @return The halfmove count.
+     */
+    public int getHalfmove() {
+        return halfmove;
+    }
+
+    /**
+     * Tapered evaluation of piece-square tables, the same as
+     * {@link Chess#getEvaluation()}. Sums are kept up to date as
+     * pieces move, so this is a constant time operation.
+     *
+     * @return Score in centipawns from white's point of view.
+     */
+    public int getEvaluation() {
+        int p = Math.min(phase, PieceSquare.OPENING);
+
+        return (mg * p + eg * (PieceSquare.OPENING - p)) / PieceSquare.OPENING;
+    }
+
+    /**
+     * @return Number of pieces on the board, kings included.
+     */
+    public int getMen() {
+        return men;
+    }
+
+    /**
+     * @return True if either side may still castle or there is an en
+     * passant target.
+     */
+    public boolean hasRights() {
+        return castling != 0 || enpassant != -1;
+    }
+
+    /**
+     * @param side True for white, false for black.
+     *
+     * @return True if the side has any pieces besides king and pawns.
+     */
+    public boolean hasOfficers(boolean side) {
+        int us = side? 0: BLACK;
+
+        for (int sq=0; sq<128; sq++) {
+            int piece = board[sq];
+
+            if ((sq & 0x88) == 0 && piece != 0 && (piece & BLACK) == us
+                    && (piece & 7) != PAWN && (piece & 7) != KING) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param side True for white, false for black.
+     *
+     * @return Pawns of the side as a bit mask, where bit <i>s</i> is
+     * set for a pawn on square <i>s</i>.
+     */
+    public long getPawns(boolean side) {
+        int pawn = PAWN | (side? 0: BLACK);
+        long pawns = 0L;
+
+        for (int square=0; square<64; square++) {
+            if (board[x88(square)] == pawn) pawns |= 1L << square;
+        }
+
+        return pawns;
+    }
+
+    /**
+     * @param move Encoded move of the side to move.
+     *
+     * @return True if the move captures, en passant included.
+     */
+    public boolean isCapture(int move) {
+        int from = x88(MoveCode.from(move));
+        int to = x88(MoveCode.to(move));
+
+        return board[to] != 0 || ((board[from] & 7) == PAWN && to == enpassant);
+    }
+
+    /**
+     * Count the earlier occurrences of the current position among
+     * the positions since the last capture or pawn move, the same as
+     * {@link Chess#getRepetitions()}. Only positions with the same side
+     * to move are compared and nothing is allocated.
+     *
+     * @return Number of times the current position has been on the
+     * board before.
+     */
+    public int getRepetitions() {
+        int count = 0;
+        int reach = Math.min(halfmove, depth + past.length);
+
+        for (int i=2; i<=reach; i+=2) {
+            long earlier = (i <= depth)? undoKeys[depth - i]: past[past.length - i + depth];
+
+            if (earlier == key) count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param move Encoded move of the side to move.
+     *
+     * @return Move in the long form of {@link Chess#getMoves()}, e.g.
+     * <tt>Ng1f3</tt>, <tt>e7xd8=Q</tt> or <tt>Ke1g1</tt>.
+     */
+    public String format(int move) {
+        int from = MoveCode.from(move);
+        String str = MoveCode.toString(move);
+        String piece = TYPES[board[x88(from)]].nameToSan();
+
+        return piece + str.substring(0, 2) + (isCapture(move)? "x": "") + str.substring(2);
+    }
+
+    /**
+     * Write a move in Standard Algebraic Notation, e.g. <tt>Nbd7</tt>,
+     * <tt>exd6</tt>, <tt>R1a3</tt>, <tt>e8=Q+</tt> or <tt>O-O#</tt>.
+     *
+     * Square of departure is only written as far as it is needed to
+     * tell the move apart from the legal moves of other pieces of the
+     * same kind to the same square, which are found by looking from
+     * the target square like in attack queries. Check and mate are
+     * found by making the move.
+     *
+     * Nothing is allocated, save for the growth of the buffer.
+     *
+     * @param move Legal encoded move of the side to move.
+     * @param out Buffer the move is appended to.
+     *
+     * @return The buffer.
+     */
+    public StringBuilder san(int move, StringBuilder out) {
+        int from = x88(MoveCode.from(move));
+        int to = x88(MoveCode.to(move));
+        int kind = board[from] & 7;
+
+        if (kind == KING && (to - from == 2*E || to - from == 2*W)) {
+            out.append(to > from? "O-O": "O-O-O");
+        }
+        else if (kind == PAWN) {
+            if (isCapture(move)) {
+                out.append((char) ('a' + (from & 7))).append('x');
+            }
+
+            square(to, out);
+
+            if (MoveCode.promotion(move) != 0) {
+                out.append('=').append(TYPES[MoveCode.promotion(move)].nameToSan());
+            }
+        }
+        else {
+            out.append(TYPES[kind].nameToSan());
+
+            int rivals = (kind == KING)? 0: rivals(from, to);
+
+            if ((rivals & RIVAL) != 0) {
+                if ((rivals & SAME_FILE) == 0) {
+                    out.append((char) ('a' + (from & 7)));
+                }
+                else if ((rivals & SAME_RANK) == 0) {
+                    out.append((char) ('8' - (from >> 4)));
+                }
+                else {
+                    square(from, out);
+                }
+            }
+
+            if (board[to] != 0) out.append('x');
+
+            square(to, out);
+        }
+
+        make(move);
+
+        if (isChecked(turn)) {
+            out.append(hasLegalMove()? '+': '#');
+        }
+
+        unmake();
+
+        return out;
+    }
+
+    /**
+     * @return Flags telling whether other pieces of the same kind can
+     * legally move to the target square, and whether any of them share
+     * the file or the rank of the piece moving.
+     */
+    private int rivals(int from, int to) {
+        switch (board[from] & 7) {
+            case KNIGHT:
+                return rivals(from, to, KNIGHT_STEPS, false);
+            case BISHOP:
+                return rivals(from, to, BISHOP_STEPS, true);
+            case ROOK:
+                return rivals(from, to, ROOK_STEPS, true);
+            case QUEEN:
+                return rivals(from, to, BISHOP_STEPS, true) | rivals(from, to, ROOK_STEPS, true);
+        }
+
+        return 0;
+    }
+
+    private int rivals(int from, int to, int[] steps, boolean slide) {
+        int found = 0;
+
+        for (int step : steps) {
+            for (int sq=to+step; (sq & 0x88) == 0; sq+=step) {
+                if (sq != from && board[sq] == board[from] && isLegal(encode(sq, to, 0))) {
+                    found |= RIVAL;
+
+                    if ((sq & 7) == (from & 7)) found |= SAME_FILE;
+                    if ((sq >> 4) == (from >> 4)) found |= SAME_RANK;
+                }
+
+                if (board[sq] != 0 || !slide) break;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * @param move Pseudo-legal encoded move of the side to move.
+     *
+     * @return True if the move does not leave own king in check.
+     */
+    private boolean isLegal(int move) {
+        make(move);
+
+        boolean legal = !isChecked(!turn);
+
+        unmake();
+
+        return legal;
+    }
+
+    /**
+     * @return True if the side to move has any legal move. Generation
+     * stops at the first one found.
+     */
+    private boolean hasLegalMove() {
+        int count = pseudo(scratch);
+
+        for (int i=0; i<count; i++) {
+            if (isLegal(scratch[i])) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Append the name of a square in SAN.
+     */
+    private static void square(int sq, StringBuilder out) {
+        out.append((char) ('a' + (sq & 7))).append((char) ('8' - (sq >> 4)));
+    }
+
+    @Override
+    public Type typeAt(int square) {
+        return TYPES[board[x88(square)]];
+    }
+
+    /**
+     * Copy the board into a buffer in the same form as
+     * {@link Chess#snapshot(byte[])}. Pieces of this backend are
+     * encoded the same way, so nothing is converted or allocated.
+     *
+     * @param squares Buffer of at least 64 bytes.
+     *
+     * @return The buffer.
+     */
+    public byte[] snapshot(byte[] squares) {
+        for (int square=0; square<64; square++) {
+            squares[square] = (byte) board[x88(square)];
+        }
+
+        return squares;
+    }
+
+    @Override
+    public int generate(int[] moves, int offset) {
+        int count = pseudo(scratch);
+        int legal = 0;
+
+        for (int i=0; i<count; i++) {
+            if (isLegal(scratch[i])) {
+                moves[offset + legal++] = scratch[i];
+            }
+        }
+
+        return legal;
+    }
+
+    /**
+     * Generate pseudo-legal moves, i.e. moves which may leave own
+     * king in check. Castlings are only generated when legal.
+     *
+     * @param moves Buffer for the moves.
+     *
+     * @return Number of moves.
+     */
+    private int pseudo(int[] moves) {
+        int us = turn? 0: BLACK;
+        int count = 0;
+
+        for (int from=0; from<128; from++) {
+            if ((from & 0x88) != 0) {
+                from += 7;
+                continue;
+            }
+
+            int piece = board[from];
+
+            if (piece == 0 || (piece & BLACK) != us) continue;
+
+            switch (piece & 7) {
+                case PAWN:
+                    count = pawn(moves, count, from);
+                    break;
+                case KNIGHT:
+                    count = steps(moves, count, from, KNIGHT_STEPS, false);
+                    break;
+                case BISHOP:
+                    count = steps(moves, count, from, BISHOP_STEPS, true);
+                    break;
+                case ROOK:
+                    count = steps(moves, count, from, ROOK_STEPS, true);
+                    break;
+                case QUEEN:
+                    count = steps(moves, count, from, BISHOP_STEPS, true);
+                    count = steps(moves, count, from, ROOK_STEPS, true);
+                    break;
+                case KING:
+                    count = steps(moves, count, from, KING_STEPS, false);
+                    count = castlings(moves, count);
+                    break;
+            }
+        }
+
+        return count;
+    }
+
+    private int steps(int[] moves, int count, int from, int[] steps, boolean slide) {
+        int us = board[from] & BLACK;
+
+        for (int step : steps) {
+            for (int to=from+step; (to & 0x88) == 0; to+=step) {
+                int target = board[to];
+
+                if (target != 0 && (target & BLACK) == us) break;
+
+                moves[count++] = encode(from, to, 0);
+
+                if (target != 0 || !slide) break;
+            }
+        }
+
+        return count;
+    }
+
+    private int pawn(int[] moves, int count, int from) {
+        int forward = turn? N: S;
+        int start = turn? 6: 1;
+        int last = turn? 0: 7;
+        int to = from + forward;
+
+        if (board[to] == 0) {
+            count = promotions(moves, count, from, to, last);
+
+            if ((from >> 4) == start && board[to + forward] == 0) {
+                moves[count++] = encode(from, to + forward, 0);
+            }
+        }
+
+        for (int side=W; side<=E; side+=2) {
+            to = from + forward + side;
+
+            if ((to & 0x88) != 0) continue;
+
+            int target = board[to];
+
+            if ((target != 0 && (target & BLACK) != (board[from] & BLACK)) || to == enpassant) {
+                count = promotions(moves, count, from, to, last);
+            }
+        }
+
+        return count;
+    }
+
+    private static int promotions(int[] moves, int count, int from, int to, int last) {
+        if ((to >> 4) != last) {
+            moves[count++] = encode(from, to, 0);
+            return count;
+        }
+
+        moves[count++] = encode(from, to, QUEEN);
+        moves[count++] = encode(from, to, ROOK);
+        moves[count++] = encode(from, to, BISHOP);
+        moves[count++] = encode(from, to, KNIGHT);
+
+        return count;
+    }
+
+    /**
+     * Castlings require the option, vacant squares between king and
+     * rook, and that the king is not in check and does not pass or
+     * land on an attacked square.
+     */
+    private int castlings(int[] moves, int count) {
+        int king = turn? 0x74: 0x04;
+        int options = turn? castling & 3: castling >> 2;
+
+        if (options == 0 || kings[turn? 0: 1] != king || isChecked(turn)) {
+            return count;
+        }
+
+        if ((options & 1) != 0 && board[king+1] == 0 && board[king+2] == 0
+                && !isAttacked88(king+1, !turn) && !isAttacked88(king+2, !turn)) {
+            moves[count++] = encode(king, king+2, 0);
+        }
+
+        if ((options & 2) != 0 && board[king-1] == 0 && board[king-2] == 0 && board[king-3] == 0
+                && !isAttacked88(king-1, !turn) && !isAttacked88(king-2, !turn)) {
+            moves[count++] = encode(king, king-2, 0);
+        }
+
+        return count;
+    }
+
+    @Override
+    public void make(int move) {
+        int from = x88(MoveCode.from(move));
+        int to = x88(MoveCode.to(move));
+        int piece = board[from];
+        int captured = board[to];
+        int us = piece & BLACK;
+
+        push(move, captured);
+
+        halfmove = (captured == 0)? halfmove + 1: 0;
+
+        if (captured != 0) remove(to);
+
+        remove(from);
+
+        int passed = -1;
+
+        if ((piece & 7) == PAWN) {
+            halfmove = 0;
+
+            if (to == enpassant) {
+                remove(to + (turn? S: N));
+            }
+            else if (to - from == 2*N || to - from == 2*S) {
+                passed = (from + to) / 2;
+            }
+
+            if (MoveCode.promotion(move) != 0) {
+                piece = MoveCode.promotion(move) | us;
+            }
+        }
+        else if ((piece & 7) == KING) {
+            kings[us >> 3] = to;
+
+            if (to - from == 2*E || to - from == 2*W) {
+                int rookFrom = (to > from)? from + 3: from - 4;
+                int rook = board[rookFrom];
+
+                remove(rookFrom);
+                put(rook, (from + to) / 2);
+            }
+        }
+
+        put(piece, to);
+
+        key ^= CASTLING_KEYS[castling];
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        key ^= CASTLING_KEYS[castling];
+
+        pass(passed);
+    }
+
+    /**
+     * Pass the turn to the opponent without moving, a.k.a. null move.
+     * En passant is lost and no earlier position counts as repeated
+     * after a null move. Taken back with {@link #unmake()}.
+     */
+    public void makeNull() {
+        push(MoveCode.NONE, 0);
+        halfmove = 0;
+        pass(-1);
+    }
+
+    /**
+     * Save an undo record.
+     */
+    private void push(int move, int captured) {
+        if (depth == undoMoves.length) grow();
+
+        undoMoves[depth] = move;
+        undoCaptures[depth] = captured;
+        undoStates[depth] = castling | ((enpassant + 1) << 4) | (halfmove << 12);
+        undoKeys[depth] = key;
+        depth++;
+    }
+
+    /**
+     * Hand the turn over after a move.
+     *
+     * @param passed New en passant target or -1.
+     */
+    private void pass(int passed) {
+        if (enpassant != -1) key ^= Zobrist.enpassant(enpassant & 7);
+
+        enpassant = passed;
+
+        if (enpassant != -1) key ^= Zobrist.enpassant(enpassant & 7);
+
+        if (!turn) fullmove++;
+
+        turn = !turn;
+        key ^= Zobrist.side();
+    }
+
+    @Override
+    public void unmake() {
+        depth--;
+
+        int move = undoMoves[depth];
+        int state = undoStates[depth];
+
+        turn = !turn;
+
+        if (!turn) fullmove--;
+
+        castling = state & 15;
+        enpassant = ((state >> 4) & 0xff) - 1;
+        halfmove = state >>> 12;
+
+        if (move != MoveCode.NONE) {
+            int from = x88(MoveCode.from(move));
+            int to = x88(MoveCode.to(move));
+            int piece = board[to];
+
+            remove(to);
+
+            if (MoveCode.promotion(move) != 0) {
+                piece = PAWN | (piece & BLACK);
+            }
+
+            put(piece, from);
+
+            if (undoCaptures[depth] != 0) {
+                put(undoCaptures[depth], to);
+            }
+
+            if ((piece & 7) == PAWN && to == enpassant) {
+                put(PAWN | (turn? BLACK: 0), to + (turn? S: N));
+            }
+            else if ((piece & 7) == KING) {
+                kings[(piece & BLACK) >> 3] = from;
+
+                if (to - from == 2*E || to - from == 2*W) {
+                    int rookTo = (from + to) / 2;
+                    int rook = board[rookTo];
+
+                    remove(rookTo);
+                    put(rook, (to > from)? from + 3: from - 4);
+                }
+            }
+        }
+
+        key = undoKeys[depth];
+    }
+
+    /**
+     * Place a piece on an empty square.
+     */
+    private void put(int piece, int sq) {
+        board[sq] = piece;
+        key ^= KEYS[piece][sq];
+        mg += MG[piece][sq];
+        eg += EG[piece][sq];
+        phase += PHASE[piece];
+        men++;
+
+        if ((piece & 7) == PAWN) pawnKey ^= KEYS[piece][sq];
+    }
+
+    /**
+     * Remove a piece from a square.
+     */
+    private void remove(int sq) {
+        int piece = board[sq];
+
+        board[sq] = 0;
+        key ^= KEYS[piece][sq];
+        mg -= MG[piece][sq];
+        eg -= EG[piece][sq];
+        phase -= PHASE[piece];
+        men--;
+
+        if ((piece & 7) == PAWN) pawnKey ^= KEYS[piece][sq];
+    }
+
+    private void grow() {
+        int size = 2 * undoMoves.length;
+
+        undoMoves = Arrays.copyOf(undoMoves, size);
+        undoCaptures = Arrays.copyOf(undoCaptures, size);
+        undoStates = Arrays.copyOf(undoStates, size);
+        undoKeys = Arrays.copyOf(undoKeys, size);
+    }
+
+    @Override
+    public boolean isAttacked(int square, boolean side) {
+        return isAttacked88(x88(square), side);
+    }
+
+    @Override
+    public boolean inCheck() {
+        return isChecked(turn);
+    }
+
+    /**
+     * @param side True for white, false for black.
+     *
+     * @return True if the king of given side is attacked. Positions
+     * without a king are allowed and never in check.
+     */
+    private boolean isChecked(boolean side) {
+        int king = kings[side? 0: 1];
+        return king != -1 && isAttacked88(king, !side);
+    }
+
+    /**
+     * @param sq Square on the 0x88 board.
+     * @param side True for white, false for black.
+     *
+     * @return True if any piece of given side attacks the square.
+     */
+    private boolean isAttacked88(int sq, boolean side) {
+        int them = side? 0: BLACK;
+
+        /* A pawn attacks from the square behind the target, as seen
+         * from the pawn.
+         */
+        int behind = side? S: N;
+
+        for (int dir=W; dir<=E; dir+=2) {
+            int from = sq + behind + dir;
+            if ((from & 0x88) == 0 && board[from] == (PAWN | them)) return true;
+        }
+
+        for (int step : KNIGHT_STEPS) {
+            int from = sq + step;
+            if ((from & 0x88) == 0 && board[from] == (KNIGHT | them)) return true;
+        }
+
+        for (int step : KING_STEPS) {
+            int from = sq + step;
+            if ((from & 0x88) == 0 && board[from] == (KING | them)) return true;
+        }
+
+        return isSliding(sq, them, ROOK_STEPS, ROOK) || isSliding(sq, them, BISHOP_STEPS, BISHOP);
+    }
+
+    /**
+     * @return True if a slider of given kind or a queen attacks the
+     * square along one of the steps.
+     */
+    private boolean isSliding(int sq, int them, int[] steps, int kind) {
+        for (int step : steps) {
+            for (int from=sq+step; (from & 0x88) == 0; from+=step) {
+                int piece = board[from];
+
+                if (piece == 0) continue;
+
+                if (piece == (kind | them) || piece == (QUEEN | them)) return true;
+
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    private static int encode(int from, int to, int promotion) {
+        return MoveCode.encode(square(from), square(to), promotion);
+    }
+
+    /**
+     * @param square Square index.
+     *
+     * @return Square on the 0x88 board.
+     */
+    private static int x88(int square) {
+        return square + (square & ~7);
+    }
+
+    /**
+     * @param sq Square on the 0x88 board.
+     *
+     * @return Square index.
+     */
+    private static int square(int sq) {
+        return (sq + (sq & 7)) >> 1;
+    }
+
+    @Override
+    public String toString() {
+        return getFen();
+    }
+}
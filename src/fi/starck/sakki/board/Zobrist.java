@@ -0,0 +1,150 @@
+package fi.starck.sakki.board;
+
+import java.util.Random;
+
+/**
+ * Zobrist hashing of game positions.
+ *
+ * Every piece on every square, side to move, each castling option
+ * and each en passant file is given a random 64-bit number. Key of
+ * a position is all the applicable numbers xor'ed together, so two
+ * identical positions always share the same key.
+ *
+ * <p>{@link http://en.wikipedia.org/wiki/Zobrist_hashing}</p>
+ *
+ * @see Chess
+ *
+ * @author Tuomas Starck
+ */
+final class Zobrist {
+    private static final long[][] pieces = new long[12][64];
+    private static final long[] castlings = new long[4];
+    private static final long[] enpassants = new long[8];
+    private static final long side;
+
+    static {
+        /* Fixed seed, so that keys are the same from run to run.
+         */
+        Random random = new Random(0x5a4b4b49L);
+
+        for (long[] squares : pieces) {
+            for (int i=0; i<squares.length; i++) {
+                squares[i] = random.nextLong();
+            }
+        }
+
+        for (int i=0; i<castlings.length; i++) {
+            castlings[i] = random.nextLong();
+        }
+
+        for (int i=0; i<enpassants.length; i++) {
+            enpassants[i] = random.nextLong();
+        }
+
+        side = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * @param type Type of a piece.
+     *
+     * @return Index of the type in piece key table or -1
+     * if type is not a piece.
+     */
+    static int index(Type type) {
+        if (type.getIndex() == 0) return -1;
+        return 2 * (type.getIndex() - 1) + (type.getSide()? 0: 1);
+    }
+
+    /**
+     * @param type Type of a piece.
+     * @param rank Rank index.
+     * @param file File index.
+     *
+     * @return Key of given piece on given square.
+     */
+    static long piece(Type type, int rank, int file) {
+        int i = index(type);
+        return (i == -1)? 0L: pieces[i][8*rank + file];
+    }
+
+    /**
+     * @param index Index of a castling option in <tt>KQkq</tt>.
+     *
+     * @return Key of the castling option.
+     */
+    static long castling(int index) {
+        return castlings[index];
+    }
+
+    /**
+     * @param file File index of en passant target square.
+     *
+     * @return Key of en passant on given file.
+     */
+    static long enpassant(int file) {
+        return enpassants[file];
+    }
+
+    /**
+     * @return Key of black to move.
+     */
+    static long side() {
+        return side;
+    }
+
+    /**
+     * Calculate the key of a position.
+     *
+     * @param state Game board state.
+     * @param turn True if white holds the next move.
+     * @param castling Castling options in FEN.
+     * @param enpassant En passant target square (or null if none).
+     *
+     * @return Zobrist key.
+     */
+    static long hash(Type[][] state, boolean turn, String castling, Coord enpassant) {
+        long key = turn? 0L: side;
+
+        for (int i=0; i<8; i++) {
+            for (int j=0; j<8; j++) {
+                key ^= piece(state[i][j], i, j);
+            }
+        }
+
+        for (int i=0; i<castlings.length; i++) {
+            if (castling.indexOf("KQkq".charAt(i)) != -1) {
+                key ^= castlings[i];
+            }
+        }
+
+        if (enpassant != null) {
+            key ^= enpassants[enpassant.file];
+        }
+
+        return key;
+    }
+
+    /**
+     * Calculate the key of the pawn structure of a position, i.e.
+     * the key of a position with nothing but pawns on the board.
+     *
+     * @param state Game board state.
+     *
+     * @return Zobrist key of pawns.
+     */
+    static long pawns(Type[][] state) {
+        long key = 0L;
+
+        for (int i=0; i<8; i++) {
+            for (int j=0; j<8; j++) {
+                if (state[i][j] == Type.P || state[i][j] == Type.p) {
+                    key ^= piece(state[i][j], i, j);
+                }
+            }
+        }
+
+        return key;
+    }
+}
@@ -0,0 +1,461 @@
+package fi.starck.sakki.book;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.Type;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Compiler of opening books from PGN.
+ *
+ * Games are replayed through {@link Chess} up to a ply limit. Each
+ * move gives a record of the position key, the move and a weight by
+ * the result of the game: 2 for the winner, 1 for a draw and nothing
+ * for the loser.
+ *
+ * Records are collected in a buffer of fixed size. A full buffer is
+ * sorted, records of the same move in the same position are summed
+ * up and the result is spilled to disk as a sorted run. Finally runs
+ * are merged, a bounded number at a time, into a book in Polyglot
+ * format. Heap use depends only on the buffer size, not on the amount
+ * of games.
+ *
+ * @see PgnReader
+ * @see Polyglot
+ *
+ * @author Tuomas Starck
+ */
+public class BookBuilder {
+    private static final int FAN_IN = 64;
+    private static final int MAX_WEIGHT = 0xffff;
+
+    private final File tmp;
+    private final int plies;
+
+    private final long[] keys;
+    private final int[] moves;
+    private final int[] weights;
+    private int count;
+
+    private final List<File> runs;
+
+    private long games;
+    private long records;
+    private long broken;
+
+    /**
+     * @param tmp Directory for sorted runs.
+     * @param plies Number of halfmoves to take from each game.
+     * @param buffer Number of records to keep in memory.
+     */
+    public BookBuilder(File tmp, int plies, int buffer) {
+        this.tmp = tmp;
+        this.plies = plies;
+
+        keys = new long[Math.max(1, buffer)];
+        moves = new int[keys.length];
+        weights = new int[keys.length];
+        count = 0;
+
+        runs = new ArrayList<File>();
+
+        games = 0;
+        records = 0;
+        broken = 0;
+    }
+
+    /**
+     * Read all the games of a PGN file.
+     *
+     * @param pgn PGN input.
+     *
+     * @throws IOException If reading or spilling fails.
+     */
+    public void read(Reader pgn) throws IOException {
+        PgnReader reader = new PgnReader(new BufferedReader(pgn));
+        PgnReader.Game game;
+
+        while ((game = reader.next()) != null) {
+            add(game);
+        }
+    }
+
+    /**
+     * @return Number of games read.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * @return Number of records collected.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return Number of games with a move that could not be played.
+     * Such games are used up to the move.
+     */
+    public long getBroken() {
+        return broken;
+    }
+
+    /**
+     * @return Number of sorted runs spilled to disk so far.
+     */
+    public int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Replay a game and record its moves.
+     */
+    private void add(PgnReader.Game game) throws IOException {
+        Chess chess = (game.fen == null)? new Chess(): new Chess(game.fen);
+
+        games++;
+
+        for (int ply=0; ply<plies && ply<game.moves.size(); ply++) {
+            boolean side = chess.getTurn();
+            Type[][] before = chess.getState();
+            long key = Polyglot.key(before, side, chess.getCastling(), chess.getEnpassant());
+
+            if (!chess.tryMove(game.moves.get(ply)).isLegal()) {
+                broken++;
+                return;
+            }
+
+            int move = Polyglot.encode(before, chess.getState(), side);
+            int weight = weight(game.result, side);
+
+            if (move == -1) {
+                broken++;
+                return;
+            }
+
+            if (weight > 0) {
+                record(key, move, weight);
+            }
+        }
+    }
+
+    /**
+     * @return Weight of a move by the result of the game.
+     */
+    private static int weight(String result, boolean side) {
+        if (result.equals("1-0")) return side? 2: 0;
+        if (result.equals("0-1")) return side? 0: 2;
+        return 1;
+    }
+
+    /**
+     * Add a record to the buffer, spilling the buffer when full.
+     */
+    private void record(long key, int move, int weight) throws IOException {
+        if (count == keys.length) {
+            spill();
+        }
+
+        keys[count] = key;
+        moves[count] = move;
+        weights[count] = weight;
+        count++;
+        records++;
+    }
+
+    /**
+     * Sort the buffer, sum up duplicates and write them as a run.
+     */
+    private void spill() throws IOException {
+        if (count == 0) return;
+
+        sort(0, count - 1);
+
+        File run = File.createTempFile("sakki-run", ".tmp", tmp);
+        run.deleteOnExit();
+        runs.add(run);
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(run)));
+
+        try {
+            int i = 0;
+
+            while (i < count) {
+                long weight = 0;
+                int j = i;
+
+                while (j < count && keys[j] == keys[i] && moves[j] == moves[i]) {
+                    weight += weights[j++];
+                }
+
+                out.writeLong(keys[i]);
+                out.writeShort(moves[i]);
+                out.writeLong(weight);
+                i = j;
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        count = 0;
+    }
+
+    /**
+     * Compile the book. Builder is empty afterwards.
+     *
+     * @param book Book file.
+     *
+     * @return Number of entries in the book.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    public long write(File book) throws IOException {
+        spill();
+
+        /* Merge runs until there are few enough for the last pass */
+        while (runs.size() > FAN_IN) {
+            List<File> group = new ArrayList<File>(runs.subList(0, FAN_IN));
+            runs.subList(0, FAN_IN).clear();
+
+            File run = File.createTempFile("sakki-run", ".tmp", tmp);
+            run.deleteOnExit();
+
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run)));
+
+            try {
+                Merger merger = new Merger(group);
+
+                while (merger.next()) {
+                    out.writeLong(merger.key);
+                    out.writeShort(merger.move);
+                    out.writeLong(merger.weight);
+                }
+            }
+            finally {
+                out.close();
+                delete(group);
+            }
+
+            runs.add(run);
+        }
+
+        long entries = 0;
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(book)));
+
+        try {
+            Merger merger = new Merger(runs);
+            List<long[]> position = new ArrayList<long[]>();
+            boolean more = merger.next();
+
+            while (more) {
+                long key = merger.key;
+
+                position.clear();
+
+                while (more && merger.key == key) {
+                    position.add(new long[] {merger.move, merger.weight});
+                    more = merger.next();
+                }
+
+                entries += entries(out, key, position);
+            }
+        }
+        finally {
+            out.close();
+            delete(runs);
+            runs.clear();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Write the entries of a position, scaling weights down to fit
+     * sixteen bits if needed. Moves of zero weight are left out.
+     *
+     * @return Number of entries written.
+     */
+    private static int entries(DataOutputStream out, long key, List<long[]> position) throws IOException {
+        long max = 0;
+        int written = 0;
+
+        for (long[] entry : position) {
+            max = Math.max(max, entry[1]);
+        }
+
+        for (long[] entry : position) {
+            long weight = (max <= MAX_WEIGHT)? entry[1]: entry[1] * MAX_WEIGHT / max;
+
+            if (weight == 0) continue;
+
+            out.writeLong(key);
+            out.writeShort((int) entry[0]);
+            out.writeShort((int) weight);
+            out.writeInt(0);
+            written++;
+        }
+
+        return written;
+    }
+
+    private static void delete(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Compare records by key as an unsigned number, then by move.
+     */
+    private static int compare(long key1, int move1, long key2, int move2) {
+        if (key1 != key2) {
+            return ((key1 ^ Long.MIN_VALUE) < (key2 ^ Long.MIN_VALUE))? -1: 1;
+        }
+
+        return (move1 < move2)? -1: (move1 == move2)? 0: 1;
+    }
+
+    /**
+     * Quicksort of the buffer.
+     */
+    private void sort(int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long pk = keys[mid];
+            int pm = moves[mid];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (compare(keys[i], moves[i], pk, pm) < 0) i++;
+                while (compare(keys[j], moves[j], pk, pm) > 0) j--;
+
+                if (i <= j) swap(i++, j--);
+            }
+
+            /* Recurse into the smaller half to bound the stack */
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            }
+            else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long k = keys[i]; keys[i] = keys[j]; keys[j] = k;
+        int m = moves[i]; moves[i] = moves[j]; moves[j] = m;
+        int w = weights[i]; weights[i] = weights[j]; weights[j] = w;
+    }
+
+    /**
+     * K-way merge of sorted runs. Records of the same move in the
+     * same position are summed up.
+     */
+    private static class Merger {
+        private final PriorityQueue<Run> queue;
+
+        long key;
+        int move;
+        long weight;
+
+        Merger(List<File> files) throws IOException {
+            queue = new PriorityQueue<Run>(Math.max(1, files.size()));
+
+            for (File file : files) {
+                Run run = new Run(file);
+
+                if (run.next()) queue.add(run);
+                else run.close();
+            }
+        }
+
+        /**
+         * @return False when all runs are exhausted.
+         */
+        boolean next() throws IOException {
+            Run run = queue.poll();
+
+            if (run == null) return false;
+
+            key = run.key;
+            move = run.move;
+            weight = 0;
+
+            while (run != null && run.key == key && run.move == move) {
+                weight += run.weight;
+
+                if (run.next()) queue.add(run);
+                else run.close();
+
+                run = queue.peek();
+
+                if (run != null && run.key == key && run.move == move) {
+                    queue.poll();
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Reader of one sorted run.
+     */
+    private static class Run implements Comparable<Run> {
+        private final DataInputStream in;
+
+        long key;
+        int move;
+        long weight;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * @return False at the end of the run.
+         */
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+                move = in.readUnsignedShort();
+                weight = in.readLong();
+                return true;
+            }
+            catch (EOFException eof) {
+                return false;
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return compare(key, move, other.key, other.move);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package fi.starck.sakki.book;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.Type;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Prober of opening books written by {@link BookBuilder}.
+ *
+ * Book file is memory mapped and the entries of a position are found
+ * by binary search over the keys. Only absolute reads of the mapped
+ * file are used, so a book can be shared by threads.
+ *
+ * @see Polyglot
+ *
+ * @author Tuomas Starck
+ */
+public class OpeningBook {
+    private final MappedByteBuffer book;
+    private final int size;
+
+    /**
+     * @param file Book file.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    public OpeningBook(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            book = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally {
+            raf.close();
+        }
+
+        size = (int) (file.length() / Polyglot.ENTRY);
+    }
+
+    /**
+     * @return Number of entries in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the book moves of a position. Moves which cannot be played
+     * in the game are left out.
+     *
+     * @param game Game.
+     *
+     * @return Moves in notation of {@link Chess#tryMove} and their
+     * weights, in the order of the book.
+     */
+    public Map<String, Integer> lookup(Chess game) {
+        Map<String, Integer> moves = new LinkedHashMap<String, Integer>();
+        Type[][] state = game.getState();
+        long key = Polyglot.key(state, game.getTurn(), game.getCastling(), game.getEnpassant());
+
+        for (int i=first(key); i<size && key(i) == key; i++) {
+            int offset = i * Polyglot.ENTRY;
+            String move = Polyglot.decode(state, book.getShort(offset + 8) & 0xffff);
+            int weight = book.getShort(offset + 10) & 0xffff;
+
+            if (move != null && new Chess(game).tryMove(move).isLegal()) {
+                moves.put(move, weight);
+            }
+        }
+
+        return moves;
+    }
+
+    /**
+     * Pick a book move at random, in proportion to the weights.
+     *
+     * @param game Game.
+     * @param random Source of randomness.
+     *
+     * @return Move or null if the position is not in the book.
+     */
+    public String choose(Chess game, Random random) {
+        Map<String, Integer> moves = lookup(game);
+        int total = 0;
+
+        for (int weight : moves.values()) {
+            total += weight;
+        }
+
+        if (total == 0) return null;
+
+        int pick = random.nextInt(total);
+
+        for (Map.Entry<String, Integer> move : moves.entrySet()) {
+            pick -= move.getValue();
+
+            if (pick < 0) return move.getKey();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Index of the first entry with a key not less than given
+     * key as an unsigned number.
+     */
+    private int first(long key) {
+        int lo = 0;
+        int hi = size;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if ((key(mid) ^ Long.MIN_VALUE) < (key ^ Long.MIN_VALUE)) lo = mid + 1;
+            else hi = mid;
+        }
+
+        return lo;
+    }
+
+    private long key(int index) {
+        return book.getLong(index * Polyglot.ENTRY);
+    }
+}
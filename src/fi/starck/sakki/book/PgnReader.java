@@ -0,0 +1,165 @@
+package fi.starck.sakki.book;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader of games in Portable Game Notation.
+ *
+ * Only what a book needs is kept of each game: the result, the
+ * starting position if given by a <tt>FEN</tt> tag, and the moves of
+ * the main line. Comments, variations, numeric annotation glyphs and
+ * move numbers are skipped.
+ *
+ * <p>{@link http://en.wikipedia.org/wiki/Portable_Game_Notation}</p>
+ *
+ * @author Tuomas Starck
+ */
+class PgnReader {
+    private final BufferedReader in;
+    private String pending;
+
+    /**
+     * One game.
+     */
+    static class Game {
+        String fen = null;
+        String result = "*";
+        final List<String> moves = new ArrayList<String>();
+    }
+
+    /**
+     * @param in PGN input.
+     */
+    PgnReader(BufferedReader in) {
+        this.in = in;
+        this.pending = null;
+    }
+
+    /**
+     * @return Next game or null at the end of input.
+     *
+     * @throws IOException If reading fails.
+     */
+    Game next() throws IOException {
+        Game game = new Game();
+        StringBuilder text = new StringBuilder();
+        boolean found = false;
+        String line;
+
+        while ((line = (pending != null)? pending: in.readLine()) != null) {
+            pending = null;
+            line = line.trim();
+
+            if (line.startsWith("[")) {
+                if (text.length() > 0) {
+                    /* Tags of the next game */
+                    pending = line;
+                    break;
+                }
+
+                tag(game, line);
+                found = true;
+            }
+            else if (!line.isEmpty() && !line.startsWith("%")) {
+                text.append(line).append('\n');
+                found = true;
+            }
+        }
+
+        if (!found) return null;
+
+        moves(game, text);
+
+        return game;
+    }
+
+    /**
+     * Read a tag pair, e.g. <tt>[Result "1-0"]</tt>.
+     */
+    private static void tag(Game game, String line) {
+        int quote = line.indexOf('"');
+        int end = line.lastIndexOf('"');
+
+        if (quote == -1 || end <= quote) return;
+
+        String name = line.substring(1, quote).trim();
+        String value = line.substring(quote + 1, end);
+
+        if (name.equals("Result")) game.result = value;
+        if (name.equals("FEN")) game.fen = value;
+    }
+
+    /**
+     * Pick the moves of the main line from movetext.
+     */
+    private static void moves(Game game, CharSequence text) {
+        StringBuilder token = new StringBuilder();
+        int depth = 0;
+
+        for (int i=0; i<=text.length(); i++) {
+            char c = (i < text.length())? text.charAt(i): ' ';
+
+            if (c == '{') {
+                int close = indexOf(text, '}', i);
+                i = (close == -1)? text.length(): close;
+                c = ' ';
+            }
+            else if (c == ';') {
+                int close = indexOf(text, '\n', i);
+                i = (close == -1)? text.length(): close;
+                c = ' ';
+            }
+            else if (c == '(') {
+                depth++;
+                c = ' ';
+            }
+            else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                c = ' ';
+            }
+
+            if (!Character.isWhitespace(c)) {
+                if (depth == 0) token.append(c);
+                continue;
+            }
+
+            if (token.length() > 0) {
+                String move = move(token.toString());
+
+                if (move != null) game.moves.add(move);
+
+                token.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * @return Token as a move, or null if the token is not a move.
+     */
+    private static String move(String token) {
+        /* Strip move number, e.g. 12. or 12... */
+        int dot = token.lastIndexOf('.');
+
+        if (dot != -1) token = token.substring(dot + 1);
+
+        if (token.isEmpty() || token.startsWith("$")) return null;
+
+        if (token.equals("1-0") || token.equals("0-1")
+                || token.equals("1/2-1/2") || token.equals("*")) {
+            return null;
+        }
+
+        return token;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from) {
+        for (int i=from; i<text.length(); i++) {
+            if (text.charAt(i) == c) return i;
+        }
+
+        return -1;
+    }
+}
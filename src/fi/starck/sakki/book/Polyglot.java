@@ -0,0 +1,265 @@
+package fi.starck.sakki.book;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.Type;
+import java.util.Random;
+
+/**
+ * Polyglot book format.
+ *
+ * A book is a sequence of 16-byte big-endian entries sorted by key:
+ * <pre>
+ *  long   key of the position
+ *  short  move
+ *  short  weight
+ *  int    learn (unused, zero)
+ * </pre>
+ * Move packs the squares of departure and arrival and the promotion:
+ * <pre>
+ *  bits  0-2   to file
+ *  bits  3-5   to row
+ *  bits  6-8   from file
+ *  bits  9-11  from row
+ *  bits 12-14  promotion (1 knight, 2 bishop, 3 rook, 4 queen)
+ * </pre>
+ * Rows are counted from the 1st rank. Castling is written as the king
+ * capturing its own rook, e.g. <tt>e1h1</tt>.
+ *
+ * Keys are Zobrist keys laid out as in Polyglot: 781 random numbers,
+ * of which 768 for the pieces (black pawn, white pawn, black knight
+ * and so on up to the white king, each over the squares from a1 to
+ * h8), four for the castling options <tt>KQkq</tt>, eight for the en
+ * passant files and the last one for white to move. Unlike in FEN, an
+ * en passant file only counts if a pawn of the side to move stands
+ * next to the pawn which made the double step.
+ *
+ * The numbers are drawn from a generator with a fixed seed instead of
+ * the table published with Polyglot, so books are only meant to be
+ * read by Sakki until that table replaces {@link #RANDOM64}.
+ *
+ * <p>{@link http://hgm.nubati.net/book_format.html}</p>
+ *
+ * @author Tuomas Starck
+ */
+final class Polyglot {
+    static final int ENTRY = 16;
+
+    private static final int CASTLING = 768;
+    private static final int ENPASSANT = 772;
+    private static final int TURN = 780;
+
+    /* Polyglot kind of each type index: pawn, knight, bishop, rook,
+     * queen and king, from 0 to 5
+     */
+    private static final int[] KINDS = {-1, 0, 2, 1, 3, 4, 5};
+
+    private static final long[] RANDOM64 = new long[781];
+
+    static {
+        Random random = new Random(0x504f4c59L);
+
+        for (int i=0; i<RANDOM64.length; i++) {
+            RANDOM64[i] = random.nextLong();
+        }
+    }
+
+    private Polyglot() {}
+
+    /**
+     * Calculate the key of a position.
+     *
+     * @param state Game board state.
+     * @param turn True if white holds the next move.
+     * @param castling Castling options in FEN.
+     * @param enpassant En passant target square in FEN.
+     *
+     * @return Polyglot key.
+     */
+    static long key(Type[][] state, boolean turn, String castling, String enpassant) {
+        long key = 0L;
+
+        for (int i=0; i<8; i++) {
+            for (int j=0; j<8; j++) {
+                Type type = state[i][j];
+
+                if (type.getIndex() == 0) continue;
+
+                int kind = 2 * KINDS[type.getIndex()] + (type.getSide()? 1: 0);
+
+                key ^= RANDOM64[64*kind + square(8*i + j)];
+            }
+        }
+
+        for (int i=0; i<4; i++) {
+            if (castling.indexOf("KQkq".charAt(i)) != -1) {
+                key ^= RANDOM64[CASTLING + i];
+            }
+        }
+
+        if (enpassant.length() == 2) {
+            int file = enpassant.charAt(0) - 'a';
+
+            /* Row of the pawn which made the double step */
+            int row = turn? 3: 4;
+            Type capturer = turn? Type.P: Type.p;
+
+            if ((file > 0 && state[row][file-1] == capturer)
+                    || (file < 7 && state[row][file+1] == capturer)) {
+                key ^= RANDOM64[ENPASSANT + file];
+            }
+        }
+
+        if (turn) {
+            key ^= RANDOM64[TURN];
+        }
+
+        return key;
+    }
+
+    /**
+     * @param chess Game.
+     *
+     * @return Polyglot key of the current position.
+     */
+    static long key(Chess chess) {
+        return key(chess.getState(), chess.getTurn(), chess.getCastling(), chess.getEnpassant());
+    }
+
+    /**
+     * Encode a move by comparing the board before and after it.
+     *
+     * @param before Board state before the move.
+     * @param after Board state after the move.
+     * @param side True if white made the move.
+     *
+     * @return Polyglot move or -1 if the boards do not differ by a move.
+     */
+    static int encode(Type[][] before, Type[][] after, boolean side) {
+        int[] vacated = new int[2];
+        int[] arrived = new int[2];
+        int left = 0;
+        int came = 0;
+
+        for (int i=0; i<8; i++) {
+            for (int j=0; j<8; j++) {
+                Type old = before[i][j];
+                Type now = after[i][j];
+
+                if (old == now) continue;
+
+                if (isOwn(old, side)) {
+                    if (left == 2) return -1;
+                    vacated[left++] = 8*i + j;
+                }
+
+                if (isOwn(now, side)) {
+                    if (came == 2) return -1;
+                    arrived[came++] = 8*i + j;
+                }
+            }
+        }
+
+        if (left == 2 && came == 2) {
+            /* Castling: king takes its own rook */
+            int king = isKing(type(before, vacated[0]))? vacated[0]: vacated[1];
+            int rook = (king == vacated[0])? vacated[1]: vacated[0];
+
+            if (!isKing(type(before, king))) return -1;
+
+            return pack(king, rook, 0);
+        }
+
+        if (left != 1 || came != 1) return -1;
+
+        Type moved = type(before, vacated[0]);
+        Type landed = type(after, arrived[0]);
+        int promotion = 0;
+
+        if (moved != landed) {
+            if (moved != Type.P && moved != Type.p) return -1;
+
+            promotion = "-NBRQ".indexOf(landed.name().toUpperCase());
+        }
+
+        return pack(vacated[0], arrived[0], promotion);
+    }
+
+    /**
+     * Decode a move into notation understood by {@link Chess#tryMove}.
+     *
+     * @param state Board state before the move.
+     * @param move Polyglot move.
+     *
+     * @return Move or null if there is no own piece to move.
+     */
+    static String decode(Type[][] state, int move) {
+        int from = square((move >> 6) & 0x3f);
+        int to = square(move & 0x3f);
+        Type piece = type(state, from);
+        Type target = type(state, to);
+
+        if (piece.getIndex() == 0) return null;
+
+        if (isKing(piece) && target.getIndex() != 0 && target.getSide() == piece.getSide()) {
+            return (to % 8 > from % 8)? "O-O": "O-O-O";
+        }
+
+        boolean pawn = (piece == Type.P || piece == Type.p);
+        StringBuilder out = new StringBuilder();
+
+        if (!pawn) {
+            out.append(piece.name().toUpperCase());
+        }
+
+        out.append(coord(from));
+
+        /* Pawn changing file captures, also en passant */
+        if (target.getIndex() != 0 || (pawn && from % 8 != to % 8)) {
+            out.append('x');
+        }
+
+        out.append(coord(to));
+
+        int promotion = (move >> 12) & 7;
+
+        if (promotion != 0) {
+            out.append('=').append("-NBRQ".charAt(promotion));
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * @return Move from squares in board state numbering.
+     */
+    private static int pack(int from, int to, int promotion) {
+        return (promotion << 12) | (square(from) << 6) | square(to);
+    }
+
+    /**
+     * @return Polyglot square (row * 8 + file) of a board state square,
+     * and the other way round.
+     */
+    private static int square(int index) {
+        return 8 * (7 - index / 8) + index % 8;
+    }
+
+    /**
+     * @return Square of board state numbering in SAN, e.g. <tt>e4</tt>.
+     */
+    private static String coord(int index) {
+        return "" + (char) ('a' + index % 8) + (char) ('8' - index / 8);
+    }
+
+    private static Type type(Type[][] state, int index) {
+        return state[index / 8][index % 8];
+    }
+
+    private static boolean isOwn(Type type, boolean side) {
+        return type.getIndex() != 0 && type.getSide() == side;
+    }
+
+    private static boolean isKing(Type type) {
+        return type == Type.K || type == Type.k;
+    }
+}
@@ -0,0 +1,353 @@
+package fi.starck.sakki.main;
+
+import fi.starck.sakki.ai.AI;
+import fi.starck.sakki.ai.AnalysisCache;
+import fi.starck.sakki.ai.Variation;
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.MoveCode;
+import fi.starck.sakki.board.X88Backend;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch analysis of positions.
+ *
+ * Positions are read as FEN or EPD, one per line, from a file or from
+ * standard input. They are analysed on a pool of worker threads, each
+ * with an AI of its own. Results are written to standard output in
+ * the input order as soon as they are ready, as EPD with opcodes
+ * <tt>acd</tt> (depth), <tt>ce</tt> (score in centipawns for the side
+ * to move), <tt>pm</tt> (best move) and <tt>pv</tt>, moves written
+ * in Standard Algebraic Notation as EPD requires. Other operations
+ * of the input, like <tt>id</tt> and <tt>bm</tt>, are kept as they
+ * are, and those four are replaced if given. Only a small
+ * window of positions is in the works at a time, so input of any
+ * length is streamed.
+ *
+ * Every input line gives exactly one output line (empty lines stay
+ * empty). Output is flushed line by line, so after an interruption
+ * the number of complete output lines is the offset to resume from.
+ *
+ * With option <tt>-c</tt>, results are kept in a cache file shared by
+ * the workers and by later runs, and positions found in it at enough
+ * depth are not searched again.
+ *
+ * Usage: <tt>Analyse [-d depth] [-m millis] [-t threads] [-s offset]
+ * [-c cache] [file]</tt>
+ *
+ * @see AI
+ *
+ * @author Tuomas Starck
+ */
+public class Analyse {
+    private static final int DEPTH = 4;
+    private static final int WINDOW = 4;
+    private static final int CACHE_ENTRIES = 1 << 16;
+    private static final int CACHE_BITS = 20;
+
+    /* Operations written by the analysis */
+    private static final List<String> RESULTS = Arrays.asList("acd", "ce", "pm", "pv");
+
+    private static final ThreadLocal<AI> engines = new ThreadLocal<AI>();
+
+    private static AnalysisCache cache = null;
+
+    /**
+     * @param argv Options and optional input file.
+     */
+    public static void main(String[] argv) {
+        int depth = DEPTH;
+        long millis = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long offset = 0;
+        String file = null;
+        String cacheFile = null;
+
+        try {
+            for (int i=0; i<argv.length; i++) {
+                if (argv[i].equals("-d")) {
+                    depth = Integer.parseInt(argv[++i]);
+                }
+                else if (argv[i].equals("-m")) {
+                    millis = Long.parseLong(argv[++i]);
+                }
+                else if (argv[i].equals("-t")) {
+                    threads = Math.max(1, Integer.parseInt(argv[++i]));
+                }
+                else if (argv[i].equals("-s")) {
+                    offset = Long.parseLong(argv[++i]);
+                }
+                else if (argv[i].equals("-c")) {
+                    cacheFile = argv[++i];
+                }
+                else {
+                    file = argv[i];
+                }
+            }
+        }
+        catch (RuntimeException re) {
+            System.err.println("Usage: Analyse [-d depth] [-m millis] [-t threads] [-s offset] [-c cache] [file]");
+            System.exit(1);
+        }
+
+        try {
+            if (cacheFile != null) {
+                cache = new AnalysisCache(CACHE_ENTRIES, new File(cacheFile), CACHE_BITS);
+            }
+
+            InputStream in = (file == null)? System.in: new FileInputStream(file);
+
+            run(new BufferedReader(new InputStreamReader(in)),
+                new BufferedWriter(new OutputStreamWriter(System.out)),
+                depth, millis, threads, offset);
+
+            if (cache != null) {
+                cache.flush();
+            }
+        }
+        catch (IOException ioe) {
+            System.err.println(ioe.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Analyse every line of the input.
+     *
+     * @param in Input of positions.
+     * @param out Output of results.
+     * @param depth Search depth.
+     * @param millis Time limit per position or zero.
+     * @param threads Number of worker threads.
+     * @param offset Number of input lines to skip.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    static void run(BufferedReader in, final Writer out, final int depth,
+            final long millis, int threads, long offset) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final BlockingQueue<Future<String>> pending =
+            new ArrayBlockingQueue<Future<String>>(WINDOW * threads);
+        final IOException[] failure = new IOException[1];
+
+        /* Writer takes results in input order, waiting for each in
+         * turn. Result null marks the end of input.
+         */
+        Thread writer = new Thread("sakki-writer") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        String result = result(pending.take());
+
+                        if (result == null) break;
+
+                        out.write(result);
+                        out.write('\n');
+                        out.flush();
+                    }
+                }
+                catch (IOException ioe) {
+                    failure[0] = ioe;
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        writer.start();
+
+        try {
+            String line;
+
+            for (long n=0; (line = in.readLine()) != null; n++) {
+                if (n < offset) continue;
+
+                final String position = line.trim();
+
+                Future<String> task = pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        try {
+                            return analyse(position, depth, millis);
+                        }
+                        catch (RuntimeException re) {
+                            return position + " c0 \"" + re + "\";";
+                        }
+                    }
+                });
+
+                if (!enqueue(pending, task, writer)) break;
+            }
+
+            FutureTask<String> end = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() {
+                    return null;
+                }
+            });
+
+            end.run();
+
+            if (enqueue(pending, end, writer)) {
+                writer.join();
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            pool.shutdownNow();
+            in.close();
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Wait for room in the queue as long as the writer is alive.
+     *
+     * @return False if the writer has given up.
+     */
+    private static boolean enqueue(BlockingQueue<Future<String>> pending,
+            Future<String> task, Thread writer) throws InterruptedException {
+        while (!pending.offer(task, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Result of an analysis, or a comment on why it failed.
+     */
+    private static String result(Future<String> future) throws InterruptedException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ee) {
+            return "c0 \"" + ee.getCause() + "\";";
+        }
+    }
+
+    /**
+     * Analyse one position with the AI of the current thread.
+     *
+     * @param line FEN or EPD.
+     * @param depth Search depth.
+     * @param millis Time limit or zero.
+     *
+     * @return Position with the results as EPD.
+     */
+    private static String analyse(String line, int depth, long millis) {
+        if (line.isEmpty()) return "";
+
+        String[] fields = line.split(" +", 5);
+        StringBuilder epd = new StringBuilder();
+
+        for (int i=0; i<Math.min(4, fields.length); i++) {
+            if (i > 0) epd.append(' ');
+            epd.append(fields[i]);
+        }
+
+        String position = epd.toString();
+
+        if (fields.length == 5) {
+            operations(fields[4], epd);
+        }
+
+        AI ai = engines.get();
+
+        if (ai == null) {
+            ai = new AI();
+            ai.setAnalysisCache(cache);
+            engines.set(ai);
+        }
+
+        ai.setDepth(depth);
+        ai.setTimeLimit(millis);
+        ai.setPosition(new Chess(position));
+
+        List<Variation> lines = ai.analyse(1);
+
+        if (lines.isEmpty()) {
+            return epd.append(" c0 \"no legal moves\";").toString();
+        }
+
+        Variation best = lines.get(0);
+        X88Backend board = new X88Backend(position);
+
+        epd.append(" acd ").append(best.getDepth()).append(';');
+        epd.append(" ce ").append(best.getScore()).append(';');
+        epd.append(" pm ");
+        board.san(MoveCode.parse(best.getMove()), epd).append(';');
+        epd.append(" pv");
+
+        for (String move : best.getPrincipalVariation()) {
+            int code = MoveCode.parse(move);
+
+            board.san(code, epd.append(' '));
+            board.make(code);
+        }
+
+        return epd.append(';').toString();
+    }
+
+    /**
+     * Copy the operations of an EPD record, save for those written by
+     * the analysis. Halfmove clock and fullmove number of a FEN are
+     * not operations and are left out.
+     *
+     * @param rest Fields after the en passant square.
+     * @param epd Buffer the operations are appended to.
+     */
+    private static void operations(String rest, StringBuilder epd) {
+        if (rest.matches("\\d+ +\\d+")) return;
+
+        boolean quoted = false;
+        int start = 0;
+
+        for (int i=0; i<rest.length(); i++) {
+            char c = rest.charAt(i);
+
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (c == ';' && !quoted) {
+                operation(rest.substring(start, i).trim(), epd);
+                start = i + 1;
+            }
+        }
+
+        operation(rest.substring(start).trim(), epd);
+    }
+
+    private static void operation(String operation, StringBuilder epd) {
+        if (operation.isEmpty()) return;
+
+        if (RESULTS.contains(operation.split(" ", 2)[0])) return;
+
+        epd.append(' ').append(operation).append(';');
+    }
+}
@@ -0,0 +1,303 @@
+package fi.starck.sakki.main;
+
+import fi.starck.sakki.ai.AI;
+import fi.starck.sakki.ai.Evaluator;
+import fi.starck.sakki.ai.Pruning;
+import fi.starck.sakki.ai.SearchStats;
+import fi.starck.sakki.board.Chess;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Benchmarks of the search.
+ *
+ * By default, time-to-depth of the parallel search is measured. Each
+ * position is searched to the same depth with 1, 2, 4, 8 and 16 threads
+ * and the time taken is reported together with speedup over a single
+ * thread.
+ *
+ * With argument <tt>pruning</tt>, node counts of a single threaded
+ * search are reported with no selective techniques, with each of them
+ * alone and with all of them together.
+ *
+ * With argument <tt>eval</tt>, evaluation throughput is measured with
+ * and without the pawn hash and evaluation cache over the distinct
+ * positions up to two halfmoves deep from the bench positions. Each
+ * pass starts with empty caches and sees a position only once, so the
+ * evaluation cache shows its cost rather than its gain there; how often
+ * the caches answer in practice is then reported from a search of each
+ * bench position.
+ *
+ * @see AI
+ *
+ * @author Tuomas Starck
+ */
+public class Bench {
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    private static final int PASSES = 100;
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "rnbq1rk1/ppp2ppp/5n2/3p4/2PN4/3Q2P1/PP1NPPBP/R3K2R b KQ c3 0 9",
+        "5rk1/1p3pp1/6q1/p1P3bp/NP5n/P1Q4P/2Pr1BP1/R3R1K1 b - - 0 1"
+    };
+
+    /**
+     * @param argv Optional search depth and optional word
+     * <tt>pruning</tt> or <tt>eval</tt> in any order.
+     */
+    public static void main(String[] argv) {
+        int depth = 4;
+        boolean nodes = false;
+        boolean eval = false;
+
+        for (String arg : argv) {
+            if (arg.equals("pruning")) {
+                nodes = true;
+                continue;
+            }
+
+            if (arg.equals("eval")) {
+                eval = true;
+                continue;
+            }
+
+            try {
+                depth = Integer.parseInt(arg);
+            }
+            catch (NumberFormatException pass) {}
+        }
+
+        if (eval) {
+            evaluation(depth);
+        }
+        else if (nodes) {
+            pruning(depth);
+        }
+        else {
+            timeToDepth(depth);
+        }
+    }
+
+    /**
+     * @param depth Search depth.
+     */
+    private static void timeToDepth(int depth) {
+        System.out.format("Time to depth %d (ms)\n", depth);
+        System.out.format("%8s", "threads");
+
+        for (int i=0; i<POSITIONS.length; i++) {
+            System.out.format("%10s", "#" + (i+1));
+        }
+
+        System.out.format("%10s%10s\n", "total", "speedup");
+
+        long single = 0;
+
+        for (int threads : THREADS) {
+            long total = 0;
+
+            System.out.format("%8d", threads);
+
+            for (String fen : POSITIONS) {
+                AI ai = new AI(new Chess(fen), threads);
+                ai.setDepth(depth);
+
+                long start = System.nanoTime();
+                ai.doMove();
+                long ms = (System.nanoTime() - start) / 1000000;
+
+                total += ms;
+                System.out.format("%10d", ms);
+            }
+
+            if (threads == 1) single = total;
+
+            System.out.format("%10d%10.2f\n", total,
+                total == 0? 0.0: (double) single / total);
+        }
+    }
+
+    /**
+     * @param depth Search depth.
+     */
+    private static void pruning(int depth) {
+        Pruning[] all = Pruning.values();
+
+        System.out.format("Nodes at depth %d\n", depth);
+        System.out.format("%22s", "pruning");
+
+        for (int i=0; i<POSITIONS.length; i++) {
+            System.out.format("%10s", "#" + (i+1));
+        }
+
+        System.out.format("%10s%10s\n", "total", "ratio");
+
+        long none = 0;
+
+        /* Row -1 is none, rows 0..n-1 each technique alone
+         * and row n all of them together.
+         */
+        for (int row = -1; row <= all.length; row++) {
+            String name = (row < 0)? "none": (row == all.length)? "all": all[row].name();
+            long total = 0;
+
+            System.out.format("%22s", name.toLowerCase());
+
+            for (String fen : POSITIONS) {
+                AI ai = new AI(new Chess(fen));
+                ai.setDepth(depth);
+
+                for (int i=0; i<all.length; i++) {
+                    if (row == all.length || row == i) {
+                        ai.enable(all[i]);
+                    }
+                    else {
+                        ai.disable(all[i]);
+                    }
+                }
+
+                ai.doMove();
+
+                long nodes = ai.getStats().getNodes();
+
+                total += nodes;
+                System.out.format("%10d", nodes);
+            }
+
+            if (row < 0) none = total;
+
+            System.out.format("%10d%10.2f\n", total,
+                none == 0? 0.0: (double) total / none);
+        }
+    }
+
+    /**
+     * @param games Positions.
+     *
+     * @param seen Keys of the positions collected so far.
+     *
+     * @return Positions one legal halfmove away from the given ones
+     * which are not seen yet.
+     */
+    private static ArrayList<Chess> expand(ArrayList<Chess> games, HashSet<Long> seen) {
+        ArrayList<Chess> all = new ArrayList<Chess>();
+
+        for (Chess game : games) {
+            for (String move : game.getMoves()) {
+                Chess child = new Chess(game.toString());
+
+                if (child.tryMove(move).isLegal() && seen.add(child.getKey())) {
+                    all.add(child);
+                }
+            }
+        }
+
+        return all;
+    }
+
+    /**
+     * @param evaluator Evaluator.
+     * @param games Positions.
+     *
+     * @return Sum of the scores, so that the work cannot be skipped.
+     */
+    private static long evaluate(Evaluator evaluator, ArrayList<Chess> games) {
+        long sum = 0;
+
+        for (Chess game : games) {
+            sum += evaluator.evaluate(game);
+        }
+
+        return sum;
+    }
+
+    /**
+     * @param depth Depth of the searches.
+     */
+    private static void evaluation(int depth) {
+        ArrayList<Chess> games = new ArrayList<Chess>();
+        ArrayList<Chess> frontier = new ArrayList<Chess>();
+        HashSet<Long> seen = new HashSet<Long>();
+
+        for (String fen : POSITIONS) {
+            Chess game = new Chess(fen);
+
+            if (seen.add(game.getKey())) {
+                frontier.add(game);
+            }
+        }
+
+        for (int i=0; i<=2; i++) {
+            games.addAll(frontier);
+
+            if (i < 2) {
+                frontier = expand(frontier, seen);
+            }
+        }
+
+        /* Warm up with separate evaluators, so that no
+         * measurement runs on caches filled beforehand.
+         */
+        evaluate(new Evaluator(false), games);
+        evaluate(new Evaluator(true), games);
+
+        System.out.format("Evaluation of %d distinct positions, %d passes\n",
+            games.size(), PASSES);
+        System.out.format("%10s%12s%14s\n", "caches", "ms", "evals/s");
+
+        double plain = 0.0;
+
+        for (boolean cached : new boolean[]{false, true}) {
+            long sum = 0;
+            long ns = 1;
+
+            for (int i=0; i<PASSES; i++) {
+                Evaluator evaluator = new Evaluator(cached);
+                long start = System.nanoTime();
+
+                sum += evaluate(evaluator, games);
+                ns += System.nanoTime() - start;
+            }
+
+            double rate = 1e9 * PASSES * games.size() / ns;
+
+            if (!cached) plain = rate;
+
+            System.out.format("%10s%12d%14.0f", cached? "on": "off", ns / 1000000, rate);
+
+            if (cached) {
+                System.out.format("  (%.2fx)", rate / plain);
+            }
+
+            System.out.format("  [%d]\n", sum);
+        }
+
+        System.out.format("\nCache hits in a search to depth %d\n", depth);
+        System.out.format("%8s%14s%8s%14s%8s\n", "#", "pawn probes", "%", "eval probes", "%");
+
+        for (int i=0; i<POSITIONS.length; i++) {
+            AI ai = new AI(new Chess(POSITIONS[i]));
+            ai.setDepth(depth);
+            ai.doMove();
+
+            SearchStats stats = ai.getStats();
+
+            System.out.format("%8d%14d%8.1f%14d%8.1f\n", i+1,
+                stats.getPawnProbes(), percent(stats.getPawnHits(), stats.getPawnProbes()),
+                stats.getEvalProbes(), percent(stats.getEvalHits(), stats.getEvalProbes()));
+        }
+    }
+
+    /**
+     * @param part Part.
+     * @param whole Whole.
+     *
+     * @return Part as percentage of the whole.
+     */
+    private static double percent(long part, long whole) {
+        return (whole == 0)? 0.0: 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,85 @@
+package fi.starck.sakki.main;
+
+import fi.starck.sakki.book.BookBuilder;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Compile an opening book from PGN files.
+ *
+ * Usage: <tt>Book [-p plies] [-m records] [-o book.bin] [-t dir]
+ * [file.pgn...]</tt>. Without files, PGN is read from standard input.
+ * Option <tt>-m</tt> sets the number of records kept in memory before
+ * spilling a sorted run into the temporary directory.
+ *
+ * @see BookBuilder
+ *
+ * @author Tuomas Starck
+ */
+public class Book {
+    private static final int PLIES = 20;
+    private static final int RECORDS = 1 << 22;
+
+    /**
+     * @param argv Options and PGN files.
+     */
+    public static void main(String[] argv) {
+        int plies = PLIES;
+        int records = RECORDS;
+        File book = new File("book.bin");
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        int first = argv.length;
+
+        try {
+            for (int i=0; i<argv.length; i++) {
+                if (argv[i].equals("-p")) plies = Integer.parseInt(argv[++i]);
+                else if (argv[i].equals("-m")) records = Integer.parseInt(argv[++i]);
+                else if (argv[i].equals("-o")) book = new File(argv[++i]);
+                else if (argv[i].equals("-t")) tmp = new File(argv[++i]);
+                else {
+                    first = i;
+                    break;
+                }
+            }
+        }
+        catch (RuntimeException re) {
+            System.err.println("Usage: Book [-p plies] [-m records] [-o book.bin] [-t dir] [file.pgn...]");
+            System.exit(1);
+        }
+
+        BookBuilder builder = new BookBuilder(tmp, plies, records);
+
+        try {
+            if (first == argv.length) {
+                builder.read(new InputStreamReader(System.in));
+            }
+
+            for (int i=first; i<argv.length; i++) {
+                Reader in = new FileReader(argv[i]);
+
+                try {
+                    builder.read(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+
+            long entries = builder.write(book);
+
+            System.out.format("%d games, %d records, %d entries in %s\n",
+                builder.getGames(), builder.getRecords(), entries, book);
+
+            if (builder.getBroken() > 0) {
+                System.out.format("%d games had an unplayable move\n", builder.getBroken());
+            }
+        }
+        catch (IOException ioe) {
+            System.err.println(ioe.getMessage());
+            System.exit(1);
+        }
+    }
+}
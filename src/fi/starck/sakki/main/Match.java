@@ -0,0 +1,301 @@
+package fi.starck.sakki.main;
+
+import fi.starck.sakki.ai.AI;
+import fi.starck.sakki.ai.Pruning;
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.GameStatus;
+import fi.starck.sakki.board.MoveException;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Self-play match between two engine configurations.
+ *
+ * Games start from an opening suite, each opening played twice with
+ * colours swapped. As many games are played at once as there are
+ * processors, each engine searching on a single thread. Games are
+ * adjudicated by the rules: checkmate, stalemate, threefold repetition,
+ * the fifty-move rule and insufficient material. Overlong games are
+ * drawn.
+ *
+ * After each game, the Elo difference of engine A over engine B is
+ * reported together with a sequential probability ratio test, which
+ * stops the match as soon as one of its hypotheses is accepted.
+ *
+ * Configurations are comma separated settings: <tt>depth=N</tt>,
+ * <tt>nodes=N</tt>, <tt>time=ms</tt> and <tt>+technique</tt> or
+ * <tt>-technique</tt> to switch a {@link Pruning} technique on or off,
+ * e.g. <tt>depth=6,nodes=20000,-futility</tt>.
+ *
+ * Usage: <tt>Match [-a config] [-b config] [-g games] [-c concurrency]
+ * [-o openings] [-sprt elo0,elo1,alpha,beta]</tt>
+ *
+ * @see Sprt
+ *
+ * @author Tuomas Starck
+ */
+public class Match {
+    private static final int GAMES = 1000;
+    private static final int MAX_PLIES = 400;
+
+    private static final String[] OPENINGS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2",
+        "rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2",
+        "rnbqkbnr/ppp1pppp/8/3p4/3P4/8/PPP1PPPP/RNBQKBNR w KQkq d6 0 2",
+        "rnbqkb1r/pppppppp/5n2/8/3P4/8/PPP1PPPP/RNBQKBNR w KQkq - 1 2",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "rnbqkbnr/pppp1ppp/4p3/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+        "rnbqkbnr/pppppppp/8/8/2P5/8/PP1PPPPP/RNBQKBNR b KQkq c3 0 1"
+    };
+
+    /**
+     * Settings of one engine.
+     */
+    private static class Config {
+        private int depth = 4;
+        private long nodes = 0;
+        private long time = 0;
+        private final List<Pruning> on = new ArrayList<Pruning>();
+        private final List<Pruning> off = new ArrayList<Pruning>();
+
+        /**
+         * @param spec Comma separated settings.
+         *
+         * @throws IllegalArgumentException On bad settings.
+         */
+        Config(String spec) {
+            for (String item : spec.split(",")) {
+                item = item.trim();
+
+                if (item.isEmpty()) continue;
+
+                if (item.startsWith("+") || item.startsWith("-")) {
+                    Pruning technique = Pruning.valueOf(item.substring(1).toUpperCase());
+                    (item.startsWith("+")? on: off).add(technique);
+                    continue;
+                }
+
+                String[] pair = item.split("=");
+
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Bad setting: " + item);
+                }
+
+                if (pair[0].equals("depth")) depth = Integer.parseInt(pair[1]);
+                else if (pair[0].equals("nodes")) nodes = Long.parseLong(pair[1]);
+                else if (pair[0].equals("time")) time = Long.parseLong(pair[1]);
+                else throw new IllegalArgumentException("Bad setting: " + item);
+            }
+        }
+
+        /**
+         * @return New single threaded engine at given position.
+         */
+        AI create(Chess game) {
+            AI ai = new AI(game);
+
+            ai.setDepth(depth);
+            ai.setNodeLimit(nodes);
+            ai.setTimeLimit(time);
+
+            for (Pruning technique : on) ai.enable(technique);
+            for (Pruning technique : off) ai.disable(technique);
+
+            return ai;
+        }
+    }
+
+    /**
+     * @param argv Options.
+     */
+    public static void main(String[] argv) {
+        Config a = null;
+        Config b = null;
+        int games = GAMES;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        List<String> openings = new ArrayList<String>();
+        double[] sprt = {0, 10, 0.05, 0.05};
+
+        try {
+            a = new Config("");
+            b = new Config("");
+
+            for (int i=0; i<argv.length; i++) {
+                if (argv[i].equals("-a")) a = new Config(argv[++i]);
+                else if (argv[i].equals("-b")) b = new Config(argv[++i]);
+                else if (argv[i].equals("-g")) games = Integer.parseInt(argv[++i]);
+                else if (argv[i].equals("-c")) concurrency = Math.max(1, Integer.parseInt(argv[++i]));
+                else if (argv[i].equals("-o")) openings = read(argv[++i]);
+                else if (argv[i].equals("-sprt")) {
+                    String[] values = argv[++i].split(",");
+
+                    for (int j=0; j<sprt.length; j++) {
+                        sprt[j] = Double.parseDouble(values[j]);
+                    }
+                }
+                else throw new IllegalArgumentException(argv[i]);
+            }
+        }
+        catch (RuntimeException re) {
+            System.err.println("Usage: Match [-a config] [-b config] [-g games] [-c concurrency]"
+                + " [-o openings] [-sprt elo0,elo1,alpha,beta]");
+            System.exit(1);
+        }
+        catch (IOException ioe) {
+            System.err.println(ioe.getMessage());
+            System.exit(1);
+        }
+
+        if (openings.isEmpty()) {
+            for (String fen : OPENINGS) openings.add(fen);
+        }
+
+        run(a, b, games, concurrency, openings, new Sprt(sprt[0], sprt[1], sprt[2], sprt[3]));
+    }
+
+    /**
+     * @return Non-empty lines of a file.
+     */
+    private static List<String> read(String file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) lines.add(line.trim());
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Play games until the test is decided or all games are played.
+     */
+    private static void run(final Config a, final Config b, int games, int concurrency,
+            final List<String> openings, Sprt test) {
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        CompletionService<Double> results = new ExecutorCompletionService<Double>(pool);
+        int started = 0;
+        int running = 0;
+
+        System.out.format("%6s %5s %5s %5s %8s %18s %8s\n",
+            "games", "wins", "draws", "losses", "elo", "95%", "llr");
+
+        try {
+            while (started < games || running > 0) {
+                while (running < concurrency && started < games && test.decision() == 0) {
+                    final int game = started++;
+
+                    results.submit(new Callable<Double>() {
+                        @Override
+                        public Double call() {
+                            String fen = openings.get((game / 2) % openings.size());
+
+                            /* Engine A is white in even games */
+                            if (game % 2 == 0) {
+                                return play(fen, a, b);
+                            }
+
+                            return 1.0 - play(fen, b, a);
+                        }
+                    });
+
+                    running++;
+                }
+
+                if (running == 0) break;
+
+                test.add(results.take().get());
+                running--;
+
+                double[] elo = test.elo();
+
+                System.out.format("%6d %5d %5d %5d %8.1f [%7.1f, %7.1f] %8.2f\n",
+                    test.getGames(), test.getWins(), test.getDraws(), test.getLosses(),
+                    elo[0], elo[1], elo[2], test.llr());
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ee) {
+            System.err.println(ee.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        switch (test.decision()) {
+            case 1:
+                System.out.format("H1 accepted (llr %.2f >= %.2f): A is stronger\n",
+                    test.llr(), test.getUpper());
+                break;
+            case -1:
+                System.out.format("H0 accepted (llr %.2f <= %.2f): A is not stronger\n",
+                    test.llr(), test.getLower());
+                break;
+            default:
+                System.out.println("No decision");
+        }
+    }
+
+    /**
+     * Play one game.
+     *
+     * @param fen Opening position.
+     * @param white Settings of white.
+     * @param black Settings of black.
+     *
+     * @return Result for white: 1, 0.5 or 0.
+     */
+    private static double play(String fen, Config white, Config black) {
+        Chess game = new Chess(fen);
+        AI[] engines = {white.create(game), black.create(game)};
+
+        for (int plies=0; ; plies++) {
+            GameStatus status = game.status();
+
+            if (status == GameStatus.CHECKMATE) {
+                return game.getTurn()? 0.0: 1.0;
+            }
+
+            if (status.isDraw() || plies >= MAX_PLIES) {
+                return 0.5;
+            }
+
+            AI mover = engines[game.getTurn()? 0: 1];
+            AI other = engines[game.getTurn()? 1: 0];
+
+            if (mover.doMove() == null) {
+                if (game.isChecked() == null) return 0.5;
+                return game.getTurn()? 0.0: 1.0;
+            }
+
+            String move = mover.getPrincipalVariation()[0];
+
+            try {
+                other.play(move);
+                game.move(move);
+            }
+            catch (MoveException me) {
+                throw new IllegalStateException(move + " in " + game, me);
+            }
+        }
+    }
+}
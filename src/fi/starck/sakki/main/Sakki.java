@@ -1,6 +1,7 @@
 package fi.starck.sakki.main;
 
 import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.GameStatus;
 import fi.starck.sakki.board.MoveException;
 import fi.starck.sakki.board.Type;
 import java.util.ArrayList;
@@ -147,12 +148,10 @@ public class Sakki {
             }
 
             if (tryParsingFen) {
-                Chess reset;
                 tryParsingFen = false;
 
                 try {
-                    reset = new Chess(input);
-                    game = reset;
+                    game.reset(input);
                     history.clear();
                 }
                 catch (IllegalArgumentException iae) {
@@ -184,7 +183,7 @@ public class Sakki {
             }
 
             if (input.equals("new")) {
-                game = new Chess();
+                game.reset(null);
                 System.out.print(draw(game) + prompt(game));
                 continue;
             }
@@ -197,7 +196,7 @@ public class Sakki {
 
             if (input.equals("u") || input.equals("undo")) {
                 if (!history.isEmpty()) {
-                    game = new Chess(history.remove(0));
+                    game.reset(history.remove(0));
                     System.out.print(draw(game) + prompt(game));
                 }
                 else {
@@ -219,18 +218,18 @@ public class Sakki {
             catch (MoveException me) {
                 System.out.println("\n" + me);
                 System.out.print(prompt(game));
+                continue;
+            }
 
-                /* If move went too far before failing, game is left
-                 * in an inconsistent state and must be restored.
-                 */
-                if (me.isDirty()) {
-                    game = new Chess(current);
-                }
+            GameStatus status = game.status();
 
-                continue;
+            System.out.print(draw(game));
+
+            if (status.isOver()) {
+                System.out.println("\n" + status);
             }
 
-            System.out.print(draw(game) + prompt(game));
+            System.out.print(prompt(game));
         }
 
         System.out.println();
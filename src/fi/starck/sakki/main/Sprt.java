@@ -0,0 +1,145 @@
+package fi.starck.sakki.main;
+
+/**
+ * Sequential probability ratio test of a match between two engines.
+ *
+ * Null hypothesis is that the first engine is <tt>elo0</tt> stronger
+ * than the second, the alternative that it is <tt>elo1</tt> stronger.
+ * After each game, log-likelihood ratio of the results is compared to
+ * bounds set by error probabilities <tt>alpha</tt> and <tt>beta</tt>.
+ * Crossing the upper bound accepts the alternative, crossing the lower
+ * one accepts the null hypothesis. Ratio uses the usual normal
+ * approximation of the trinomial (win, draw, loss) model.
+ *
+ * <p>{@link http://en.wikipedia.org/wiki/Sequential_probability_ratio_test}</p>
+ *
+ * @see Match
+ *
+ * @author Tuomas Starck
+ */
+class Sprt {
+    private final double score0;
+    private final double score1;
+    private final double lower;
+    private final double upper;
+
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * @param elo0 Elo difference of the null hypothesis.
+     * @param elo1 Elo difference of the alternative hypothesis.
+     * @param alpha Probability of accepting the alternative falsely.
+     * @param beta Probability of accepting the null hypothesis falsely.
+     */
+    Sprt(double elo0, double elo1, double alpha, double beta) {
+        score0 = score(elo0);
+        score1 = score(elo1);
+        lower = Math.log(beta / (1 - alpha));
+        upper = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * @param result Result of a game for the first engine: 1 for
+     * a win, 0.5 for a draw and 0 for a loss.
+     */
+    void add(double result) {
+        if (result > 0.5) wins++;
+        else if (result < 0.5) losses++;
+        else draws++;
+    }
+
+    int getWins() {
+        return wins;
+    }
+
+    int getDraws() {
+        return draws;
+    }
+
+    int getLosses() {
+        return losses;
+    }
+
+    int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * @return Log-likelihood ratio of the results so far.
+     */
+    double llr() {
+        double w = wins;
+        double d = draws;
+        double l = losses;
+
+        if (w + d + l == 0) return 0.0;
+
+        /* One-sided results have no variance, so pretend
+         * to have half a game of each result more.
+         */
+        if (w * l == 0 && d * (w + l) == 0) {
+            w += 0.5;
+            d += 0.5;
+            l += 0.5;
+        }
+
+        double n = w + d + l;
+        double s = (w + 0.5 * d) / n;
+        double variance = (w + 0.25 * d) / n - s * s;
+
+        return (score1 - score0) * (2 * s - score0 - score1) / (2 * variance / n);
+    }
+
+    double getLower() {
+        return lower;
+    }
+
+    double getUpper() {
+        return upper;
+    }
+
+    /**
+     * @return 1 if the alternative is accepted, -1 if the null
+     * hypothesis is accepted and 0 if the test goes on.
+     */
+    int decision() {
+        double llr = llr();
+
+        if (llr >= upper) return 1;
+        if (llr <= lower) return -1;
+        return 0;
+    }
+
+    /**
+     * @return Estimated Elo difference and its 95% confidence interval.
+     */
+    double[] elo() {
+        int n = getGames();
+
+        if (n == 0) return new double[] {0.0, 0.0, 0.0};
+
+        double s = (wins + 0.5 * draws) / n;
+        double variance = (wins + 0.25 * draws) / n - s * s;
+        double margin = 1.96 * Math.sqrt(Math.max(0.0, variance) / n);
+
+        return new double[] {elo(s), elo(s - margin), elo(s + margin)};
+    }
+
+    /**
+     * @return Expected score of Elo difference.
+     */
+    private static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * @return Elo difference of expected score.
+     */
+    private static double elo(double score) {
+        double s = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+
+        return -400 * Math.log10(1 / s - 1);
+    }
+}
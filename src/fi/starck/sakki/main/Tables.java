@@ -0,0 +1,59 @@
+package fi.starck.sakki.main;
+
+import fi.starck.sakki.tablebase.Generator;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Generate endgame tablebases.
+ *
+ * Usage: <tt>Tables directory signature...</tt>, e.g.
+ * <tt>Tables tb KRvK KPvK</tt>. Tables the given ones depend on
+ * are generated too. Number of worker threads is the number of
+ * available processors.
+ *
+ * @see Generator
+ *
+ * @author Tuomas Starck
+ */
+public class Tables {
+    /**
+     * @param argv Directory of the tables and signatures to generate.
+     */
+    public static void main(String[] argv) {
+        if (argv.length < 2) {
+            System.err.println("Usage: Tables directory signature...");
+            System.exit(1);
+        }
+
+        File dir = new File(argv[0]);
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Cannot create " + dir);
+            System.exit(1);
+        }
+
+        Generator generator = new Generator(dir, Runtime.getRuntime().availableProcessors());
+
+        for (int i=1; i<argv.length; i++) {
+            long start = System.nanoTime();
+
+            try {
+                for (String name : generator.generate(argv[i])) {
+                    System.out.println("Generated " + name);
+                }
+            }
+            catch (IllegalArgumentException iae) {
+                System.err.println(iae.getMessage());
+                continue;
+            }
+            catch (IOException ioe) {
+                System.err.println(argv[i] + ": " + ioe.getMessage());
+                System.exit(1);
+            }
+
+            System.out.format("%s done in %d s\n", argv[i],
+                (System.nanoTime() - start) / 1000000000L);
+        }
+    }
+}
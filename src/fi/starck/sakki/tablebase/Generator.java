@@ -0,0 +1,378 @@
+package fi.starck.sakki.tablebase;
+
+import fi.starck.sakki.board.MoveCode;
+import fi.starck.sakki.board.X88Backend;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generator of endgame tablebases by retrograde analysis.
+ *
+ * All positions of a material signature are enumerated and their
+ * moves generated on an {@link X88Backend}, which is set up directly
+ * from the squares of an index and moved in place. Moves within the signature
+ * are stored as links between positions; results of captures and
+ * promotions are looked up from the tables of smaller signatures,
+ * which are generated first when missing.
+ *
+ * Positions are then resolved one distance at a time, starting from
+ * checkmates. At an odd distance <i>n</i> a position is won if some
+ * move leads to a loss in <i>n-1</i>. At an even distance it is lost
+ * if every move leads to a win and the longest of them takes
+ * <i>n-1</i>. When two distances in a row resolve nothing, the rest
+ * are draws. Each pass only writes values of the current distance and
+ * only reads smaller ones, so the positions are split into chunks
+ * and handled by several threads without locking.
+ *
+ * En passant is ignored: positions are stored without an en passant
+ * target, which is exact unless both sides have pawns.
+ *
+ * @see Tablebase
+ *
+ * @author Tuomas Starck
+ */
+public class Generator {
+    private static final int CHUNK = 1 << 14;
+
+    /* Working values besides distances and Tablebase.DRAW */
+    private static final int UNKNOWN = 254;
+    private static final int NEVER = 255;
+    private static final int LONGEST = 253;
+
+    private final Tablebase tablebase;
+    private final int threads;
+
+    /**
+     * @param dir Directory of the table files.
+     * @param threads Number of worker threads.
+     */
+    public Generator(File dir, int threads) {
+        this.tablebase = new Tablebase(dir);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return Tablebase of the generated tables.
+     */
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Generate the table of a signature and all the tables it depends
+     * on. Tables already on disk are not generated again.
+     *
+     * @param signature Material signature, e.g. <tt>KRvK</tt>.
+     *
+     * @return Names of the generated tables in the order of generation.
+     *
+     * @throws IllegalArgumentException If the signature is not valid.
+     * @throws IOException If a table cannot be written.
+     */
+    public List<String> generate(String signature) throws IOException {
+        List<String> done = new ArrayList<String>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            generate(Signature.parse(signature), pool, done);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        return done;
+    }
+
+    private void generate(Signature signature, ExecutorService pool, List<String> done) throws IOException {
+        if (tablebase.contains(signature)) return;
+
+        for (Signature child : signature.getChildren()) {
+            generate(child, pool, done);
+        }
+
+        Tablebase.write(tablebase.file(signature), solve(signature, pool));
+        tablebase.added(signature);
+        done.add(signature.getName());
+    }
+
+    /**
+     * @param signature Material signature.
+     * @param pool Worker threads.
+     *
+     * @return Value of each position.
+     */
+    private byte[] solve(Signature signature, ExecutorService pool) throws IOException {
+        int size = signature.getSize();
+        byte[] values = new byte[size];
+        Chunk[] chunks = new Chunk[(size + CHUNK - 1) / CHUNK];
+
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+
+        for (int c=0; c<chunks.length; c++) {
+            chunks[c] = new Chunk(signature, values, c * CHUNK, Math.min(size, (c + 1) * CHUNK));
+            tasks.add(chunks[c].enumerate());
+        }
+
+        int latest = run(pool, tasks);
+
+        int[] resolved = new int[LONGEST + 1];
+        resolved[0] = 1; /* checkmates */
+
+        for (int n=1; n<=LONGEST; n++) {
+            tasks.clear();
+
+            for (Chunk chunk : chunks) {
+                tasks.add(chunk.resolve(n));
+            }
+
+            resolved[n] = run(pool, tasks);
+
+            if (n > latest && resolved[n] == 0 && resolved[n-1] == 0) {
+                for (int i=0; i<size; i++) {
+                    if ((values[i] & 0xff) == UNKNOWN) values[i] = (byte) Tablebase.DRAW;
+                }
+
+                return values;
+            }
+        }
+
+        throw new IllegalStateException("Distance to mate too long in " + signature);
+    }
+
+    /**
+     * Run tasks and wait for all of them.
+     *
+     * @return Largest result of the tasks.
+     */
+    private static int run(ExecutorService pool, List<Callable<Integer>> tasks) throws IOException {
+        int max = 0;
+
+        try {
+            for (Future<Integer> future : pool.invokeAll(tasks)) {
+                max = Math.max(max, future.get());
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+
+            throw new IOException(ee.getCause().toString());
+        }
+
+        return max;
+    }
+
+    /**
+     * A range of positions and the links from them to their children.
+     */
+    private class Chunk {
+        private final Signature signature;
+        private final byte[] values;
+        private final int from;
+        private final int to;
+
+        /* Children within the signature, position i has children
+         * links[start[i-from] .. start[i-from+1]-1].
+         */
+        private final int[] start;
+        private int[] links;
+
+        /* Distances at which captures and promotions decide */
+        private final byte[] winAt;
+        private final byte[] lossAt;
+
+        /* Working board while enumerating */
+        private X88Backend board;
+        private byte[] squares;
+        private int[] moves;
+
+        Chunk(Signature signature, byte[] values, int from, int to) {
+            this.signature = signature;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            start = new int[to - from + 1];
+            links = new int[16];
+            winAt = new byte[to - from];
+            lossAt = new byte[to - from];
+        }
+
+        /**
+         * @return Task that finds legal positions and their moves. Result
+         * of the task is the furthest distance decided by captures or
+         * promotions.
+         */
+        Callable<Integer> enumerate() {
+            return new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int latest = 0;
+                    int count = 0;
+
+                    board = new X88Backend();
+                    squares = new byte[64];
+                    moves = new int[MoveCode.MAX_MOVES];
+
+                    for (int i=from; i<to; i++) {
+                        start[i-from] = count;
+                        values[i] = (byte) position(i);
+
+                        if ((values[i] & 0xff) != UNKNOWN) continue;
+
+                        count = moves(i, count);
+
+                        for (int at : new int[] {winAt[i-from] & 0xff, lossAt[i-from] & 0xff}) {
+                            if (at != NEVER) latest = Math.max(latest, at);
+                        }
+                    }
+
+                    start[to-from] = count;
+                    links = Arrays.copyOf(links, count);
+
+                    board = null;
+                    squares = null;
+                    moves = null;
+
+                    return latest;
+                }
+            };
+        }
+
+        /**
+         * Set up a position on the working board.
+         *
+         * @return Draw for illegal positions, otherwise unknown.
+         */
+        private int position(int index) {
+            int[] pieces = signature.squares(index);
+
+            if (!signature.isPlaceable(pieces)) return Tablebase.DRAW;
+
+            board.setSquares(signature.place(pieces, squares), Signature.turn(index));
+
+            /* Side not to move may not be in check */
+            board.makeNull();
+            boolean illegal = board.inCheck();
+            board.unmake();
+
+            return illegal? Tablebase.DRAW: UNKNOWN;
+        }
+
+        /**
+         * Generate the moves of a legal position on the working board.
+         *
+         * @return Number of links after the moves of the position.
+         */
+        private int moves(int index, int count) {
+            int legal = board.generate(moves, 0);
+            int win = NEVER;
+            int loss = 0;
+
+            for (int i=0; i<legal; i++) {
+                board.make(moves[i]);
+
+                int link = signature.index(board.snapshot(squares), board.getTurn());
+
+                if (link != -1) {
+                    board.unmake();
+                    if (count == links.length) links = Arrays.copyOf(links, 2 * count);
+                    links[count++] = link;
+                    continue;
+                }
+
+                int dtm = tablebase.probe(squares, board.getTurn());
+
+                if (dtm == Tablebase.NONE) {
+                    throw new IllegalStateException("No table for " + board);
+                }
+
+                board.unmake();
+
+                if (dtm == Tablebase.DRAW) {
+                    loss = NEVER;
+                }
+                else if (Tablebase.isLoss(dtm)) {
+                    win = Math.min(win, dtm + 1);
+                }
+                else if (loss != NEVER) {
+                    loss = Math.max(loss, dtm + 1);
+                }
+            }
+
+            winAt[index-from] = (byte) win;
+            lossAt[index-from] = (byte) ((win != NEVER)? NEVER: loss);
+
+            if (legal == 0) {
+                /* Checkmate or stalemate */
+                values[index] = (byte) (board.inCheck()? 0: Tablebase.DRAW);
+            }
+
+            return count;
+        }
+
+        /**
+         * @param n Distance to mate in plies.
+         *
+         * @return Task that resolves positions at given distance. Result
+         * of the task is the number of positions resolved.
+         */
+        Callable<Integer> resolve(final int n) {
+            return new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int resolved = 0;
+
+                    for (int i=from; i<to; i++) {
+                        if ((values[i] & 0xff) != UNKNOWN) continue;
+
+                        if (((n & 1) == 1)? isWon(i, n): isLost(i, n)) {
+                            values[i] = (byte) n;
+                            resolved++;
+                        }
+                    }
+
+                    return resolved;
+                }
+            };
+        }
+
+        private boolean isWon(int index, int n) {
+            if ((winAt[index-from] & 0xff) == n) return true;
+
+            for (int j=start[index-from]; j<start[index-from+1]; j++) {
+                if ((values[links[j]] & 0xff) == n-1) return true;
+            }
+
+            return false;
+        }
+
+        private boolean isLost(int index, int n) {
+            int longest = lossAt[index-from] & 0xff;
+
+            if (longest == NEVER) return false;
+
+            for (int j=start[index-from]; j<start[index-from+1]; j++) {
+                int dtm = values[links[j]] & 0xff;
+
+                if (dtm >= n || (dtm & 1) == 0) return false;
+
+                longest = Math.max(longest, dtm + 1);
+            }
+
+            return longest == n;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package fi.starck.sakki.tablebase;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Material signature of an endgame, e.g. <tt>KRvK</tt>, and indexing
+ * of its positions.
+ *
+ * Stronger side is always white in a signature. Positions where black
+ * is the stronger side are looked up with colours swapped and the
+ * board mirrored.
+ *
+ * Index of a position is the side to move and the square of each
+ * piece: <tt>side + 2 * (s0 + 64*s1 + 64^2*s2 + ...)</tt>. Squares
+ * are numbered <tt>8*rank + file</tt> with rank 0 being the 8th rank,
+ * like in {@link Chess#snapshot(byte[])}, and so are pieces: index of
+ * the type plus 8 for black. Pieces are ordered white first, each side
+ * in the order <tt>KQRBNP</tt>. Index space includes illegal positions
+ * (e.g. two pieces on the same square), which are stored as draws.
+ *
+ * @see Tablebase
+ *
+ * @author Tuomas Starck
+ */
+final class Signature {
+    /**
+     * Largest number of pieces, kings included. With plain square
+     * indices a fifth piece would take the index space to 2^31, past
+     * an int, and the generator keeps every position and its moves in
+     * memory. Five pieces would need the kings reduced by symmetry to
+     * their 462 distinct placements as well as a generator working
+     * from disk.
+     */
+    static final int MAX_MEN = 4;
+
+    /**
+     * Number of distinct material keys, see {@link #material(byte[])}.
+     */
+    static final int MATERIALS = 59049;
+
+    private static final String ORDER = "KQRBNP";
+
+    /* Letters of the pieces by type index */
+    private static final String LETTERS = " PBNRQK";
+    private static final int PAWN = 1;
+    private static final int KING = 6;
+    private static final int BLACK = 8;
+
+    /* Weight of each piece other than king in a material key,
+     * white pawn to queen and then black, in base three
+     */
+    private static final int[] WEIGHTS = new int[10];
+
+    static {
+        WEIGHTS[0] = 1;
+
+        for (int i=1; i<WEIGHTS.length; i++) {
+            WEIGHTS[i] = 3 * WEIGHTS[i-1];
+        }
+    }
+
+    private final String name;
+    private final int[] pieces;
+    private final int size;
+
+    /**
+     * @param white White pieces in order.
+     * @param black Black pieces in order.
+     */
+    private Signature(String white, String black) {
+        name = white + "v" + black;
+        pieces = new int[white.length() + black.length()];
+
+        for (int i=0; i<white.length(); i++) {
+            pieces[i] = LETTERS.indexOf(white.charAt(i));
+        }
+
+        for (int i=0; i<black.length(); i++) {
+            pieces[white.length() + i] = LETTERS.indexOf(black.charAt(i)) | BLACK;
+        }
+
+        size = 2 << (6 * pieces.length);
+    }
+
+    /**
+     * Parse a signature such as <tt>KRvK</tt> or <tt>KvKP</tt>.
+     * Pieces may be given in any order and either side first.
+     *
+     * @param str Signature.
+     *
+     * @return Canonical signature.
+     *
+     * @throws IllegalArgumentException If the string is not a signature
+     * or it has too many pieces.
+     */
+    static Signature parse(String str) {
+        String[] sides = str.toUpperCase().split("V");
+
+        if (sides.length != 2) {
+            throw new IllegalArgumentException("Bad signature: " + str);
+        }
+
+        for (String side : sides) {
+            if (side.indexOf('K') != 0 || side.lastIndexOf('K') != 0) {
+                throw new IllegalArgumentException("Bad signature: " + str);
+            }
+
+            for (int i=0; i<side.length(); i++) {
+                if (ORDER.indexOf(side.charAt(i)) == -1) {
+                    throw new IllegalArgumentException("Bad signature: " + str);
+                }
+            }
+        }
+
+        if (sides[0].length() + sides[1].length() > MAX_MEN) {
+            throw new IllegalArgumentException("Too many pieces: " + str);
+        }
+
+        return of(sort(sides[0]), sort(sides[1]));
+    }
+
+    /**
+     * @param white White pieces in order.
+     * @param black Black pieces in order.
+     *
+     * @return Canonical signature of the material.
+     */
+    private static Signature of(String white, String black) {
+        return isStronger(black, white)? new Signature(black, white): new Signature(white, black);
+    }
+
+    /**
+     * @param squares Board as given by {@link Chess#snapshot(byte[])}.
+     *
+     * @return Signature of the material on the board, or null if there
+     * are too many pieces or a king is missing.
+     */
+    static Signature of(byte[] squares) {
+        StringBuilder white = new StringBuilder();
+        StringBuilder black = new StringBuilder();
+
+        for (int sq=0; sq<64; sq++) {
+            int piece = squares[sq];
+
+            if (piece == 0) continue;
+
+            if (white.length() + black.length() == MAX_MEN) return null;
+
+            (((piece & BLACK) == 0)? white: black).append(LETTERS.charAt(piece & 7));
+        }
+
+        String w = sort(white.toString());
+        String b = sort(black.toString());
+
+        if (!w.startsWith("K") || !b.startsWith("K")) return null;
+
+        return of(w, b);
+    }
+
+    /**
+     * Material key of a board: the number of pieces of each kind besides
+     * the kings. At most two such pieces fit in {@link #MAX_MEN}, so the
+     * counts are digits in base three. Computing the key allocates
+     * nothing, so that it can be used to cache signatures.
+     *
+     * @param squares Board as given by {@link Chess#snapshot(byte[])}.
+     *
+     * @return Key below {@link #MATERIALS}, or -1 if there are too many
+     * pieces or not one king of each colour.
+     */
+    static int material(byte[] squares) {
+        int men = 0;
+        int white = 0;
+        int black = 0;
+        int key = 0;
+
+        for (int sq=0; sq<64; sq++) {
+            int piece = squares[sq];
+
+            if (piece == 0) continue;
+            if (++men > MAX_MEN) return -1;
+
+            if ((piece & 7) == KING) {
+                if ((piece & BLACK) == 0) white++;
+                else black++;
+            }
+            else {
+                key += WEIGHTS[(piece & 7) - 1 + (((piece & BLACK) == 0)? 0: 5)];
+            }
+        }
+
+        return (white == 1 && black == 1)? key: -1;
+    }
+
+    /**
+     * @param side Pieces of one side.
+     *
+     * @return Pieces in order.
+     */
+    private static String sort(String side) {
+        char[] chars = side.toCharArray();
+        Integer[] order = new Integer[chars.length];
+
+        for (int i=0; i<chars.length; i++) {
+            order[i] = ORDER.indexOf(chars[i]);
+        }
+
+        Arrays.sort(order);
+
+        StringBuilder str = new StringBuilder();
+
+        for (int i : order) {
+            str.append(ORDER.charAt(i));
+        }
+
+        return str.toString();
+    }
+
+    /**
+     * @return True if side <tt>a</tt> has more material than side
+     * <tt>b</tt>. Ties are broken by piece order, so that exactly one
+     * orientation of any unequal material is canonical.
+     */
+    private static boolean isStronger(String a, String b) {
+        int diff = value(a) - value(b);
+
+        if (diff != 0) return diff > 0;
+        if (a.length() != b.length()) return a.length() > b.length();
+
+        for (int i=0; i<a.length(); i++) {
+            int d = ORDER.indexOf(b.charAt(i)) - ORDER.indexOf(a.charAt(i));
+            if (d != 0) return d > 0;
+        }
+
+        return false;
+    }
+
+    private static int value(String side) {
+        int sum = 0;
+
+        for (int i=0; i<side.length(); i++) {
+            sum += Type.valueOf(side.substring(i, i+1)).getValue();
+        }
+
+        return sum;
+    }
+
+    /**
+     * @return Signature name, e.g. <tt>KRvK</tt>.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return Number of indices.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Number of pieces.
+     */
+    int getMen() {
+        return pieces.length;
+    }
+
+    /**
+     * @return True if only kings are left, which is a dead draw.
+     */
+    boolean isBare() {
+        return pieces.length == 2;
+    }
+
+    /**
+     * @return Signatures reachable by one capture or promotion.
+     */
+    List<Signature> getChildren() {
+        List<Signature> children = new ArrayList<Signature>();
+        String[] sides = name.split("v");
+
+        for (int side=0; side<2; side++) {
+            String own = sides[side];
+            String other = sides[1-side];
+
+            for (int i=1; i<own.length(); i++) {
+                String rest = own.substring(0, i) + own.substring(i+1);
+
+                add(children, (side == 0)? of(rest, other): of(other, rest));
+
+                if (own.charAt(i) != 'P') continue;
+
+                for (char promotion : "QRBN".toCharArray()) {
+                    String promoted = sort(rest + promotion);
+
+                    add(children, (side == 0)? of(promoted, other): of(other, promoted));
+                }
+            }
+        }
+
+        return children;
+    }
+
+    private static void add(List<Signature> list, Signature signature) {
+        for (Signature old : list) {
+            if (old.name.equals(signature.name)) return;
+        }
+
+        list.add(signature);
+    }
+
+    /**
+     * @param squares Board with this material, as given by
+     * {@link Chess#snapshot(byte[])}.
+     * @param turn True if white holds the next move.
+     *
+     * @return Index of the position, or -1 if the material does not match.
+     */
+    int index(byte[] squares, boolean turn) {
+        int index = index(squares, turn, 0);
+
+        return (index != -1)? index: index(squares, turn, BLACK);
+    }
+
+    /**
+     * @param swap Zero, or {@link #BLACK} to swap the colours and
+     * mirror the board.
+     *
+     * @return Index of the position, or -1 if the material does not match.
+     */
+    private int index(byte[] squares, boolean turn, int swap) {
+        int index = 0;
+        int used = 0;
+        int found = 0;
+
+        for (int sq=0; sq<64; sq++) {
+            if (squares[sq] == 0) continue;
+
+            int slot = slot(squares[sq] ^ swap, used);
+
+            if (slot == -1) return -1;
+
+            used |= 1 << slot;
+            index += ((swap == 0)? sq: sq ^ 56) << (6 * slot);
+            found++;
+        }
+
+        if (found != pieces.length) return -1;
+
+        return 2 * index + ((turn == (swap == 0))? 0: 1);
+    }
+
+    /**
+     * @param squares Square of each piece.
+     * @param turn True if white holds the next move.
+     *
+     * @return Index of the position.
+     */
+    int index(int[] squares, boolean turn) {
+        int index = 0;
+
+        for (int i=squares.length-1; i>=0; i--) {
+            index = 64 * index + squares[i];
+        }
+
+        return 2 * index + (turn? 0: 1);
+    }
+
+    /**
+     * @param index Index of a position.
+     *
+     * @return Square of each piece.
+     */
+    int[] squares(int index) {
+        int[] squares = new int[pieces.length];
+
+        index >>>= 1;
+
+        for (int i=0; i<squares.length; i++) {
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+
+        return squares;
+    }
+
+    /**
+     * @param index Index of a position.
+     *
+     * @return True if white holds the next move.
+     */
+    static boolean turn(int index) {
+        return (index & 1) == 0;
+    }
+
+    /**
+     * @param squares Square of each piece.
+     *
+     * @return True if no two pieces share a square and no pawn stands
+     * on the first or the last rank.
+     */
+    boolean isPlaceable(int[] squares) {
+        for (int i=0; i<squares.length; i++) {
+            if ((pieces[i] & 7) == PAWN) {
+                int rank = squares[i] / 8;
+                if (rank == 0 || rank == 7) return false;
+            }
+
+            for (int j=0; j<i; j++) {
+                if (squares[i] == squares[j]) return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Place the pieces on an empty board.
+     *
+     * @param squares Square of each piece.
+     * @param board Buffer of 64 bytes, filled in the form of
+     * {@link Chess#snapshot(byte[])}.
+     *
+     * @return The buffer.
+     */
+    byte[] place(int[] squares, byte[] board) {
+        Arrays.fill(board, (byte) 0);
+
+        for (int i=0; i<squares.length; i++) {
+            board[squares[i]] = (byte) pieces[i];
+        }
+
+        return board;
+    }
+
+    /**
+     * @return First free slot of given piece or -1.
+     */
+    private int slot(int piece, int used) {
+        for (int i=0; i<pieces.length; i++) {
+            if (pieces[i] == piece && (used & (1 << i)) == 0) return i;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,324 @@
+package fi.starck.sakki.tablebase;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.X88Backend;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Endgame tablebases: exact results of positions with few pieces.
+ *
+ * Each material signature has its own file in a directory, named
+ * after the signature (e.g. <tt>KRvK.stb</tt>). Files are produced
+ * by {@link Generator} and memory mapped on first use, so that probing
+ * costs no more than decoding a small block of the mapped table.
+ * Probing is thread-safe.
+ *
+ * Each position has a single value: distance to mate in plies, or
+ * {@link #DRAW}. Odd distances are wins for the side to move and even
+ * distances are losses, zero meaning checkmate on the board.
+ *
+ * A table file is a header, an offset of each block and the blocks:
+ * <pre>
+ *  int      magic
+ *  int      number of positions
+ *  long[]   offset of each block and the end of the data
+ *  byte[]   blocks of run-length encoded values
+ * </pre>
+ * A block covers {@link #BLOCK} positions. Each run is two bytes:
+ * the length of the run (1-255) and the value.
+ *
+ * Positions with castling rights or an en passant target are not
+ * covered, nor are positions with more than {@link #MAX_MEN} pieces.
+ *
+ * @see Signature
+ *
+ * @author Tuomas Starck
+ */
+public class Tablebase {
+    /**
+     * Position is not in the tablebases.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Position is a draw.
+     */
+    public static final int DRAW = 255;
+
+    /**
+     * Largest number of pieces, kings included, in any table.
+     */
+    public static final int MAX_MEN = Signature.MAX_MEN;
+
+    static final int MAGIC = 0x53544231;
+    static final int BLOCK = 1 << 12;
+    static final String SUFFIX = ".stb";
+
+    private static final int HEADER = 8;
+
+    private final File dir;
+    private final ConcurrentHashMap<String, MappedByteBuffer> tables;
+    private final ConcurrentHashMap<String, Boolean> missing;
+
+    /* Signatures by material key. Signatures are immutable, so
+     * threads may race to fill in the same one.
+     */
+    private final Signature[] signatures;
+
+    /**
+     * @param dir Directory of the table files.
+     */
+    public Tablebase(File dir) {
+        this.dir = dir;
+        tables = new ConcurrentHashMap<String, MappedByteBuffer>();
+        missing = new ConcurrentHashMap<String, Boolean>();
+        signatures = new Signature[Signature.MATERIALS];
+    }
+
+    /**
+     * @param game Position.
+     *
+     * @return Distance to mate in plies, {@link #DRAW} or {@link #NONE}
+     * if the position is not covered.
+     */
+    public int probe(Chess game) {
+        if (!game.getCastling().equals("-") || !game.getEnpassant().equals("-")) {
+            return NONE;
+        }
+
+        return probe(game.snapshot(new byte[64]), game.getTurn());
+    }
+
+    /**
+     * Probe a position given as a board, e.g. that of
+     * {@link X88Backend#snapshot(byte[])}, without setting up a game.
+     * Castling rights and en passant target are not checked, so the
+     * caller must leave out positions which have them. Once a table
+     * has been mapped, probing it allocates nothing.
+     *
+     * @param squares Board as given by {@link Chess#snapshot(byte[])}.
+     * @param turn True if white holds the next move.
+     *
+     * @return Distance to mate in plies, {@link #DRAW} or {@link #NONE}
+     * if the position is not covered.
+     */
+    public int probe(byte[] squares, boolean turn) {
+        int material = Signature.material(squares);
+
+        if (material == -1) return NONE;
+
+        Signature signature = signatures[material];
+
+        if (signature == null) {
+            signature = Signature.of(squares);
+            signatures[material] = signature;
+        }
+
+        if (signature.isBare()) return DRAW;
+
+        MappedByteBuffer table = table(signature);
+
+        if (table == null) return NONE;
+
+        return read(table, signature.index(squares, turn));
+    }
+
+    /**
+     * @param signature Material signature.
+     *
+     * @return True if the table of the signature is available.
+     */
+    boolean contains(Signature signature) {
+        return signature.isBare() || table(signature) != null;
+    }
+
+    /**
+     * Forget that the table of a signature was missing, after it has
+     * been written.
+     *
+     * @param signature Material signature.
+     */
+    void added(Signature signature) {
+        missing.remove(signature.getName());
+    }
+
+    /**
+     * @param dtm Distance to mate in plies.
+     *
+     * @return True if the side to move wins.
+     */
+    public static boolean isWin(int dtm) {
+        return dtm != DRAW && dtm != NONE && (dtm & 1) == 1;
+    }
+
+    /**
+     * @param dtm Distance to mate in plies.
+     *
+     * @return True if the side to move loses.
+     */
+    public static boolean isLoss(int dtm) {
+        return dtm != DRAW && dtm != NONE && (dtm & 1) == 0;
+    }
+
+    /**
+     * @param signature Material signature.
+     *
+     * @return File of the table.
+     */
+    File file(Signature signature) {
+        return new File(dir, signature.getName() + SUFFIX);
+    }
+
+    /**
+     * Map the table of a signature, if there is one.
+     *
+     * @return Mapped table or null.
+     */
+    private MappedByteBuffer table(Signature signature) {
+        String name = signature.getName();
+        MappedByteBuffer table = tables.get(name);
+
+        if (table != null) return table;
+        if (missing.containsKey(name)) return null;
+
+        File file = file(signature);
+
+        if (!file.isFile()) {
+            missing.put(name, Boolean.TRUE);
+            return null;
+        }
+
+        try {
+            table = map(file);
+        }
+        catch (IOException ioe) {
+            missing.put(name, Boolean.TRUE);
+            return null;
+        }
+
+        if (table.getInt(0) != MAGIC || table.getInt(4) != signature.getSize()) {
+            missing.put(name, Boolean.TRUE);
+            return null;
+        }
+
+        MappedByteBuffer old = tables.putIfAbsent(name, table);
+
+        return (old == null)? table: old;
+    }
+
+    /**
+     * @param file Table file.
+     *
+     * @return File mapped for reading.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find a value in a mapped table. Only absolute reads are used,
+     * so the buffer can be shared by threads.
+     *
+     * @param table Mapped table.
+     * @param index Index of the position.
+     *
+     * @return Value of the position.
+     */
+    static int read(MappedByteBuffer table, int index) {
+        int block = index / BLOCK;
+        int left = index % BLOCK;
+        int blocks = (table.getInt(4) + BLOCK - 1) / BLOCK;
+        int data = HEADER + 8 * (blocks + 1);
+        int at = data + (int) table.getLong(HEADER + 8 * block);
+
+        while (true) {
+            int run = table.get(at) & 0xff;
+
+            if (left < run) {
+                return table.get(at + 1) & 0xff;
+            }
+
+            left -= run;
+            at += 2;
+        }
+    }
+
+    /**
+     * Write a table file. The file is written under a temporary name
+     * and renamed when complete, so that a half written table is never
+     * mapped.
+     *
+     * @param file Table file.
+     * @param values Value of each position.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void write(File file, byte[] values) throws IOException {
+        int blocks = (values.length + BLOCK - 1) / BLOCK;
+        long[] offsets = new long[blocks + 1];
+        byte[] data = new byte[2 * values.length];
+        int length = 0;
+
+        for (int b=0; b<blocks; b++) {
+            offsets[b] = length;
+
+            int end = Math.min(values.length, (b + 1) * BLOCK);
+            int i = b * BLOCK;
+
+            while (i < end) {
+                int run = 1;
+
+                while (i + run < end && run < 255 && values[i + run] == values[i]) {
+                    run++;
+                }
+
+                data[length++] = (byte) run;
+                data[length++] = values[i];
+                i += run;
+            }
+        }
+
+        offsets[blocks] = length;
+
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+
+        try {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(values.length);
+
+            byte[] header = new byte[8 * offsets.length];
+
+            for (int i=0; i<offsets.length; i++) {
+                for (int j=0; j<8; j++) {
+                    header[8*i + j] = (byte) (offsets[i] >>> (56 - 8*j));
+                }
+            }
+
+            out.write(header);
+            out.write(data, 0, length);
+        }
+        finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class AnalysisCacheTest {
+    private static final String[] FENS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"
+    };
+
+    private static final Variation LINE =
+        new Variation(5, 30, new String[] {"e2e4", "e7e5", "Ng1f3"});
+
+    public AnalysisCacheTest() {
+    }
+
+    /**
+     * Result answers requests of the same or lower depth only.
+     */
+    @Test
+    public void depthAware() {
+        AnalysisCache cache = new AnalysisCache(4);
+        Chess game = new Chess(FENS[0]);
+
+        cache.put(game, LINE);
+
+        assertEquals(LINE, cache.get(game, 5));
+        assertEquals(LINE, cache.get(game, 1));
+        assertNull(cache.get(game, 6));
+        assertNull(cache.get(new Chess(FENS[1]), 1));
+
+        cache.put(game, new Variation(3, 10, new String[] {"d2d4"}));
+
+        assertEquals(LINE, cache.get(game, 5));
+    }
+
+    /**
+     * Line not asked for since the last sweep of the clock is evicted
+     * before the ones that have been.
+     */
+    @Test
+    public void clockEviction() {
+        AnalysisCache cache = new AnalysisCache(2);
+        Chess a = new Chess(FENS[0]);
+        Chess b = new Chess(FENS[1]);
+        Chess c = new Chess(FENS[2]);
+
+        cache.put(a, LINE);
+        cache.put(b, new Variation(5, 0, new String[] {"e7e5"}));
+        cache.get(a, 1);
+        cache.put(c, new Variation(5, 0, new String[] {"e1g1"}));
+
+        assertEquals(2, cache.size());
+        assertEquals(LINE, cache.get(a, 1));
+        assertNull(cache.get(b, 1));
+        assertNotNull(cache.get(c, 1));
+    }
+
+    /**
+     * Lines are read back from the file after a restart, checked
+     * move by move.
+     */
+    @Test
+    public void survivesRestart() throws IOException {
+        File file = File.createTempFile("sakki", ".cache");
+        Chess game = new Chess(FENS[0]);
+
+        file.delete();
+        file.deleteOnExit();
+
+        AnalysisCache cache = new AnalysisCache(1, file, 8);
+
+        cache.put(game, LINE);
+        cache.put(new Chess(FENS[2]), new Variation(5, 0, new String[] {"Ke1g1"}));
+        cache.flush();
+
+        cache = new AnalysisCache(1, file, 10);
+
+        Variation line = cache.get(game, 5);
+
+        assertNotNull(line);
+        assertEquals(LINE.getDepth(), line.getDepth());
+        assertEquals(LINE.getScore(), line.getScore());
+        assertArrayEquals(LINE.getPrincipalVariation(), line.getPrincipalVariation());
+        assertNull(cache.get(game, 6));
+        assertEquals(16 + 48 * 256, file.length());
+    }
+
+    /**
+     * Second AI finds the result of the first one in the cache and
+     * does not search at all.
+     */
+    @Test
+    public void sharedByEngines() {
+        AnalysisCache cache = new AnalysisCache(16);
+        Chess game = new Chess(FENS[2]);
+        AI first = new AI(game);
+        AI second = new AI(game);
+
+        first.setDepth(3);
+        second.setDepth(3);
+        first.setAnalysisCache(cache);
+        second.setAnalysisCache(cache);
+
+        String move = first.analyse(1).get(0).getMove();
+
+        assertNotNull(first.getStats());
+        assertEquals(move, second.analyse(1).get(0).getMove());
+        assertNull(second.getStats());
+    }
+
+    /**
+     * Statistics of an earlier search are not left behind when the
+     * next result comes from the cache.
+     */
+    @Test
+    public void noStaleStats() {
+        AI ai = new AI(new Chess(FENS[1]));
+
+        ai.setDepth(3);
+        ai.setAnalysisCache(new AnalysisCache(16));
+        ai.analyse(1);
+
+        assertNotNull(ai.getStats());
+
+        ai.setPosition(new Chess(FENS[1]));
+        ai.analyse(1);
+
+        assertNull(ai.getStats());
+    }
+}
@@ -0,0 +1,86 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.GameStatus;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class MateSolverTest {
+    public MateSolverTest() {
+    }
+
+    /**
+     * @return Number of plies in the line, which must be legal and
+     * end in checkmate.
+     */
+    private static int mate(String fen, String[] line) {
+        Chess game = new Chess(fen);
+
+        for (String move : line) {
+            assertTrue(move, game.tryMove(move).isLegal());
+        }
+
+        assertEquals(GameStatus.CHECKMATE, game.status());
+
+        return line.length;
+    }
+
+    @Test
+    public void shortestMate() {
+        MateSolver solver = new MateSolver();
+
+        assertArrayEquals(new String[] {"Ra1a8"},
+            solver.solve(new Chess("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"), 3));
+
+        String[] line = solver.solve(new Chess(
+            "r1b1kb1r/pppp1ppp/5q2/4n3/3KP3/2N3PN/PPP4P/R1BQ1B1R b kq - 0 1"), 7);
+
+        assertEquals(5, line.length);
+        assertEquals("Bf8c5", line[0]);
+        assertFalse(solver.isExhausted());
+    }
+
+    @Test
+    public void noMate() {
+        MateSolver solver = new MateSolver();
+
+        assertNull(solver.solve(new Chess("6k1/5ppp/8/8/8/8/5PPP/6K1 w - - 0 1"), 3));
+        assertFalse(solver.isExhausted());
+    }
+
+    /**
+     * King hunt of Ed. Lasker - Thomas, London 1912, after 10...Qe7.
+     * Checks are looked into first, so the mate is found at once.
+     */
+    @Test
+    public void kingHunt() {
+        String fen = "rn3rk1/pbppq1pp/1p2pb2/4N2Q/3PN3/3B4/PPP2PPP/R3K2R w KQ - 6 11";
+        MateSolver solver = new MateSolver();
+        String[] line = solver.solve(new Chess(fen), 8);
+
+        assertEquals("Qh5xh7", line[0]);
+        assertEquals(13, mate(fen, line));
+        assertTrue(solver.getNodes() < 5000);
+    }
+
+    /**
+     * Quiet mates of known length (from the tablebases) are found within
+     * the default budget: queen in 7 moves and rook in 10.
+     */
+    @Test
+    public void longMates() {
+        String queen = "1k6/8/8/8/3Q4/8/8/4K3 w - - 0 1";
+        String rook = "6R1/K7/8/8/8/8/8/7k w - - 0 1";
+        MateSolver solver = new MateSolver();
+
+        assertEquals(13, mate(queen, solver.solve(new Chess(queen), 7)));
+        assertEquals(19, mate(rook, solver.solve(new Chess(rook), 10)));
+    }
+}
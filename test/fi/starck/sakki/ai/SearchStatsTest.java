@@ -0,0 +1,48 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.board.Chess;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class SearchStatsTest {
+    private static final String FEN =
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    public SearchStatsTest() {
+    }
+
+    /**
+     * Pawn table and evaluation cache are counted like the
+     * transposition table, and counting starts over on each search.
+     */
+    @Test
+    public void cacheCounters() {
+        AI ai = new AI(new Chess(FEN));
+
+        ai.setDepth(4);
+        ai.analyse(1);
+
+        SearchStats first = ai.getStats();
+
+        assertNotNull(first);
+        assertTrue(first.getProbes() > 0);
+        assertTrue(first.getPawnProbes() > 0);
+        assertTrue(first.getPawnHits() > 0);
+        assertTrue(first.getPawnHits() <= first.getPawnProbes());
+        assertTrue(first.getEvalProbes() > 0);
+        assertTrue(first.getEvalHits() <= first.getEvalProbes());
+
+        ai.setPosition(new Chess(FEN));
+        ai.analyse(1);
+
+        SearchStats second = ai.getStats();
+
+        assertTrue(second.getPawnProbes() <= first.getPawnProbes());
+        assertEquals(second.getPawnProbes(), second.getPawnHits());
+    }
+}
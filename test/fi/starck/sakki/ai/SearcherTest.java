@@ -0,0 +1,146 @@
+package fi.starck.sakki.ai;
+
+import fi.starck.sakki.tablebase.Generator;
+import fi.starck.sakki.tablebase.Tablebase;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class SearcherTest {
+    private static final String FEN =
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    /* Rook wins the pawn, after which the tablebase has the mate */
+    private static final String ENDGAME = "8/8/3k4/8/8/2p5/8/R3K3 w - - 0 1";
+
+    private static final int DEPTH = 5;
+
+    /* Principal variations of all iterations, with room to spare */
+    private static final long BYTES = 16384;
+
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private final Heuristics heuristics;
+
+    public SearcherTest() {
+        table = new TranspositionTable(16);
+        evaluator = new Evaluator();
+        heuristics = new Heuristics();
+    }
+
+    private Searcher searcher(String fen, Tablebase tablebase) {
+        Searcher searcher = new Searcher(new ChessNode(fen), table, evaluator, heuristics,
+            new AtomicBoolean(false), 0, DEPTH, EnumSet.allOf(Pruning.class), null);
+
+        searcher.setTablebase(tablebase);
+
+        return searcher;
+    }
+
+    private Searcher searcher(String fen) {
+        return searcher(fen, null);
+    }
+
+    /**
+     * Search a position after warming up.
+     *
+     * @return Searcher after the search and bytes it allocated.
+     */
+    private Searcher allocated(String fen, Tablebase tablebase, long[] bytes) {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        assertTrue(bean.isThreadAllocatedMemorySupported());
+
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i=0; i<3; i++) {
+            table.clear();
+            searcher(fen, tablebase).run();
+        }
+
+        table.clear();
+
+        Searcher searcher = searcher(fen, tablebase);
+        long before = bean.getThreadAllocatedBytes(thread);
+
+        searcher.run();
+
+        bytes[0] = bean.getThreadAllocatedBytes(thread) - before;
+
+        return searcher;
+    }
+
+    /**
+     * Search works in place on preallocated frames. After warming
+     * up, a search allocates only for the principal variation of
+     * each iteration, which does not grow with the number of nodes.
+     */
+    @Test
+    public void allocationFree() {
+        long[] bytes = new long[1];
+        Searcher searcher = allocated(FEN, null, bytes);
+
+        assertEquals(DEPTH, searcher.getCompletedDepth());
+        assertTrue(searcher.nodes > 10000);
+        assertTrue(bytes[0] + " bytes for " + searcher.nodes + " nodes", bytes[0] < BYTES);
+    }
+
+    /**
+     * Probing the tablebases does not allocate either, whether the
+     * table of the material is there or not.
+     */
+    @Test
+    public void allocationFreeProbes() throws IOException {
+        File dir = File.createTempFile("sakki", ".tb");
+
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+
+        Generator generator = new Generator(dir, 2);
+
+        generator.generate("KRvK");
+
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+
+        long[] bytes = new long[1];
+        Searcher searcher = allocated(ENDGAME, generator.getTablebase(), bytes);
+
+        assertEquals(DEPTH, searcher.getCompletedDepth());
+        assertTrue(searcher.getBestScore() > Searcher.MATE - 100);
+        assertTrue(searcher.nodes > 100);
+        assertTrue(bytes[0] + " bytes for " + searcher.nodes + " nodes", bytes[0] < BYTES);
+    }
+
+    /**
+     * Searching leaves the position as it was, so the principal
+     * variation can be played out from the root.
+     */
+    @Test
+    public void principalVariation() {
+        Searcher searcher = searcher(FEN);
+
+        searcher.run();
+
+        ChessNode node = new ChessNode(FEN);
+
+        assertTrue(searcher.getPv().length > 0);
+
+        for (String move : searcher.getPv()) {
+            node = node.play(move);
+            assertTrue(move, node != null);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package fi.starck.sakki.board;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class AttacksTest {
+    public AttacksTest() {
+    }
+
+    private static long bits(String... squares) {
+        long bits = 0L;
+
+        for (String square : squares) {
+            bits |= 1L << MoveCode.square(square);
+        }
+
+        return bits;
+    }
+
+    @Test
+    public void attackers() {
+        Chess game = new Chess("4k3/8/2n5/3p4/1B2R3/8/8/3QK3 w - - 0 1");
+        int d5 = MoveCode.square("d5");
+
+        assertEquals(bits("d1"), game.attackersOf(d5, true));
+        assertEquals(0L, game.attackersOf(d5, false));
+        assertEquals(bits("c6"), game.attackersOf(MoveCode.square("e5"), false));
+        assertEquals(bits("d5"), game.attackersOf(MoveCode.square("e4"), false));
+        assertEquals(bits("d1", "e1", "e4"), game.attackersOf(MoveCode.square("e2"), true));
+
+        assertTrue(game.isSquareAttacked(MoveCode.square("c5"), true));
+        assertFalse(game.isSquareAttacked(MoveCode.square("h8"), true));
+        assertTrue(game.isSquareAttacked(MoveCode.square("b4"), false));
+    }
+
+    @Test
+    public void sameAsBackend() {
+        Random random = new Random(0x41545441L);
+        int[] moves = new int[MoveCode.MAX_MOVES];
+
+        for (int g=0; g<10; g++) {
+            X88Backend backend = new X88Backend();
+
+            for (int ply=0; ply<100; ply++) {
+                Chess game = new Chess(backend.getFen());
+
+                for (int sq=0; sq<64; sq++) {
+                    assertEquals(backend.isAttacked(sq, true), game.isSquareAttacked(sq, true));
+                    assertEquals(backend.isAttacked(sq, false), game.isSquareAttacked(sq, false));
+                }
+
+                assertEquals(backend.inCheck(), game.isChecked() != null);
+
+                int count = backend.generate(moves, 0);
+
+                if (count == 0) break;
+
+                backend.make(moves[random.nextInt(count)]);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package fi.starck.sakki.board;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Differential tests of board backends: random games are replayed on
+ * every backend and the backends must agree after each ply.
+ *
+ * @author Tuomas Starck
+ */
+public class BackendTest {
+    private static final int GAMES = 12;
+    private static final int PLIES = 120;
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "4k3/8/8/2pP4/8/8/8/4K3 w - c6 0 1"
+    };
+
+    public BackendTest() {
+    }
+
+    /**
+     * @return One instance of every backend.
+     */
+    private static BoardBackend[] backends(String fen) {
+        return new BoardBackend[] {new MailboxBackend(fen), new X88Backend(fen)};
+    }
+
+    /**
+     * Play random games on all backends. After each ply, legal moves,
+     * check, FEN and key must be the same on every backend, and so
+     * must attacks on every square. Finally all moves are taken back,
+     * which must lead to the starting position.
+     */
+    @Test
+    public void randomGames() {
+        Random random = new Random(0x5a4b4b49L);
+
+        for (int game=0; game<GAMES; game++) {
+            String fen = POSITIONS[game % POSITIONS.length];
+            BoardBackend[] backends = backends(fen);
+            int plies = 0;
+
+            for (; plies<PLIES; plies++) {
+                int[] moves = compare(backends);
+
+                if (moves.length == 0) break;
+
+                int move = moves[random.nextInt(moves.length)];
+
+                for (BoardBackend backend : backends) {
+                    backend.make(move);
+                }
+            }
+
+            for (; plies>0; plies--) {
+                for (BoardBackend backend : backends) {
+                    backend.unmake();
+                }
+            }
+
+            for (BoardBackend backend : backends) {
+                assertEquals(fen, backend.getFen());
+            }
+        }
+    }
+
+    /**
+     * Castling through an attacked square is not allowed, whatever
+     * piece attacks it.
+     */
+    @Test
+    public void castlingThroughAttack() {
+        String[] positions = {
+            "4k3/8/8/8/8/8/4p3/4K2R w K - 0 1",
+            "4k3/8/8/8/8/8/6p1/4K2R w K - 0 1",
+            "4k3/8/8/8/8/8/8/R3K1r1 w Q - 0 1",
+            "r3k2r/8/8/8/8/8/8/2R1K1R1 b kq - 0 1",
+            "r3k2r/8/8/8/8/8/5n2/R3K2R w KQkq - 0 1"
+        };
+
+        for (String fen : positions) {
+            compare(backends(fen));
+        }
+    }
+
+    /**
+     * @return Legal moves, after checking that all backends agree.
+     */
+    private static int[] compare(BoardBackend[] backends) {
+        int[] expected = null;
+        BoardBackend first = backends[0];
+
+        for (BoardBackend backend : backends) {
+            int[] buffer = new int[MoveCode.MAX_MOVES];
+            int[] moves = Arrays.copyOf(buffer, backend.generate(buffer, 0));
+            String fen = first.getFen();
+
+            Arrays.sort(moves);
+
+            if (expected == null) expected = moves;
+
+            assertArrayEquals(fen, expected, moves);
+            assertEquals(fen, first.getFen(), backend.getFen());
+            assertEquals(fen, first.getKey(), backend.getKey());
+            assertEquals(fen, first.getTurn(), backend.getTurn());
+            assertEquals(fen, first.inCheck(), backend.inCheck());
+
+            for (int sq=0; sq<64; sq++) {
+                assertEquals(fen, first.typeAt(sq), backend.typeAt(sq));
+                assertEquals(fen, first.isAttacked(sq, true), backend.isAttacked(sq, true));
+                assertEquals(fen, first.isAttacked(sq, false), backend.isAttacked(sq, false));
+            }
+        }
+
+        return expected;
+    }
+
+    private static String san(String fen, String move) {
+        return new X88Backend(fen).san(MoveCode.parse(move), new StringBuilder()).toString();
+    }
+
+    @Test
+    public void standardNotation() {
+        String start = POSITIONS[0];
+
+        assertEquals("Nf3", san(start, "Ng1f3"));
+        assertEquals("e4", san(start, "e2e4"));
+        assertEquals("O-O", san(POSITIONS[1], "Ke1g1"));
+        assertEquals("O-O-O", san(POSITIONS[1], "Ke1c1"));
+        assertEquals("dxe6", san(POSITIONS[1], "d5xe6"));
+        assertEquals("Qxf6", san(POSITIONS[1], "Qf3xf6"));
+        assertEquals("dxc6", san(POSITIONS[5], "d5xc6"));
+        assertEquals("dxc8=Q", san(POSITIONS[4], "d7xc8=Q"));
+        assertEquals("d8=N", san("4k3/3P4/8/8/8/8/8/4K3 w - - 0 1", "d7d8=N"));
+
+        /* Disambiguation by file, by rank and by both */
+        assertEquals("Rad1", san("4k3/8/8/8/8/8/8/R4RK1 w - - 0 1", "Ra1d1"));
+        assertEquals("R1a3", san("R7/8/8/7k/8/8/8/R3K3 w - - 0 1", "Ra1a3"));
+        assertEquals("Qh4e1", san("8/8/1k6/8/4Q2Q/8/8/K6Q w - - 0 1", "Qh4e1"));
+
+        /* Pinned knight is no rival */
+        assertEquals("Nd2", san("4k3/8/8/3b4/8/5N2/8/1N5K w - - 0 1", "Nb1d2"));
+        assertEquals("Nbd2", san("4k3/8/8/8/8/5N2/8/1N5K w - - 0 1", "Nb1d2"));
+
+        /* Check and mate */
+        assertEquals("Qxf7#", san("r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4", "Qh5xf7"));
+        assertEquals("Bb5+", san("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", "Bf1b5"));
+    }
+}
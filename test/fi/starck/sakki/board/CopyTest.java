@@ -0,0 +1,70 @@
+package fi.starck.sakki.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class CopyTest {
+    private static final String KIWIPETE =
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    public CopyTest() {
+    }
+
+    private static void assertSame(Chess expected, Chess actual) {
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getPawnKey(), actual.getPawnKey());
+        assertEquals(expected.getEvaluation(), actual.getEvaluation());
+        assertEquals(expected.getRepetitions(), actual.getRepetitions());
+        assertEquals(expected.getMoves(), actual.getMoves());
+    }
+
+    @Test
+    public void reset() {
+        Chess game = new Chess();
+
+        game.applyAll(new String[] {"e4", "e5", "Nf3"});
+        game.reset(KIWIPETE);
+        assertSame(new Chess(KIWIPETE), game);
+
+        game.reset(null);
+        assertSame(new Chess(), game);
+
+        try {
+            game.reset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w KQkq - 0 1");
+            assertTrue(false);
+        }
+        catch (IllegalArgumentException iae) {
+            assertSame(new Chess(), game);
+        }
+    }
+
+    @Test
+    public void copy() {
+        Chess game = new Chess(KIWIPETE);
+
+        assertTrue(game.applyAll(new String[] {"Nc3b1", "Nb6c8", "Nb1c3", "Nc8b6"}).isLegal());
+
+        String fen = game.toString();
+        Chess copy = new Chess(game);
+
+        assertSame(game, copy);
+        assertEquals(1, copy.getRepetitions());
+
+        assertEquals(MoveStatus.OK, copy.tryMove("Ke1g1"));
+        assertEquals(fen, game.toString());
+
+        Chess pooled = new Chess();
+
+        pooled.copyFrom(copy);
+        assertSame(copy, pooled);
+
+        pooled.copyFrom(game);
+        assertSame(game, pooled);
+        assertEquals(MoveStatus.OK, pooled.tryMove("0-0-0"));
+    }
+}
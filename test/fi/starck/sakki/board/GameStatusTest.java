@@ -0,0 +1,74 @@
+package fi.starck.sakki.board;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class GameStatusTest {
+    public GameStatusTest() {
+    }
+
+    private static GameStatus status(String fen) {
+        return new Chess(fen).status();
+    }
+
+    @Test
+    public void endings() {
+        assertEquals(GameStatus.ONGOING, new Chess().status());
+        assertEquals(GameStatus.CHECKMATE, status("rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3"));
+        assertEquals(GameStatus.STALEMATE, status("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"));
+        assertEquals(GameStatus.INSUFFICIENT_MATERIAL, status("4k3/8/8/8/8/8/8/2B1K3 w - - 0 1"));
+        assertEquals(GameStatus.INSUFFICIENT_MATERIAL, status("4k3/8/8/8/8/8/8/2N1K3 w - - 0 1"));
+
+        /* Bishops all on the same colour cannot mate, either side */
+        assertEquals(GameStatus.INSUFFICIENT_MATERIAL, status("2b1k3/8/8/8/8/8/8/5BK1 w - - 0 1"));
+        assertEquals(GameStatus.INSUFFICIENT_MATERIAL, status("4k3/8/8/8/8/8/B7/1B1BK3 b - - 0 1"));
+        assertEquals(GameStatus.ONGOING, status("1b2k3/8/8/8/8/8/8/5BK1 w - - 0 1"));
+        assertEquals(GameStatus.ONGOING, status("4k3/8/8/8/8/8/8/2B1KN2 w - - 0 1"));
+        assertEquals(GameStatus.ONGOING, status("4k3/8/8/8/8/8/8/1nN1K3 w - - 0 1"));
+        assertEquals(GameStatus.FIFTY_MOVES, status("4k3/8/8/8/8/8/8/R3K3 w - - 100 80"));
+        assertEquals(GameStatus.CHECKMATE, status("R3k3/8/4K3/8/8/8/8/8 b - - 100 80"));
+
+        /* Check by a pawn just pushed two squares */
+        assertEquals(GameStatus.ONGOING, status("8/8/8/2k5/3Pp3/8/8/4K2B b - d3 0 1"));
+
+        Chess game = new Chess();
+
+        game.applyAll(new String[] {"Nf3", "Nf6", "Ng1", "Ng8", "Nf3", "Nf6", "Ng1", "Ng8"});
+
+        assertEquals(GameStatus.REPETITION, game.status());
+        assertTrue(game.status().isDraw());
+        assertFalse(GameStatus.CHECKMATE.isDraw());
+        assertFalse(GameStatus.ONGOING.isOver());
+    }
+
+    @Test
+    public void sameAsBackend() {
+        Random random = new Random(0x4d415445L);
+        int[] moves = new int[MoveCode.MAX_MOVES];
+
+        for (int g=0; g<40; g++) {
+            X88Backend backend = new X88Backend();
+
+            for (int ply=0; ply<200; ply++) {
+                Chess game = new Chess(backend.getFen());
+                int count = backend.generate(moves, 0);
+                GameStatus status = game.status();
+
+                if (count == 0) {
+                    assertEquals(backend.inCheck()? GameStatus.CHECKMATE: GameStatus.STALEMATE, status);
+                    break;
+                }
+
+                assertTrue(status != GameStatus.CHECKMATE && status != GameStatus.STALEMATE);
+
+                backend.make(moves[random.nextInt(count)]);
+            }
+        }
+    }
+}
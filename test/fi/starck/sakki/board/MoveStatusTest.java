@@ -0,0 +1,86 @@
+package fi.starck.sakki.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class MoveStatusTest {
+    public MoveStatusTest() {
+    }
+
+    private static MoveStatus attempt(String fen, String move) {
+        return new Chess(fen).tryMove(move);
+    }
+
+    @Test
+    public void reasons() {
+        String start = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+        assertEquals(MoveStatus.OK, attempt(start, "e4"));
+        assertEquals(MoveStatus.UNREADABLE, attempt(start, "Nf9"));
+        assertEquals(MoveStatus.NO_SUCH_MOVE, attempt(start, "e5"));
+        assertEquals(MoveStatus.CAPTURE_IN_VAIN, attempt(start, "exd3"));
+        assertEquals(MoveStatus.CASTLING_BLOCKED, attempt(start, "0-0"));
+
+        assertEquals(MoveStatus.AMBIGUOUS, attempt("4k3/8/8/8/8/8/4K3/R6R w - - 0 1", "Rd1"));
+        assertEquals(MoveStatus.SELF_CHECK, attempt("4k3/4r3/8/8/8/8/4B3/4K3 w - - 0 1", "Bd3"));
+        assertEquals(MoveStatus.CASTLING_NOT_ALLOWED, attempt("4k3/8/8/8/8/8/8/4K2R w - - 0 1", "0-0"));
+        assertEquals(MoveStatus.CASTLING_THROUGH_CHECK, attempt("4k3/8/8/8/8/8/6p1/4K2R w K - 0 1", "0-0"));
+    }
+
+    @Test
+    public void legality() {
+        Chess game = new Chess();
+        String fen = game.toString();
+
+        assertTrue(game.isLegal("Nf3"));
+        assertFalse(game.isLegal("Nf4"));
+        assertEquals(fen, game.toString());
+    }
+
+    @Test
+    public void atomicity() {
+        Chess game = new Chess("4k3/8/8/K2pP2r/8/8/8/8 w - d6 0 2");
+        String fen = game.toString();
+
+        assertEquals(MoveStatus.SELF_CHECK, game.tryMove("exd6"));
+        assertFalse(game.isLegal("exd6"));
+        assertEquals(fen, game.toString());
+
+        assertEquals(MoveStatus.OK, game.tryMove("e6"));
+        assertEquals("4k3/8/4P3/K2p3r/8/8/8/8 b - - 0 2", game.toString());
+    }
+
+    @Test
+    public void pinnedTwin() {
+        String pinned = "4k3/8/8/3b4/8/5N2/8/1N5K w - - 0 1";
+        Chess game = new Chess(pinned);
+
+        assertTrue(game.isLegal("Nd2"));
+        assertEquals(MoveStatus.OK, game.tryMove("Nd2"));
+        assertEquals("4k3/8/8/3b4/8/5N2/3N4/7K b - - 1 1", game.toString());
+
+        assertEquals(MoveStatus.SELF_CHECK, attempt(pinned, "Nfd2"));
+        assertEquals(MoveStatus.AMBIGUOUS, attempt("4k3/8/8/8/8/5N2/8/1N5K w - - 0 1", "Nd2"));
+    }
+
+    @Test
+    public void exceptionWrapper() {
+        Chess game = new Chess();
+
+        try {
+            game.move("Ke2");
+        }
+        catch (MoveException me) {
+            assertEquals(MoveStatus.NO_SUCH_MOVE.toString(), me.toString());
+            assertEquals(new Chess().toString(), game.toString());
+            return;
+        }
+
+        assertTrue(false);
+    }
+}
@@ -0,0 +1,57 @@
+package fi.starck.sakki.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class ReplayTest {
+    public ReplayTest() {
+    }
+
+    @Test
+    public void wholeGame() {
+        Chess game = new Chess();
+        Replay replay = game.applyAll(new String[] {"e4", "e5", "Nf3", "Nc6", "Bb5"}, true);
+
+        assertTrue(replay.isLegal());
+        assertEquals(5, replay.getPly());
+        assertEquals(MoveStatus.OK, replay.getStatus());
+        assertEquals("r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3", replay.getFen());
+        assertEquals(replay.getFen(), game.toString());
+    }
+
+    @Test
+    public void firstFailure() {
+        Chess game = new Chess();
+        StringBuilder knight = new StringBuilder("Nf3");
+        Replay replay = game.applyAll(new CharSequence[] {"e4", "e5", knight, "Ke6", "Nc3"});
+
+        assertFalse(replay.isLegal());
+        assertEquals(3, replay.getPly());
+        assertEquals(MoveStatus.NO_SUCH_MOVE, replay.getStatus());
+        assertNull(replay.getFen());
+        assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2", game.toString());
+    }
+
+    @Test
+    public void unreadable() {
+        Replay replay = new Chess().applyAll(new String[] {"e4", null});
+
+        assertEquals(1, replay.getPly());
+        assertEquals(MoveStatus.UNREADABLE, replay.getStatus());
+    }
+
+    @Test
+    public void enpassantAvailable() {
+        Replay replay = new Chess().applyAll(new String[] {"e4", "d5", "e5", "f5", "d4"}, true);
+
+        assertTrue(replay.isLegal());
+        assertEquals(5, replay.getPly());
+        assertEquals("rnbqkbnr/ppp1p1pp/8/3pPp2/3P4/8/PPP2PPP/RNBQKBNR b KQkq d3 0 3", replay.getFen());
+    }
+}
@@ -0,0 +1,57 @@
+package fi.starck.sakki.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class SnapshotTest {
+    public SnapshotTest() {
+    }
+
+    @Test
+    public void squares() {
+        Chess game = new Chess();
+
+        assertEquals(Type.r, game.typeAt(MoveCode.square("a8")));
+        assertEquals(Type.K, game.typeAt(MoveCode.square("e1")));
+        assertEquals(Type.empty, game.typeAt(MoveCode.square("e4")));
+
+        game.applyAll(new String[] {"e4", "d5", "exd5"});
+
+        assertEquals(Type.P, game.typeAt(MoveCode.square("d5")));
+        assertEquals(Type.empty, game.typeAt(MoveCode.square("e4")));
+        assertEquals(Type.P, game.typeAt("d5"));
+        assertEquals(null, game.typeAt("e4"));
+    }
+
+    @Test
+    public void snapshot() {
+        Chess game = new Chess("4k3/8/8/8/8/8/3P4/4K2R w K - 0 1");
+        byte[] squares = new byte[64];
+
+        assertSame(squares, game.snapshot(squares));
+        assertEquals(Type.k.getIndex() | 8, squares[MoveCode.square("e8")]);
+        assertEquals(Type.P.getIndex(), squares[MoveCode.square("d2")]);
+        assertEquals(Type.R.getIndex(), squares[MoveCode.square("h1")]);
+        assertEquals(0, squares[MoveCode.square("e4")]);
+
+        X88Backend backend = new X88Backend(game.toString());
+
+        for (int sq=0; sq<64; sq++) {
+            assertEquals(backend.typeAt(sq), game.typeAt(sq));
+        }
+    }
+
+    @Test
+    public void stateIsCopied() {
+        Chess game = new Chess();
+
+        game.getState()[0][0] = Type.empty;
+
+        assertEquals(Type.r, game.typeAt(0));
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", game.toString());
+    }
+}
@@ -0,0 +1,180 @@
+package fi.starck.sakki.book;
+
+import fi.starck.sakki.board.Chess;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class BookBuilderTest {
+    private static final String PGN =
+        "[Event \"One\"]\n" +
+        "[Result \"1-0\"]\n" +
+        "\n" +
+        "1. e4 e5 2. Nf3 Nc6 {main line} 3. Bc4 (3. Bb5 a6) Bc5 4. O-O Nf6 1-0\n" +
+        "\n" +
+        "[Event \"Two\"]\n" +
+        "[Result \"1/2-1/2\"]\n" +
+        "\n" +
+        "1. e4 c5 2. d4 cxd4 3. Nf3 $1 Nc6 1/2-1/2\n" +
+        "\n" +
+        "[Event \"Three\"]\n" +
+        "[Result \"1/2-1/2\"]\n" +
+        "\n" +
+        "1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. O-O d6 1/2-1/2\n" +
+        "\n" +
+        "[Event \"Four\"]\n" +
+        "[Result \"0-1\"]\n" +
+        "\n" +
+        "1. d4 d5 2. c4 e6 0-1\n" +
+        "\n" +
+        "[Event \"Five\"]\n" +
+        "[Result \"1-0\"]\n" +
+        "\n" +
+        "1. e4 e6 2. d4 d5 1-0\n";
+
+    /* Polyglot moves: e2e4 and the king taking its own rook */
+    private static final int E2E4 = (12 << 6) | 28;
+    private static final int E1H1 = (4 << 6) | 7;
+
+    public BookBuilderTest() {
+    }
+
+    private static File book() throws IOException {
+        File file = File.createTempFile("sakki", ".bin");
+        BookBuilder builder = new BookBuilder(file.getParentFile(), 20, 4);
+
+        file.deleteOnExit();
+        builder.read(new StringReader(PGN));
+
+        assertEquals(5, builder.getGames());
+        assertEquals(0, builder.getBroken());
+        assertTrue(builder.getRuns() > 4);
+
+        builder.write(file);
+
+        assertEquals(0, builder.getRuns());
+
+        return file;
+    }
+
+    /**
+     * @return Entries of the book as key, move, weight and learn.
+     */
+    private static long[][] entries(File file) throws IOException {
+        long[][] entries = new long[(int) (file.length() / Polyglot.ENTRY)][];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+        try {
+            for (int i=0; i<entries.length; i++) {
+                entries[i] = new long[] {
+                    in.readLong(), in.readUnsignedShort(), in.readUnsignedShort(), in.readInt()
+                };
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return entries;
+    }
+
+    private static long weight(long[][] entries, Chess game, int move) {
+        long key = Polyglot.key(game);
+        long weight = 0;
+
+        for (long[] entry : entries) {
+            if (entry[0] == key && entry[1] == move) weight += entry[2];
+        }
+
+        return weight;
+    }
+
+    /**
+     * Records spilled in many small runs are merged into one sorted
+     * book, with the weights of a move summed up across the runs.
+     */
+    @Test
+    public void spillAndMerge() throws IOException {
+        long[][] entries = entries(book());
+        Chess game = new Chess();
+
+        for (int i=1; i<entries.length; i++) {
+            long a = entries[i-1][0] ^ Long.MIN_VALUE;
+            long b = entries[i][0] ^ Long.MIN_VALUE;
+
+            assertTrue(a < b || (a == b && entries[i-1][1] < entries[i][1]));
+        }
+
+        for (long[] entry : entries) {
+            assertEquals(0, entry[3]);
+        }
+
+        /* Won twice, drawn twice */
+        assertEquals(6, weight(entries, game, E2E4));
+
+        game.applyAll(new String[] {"e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5"});
+
+        assertEquals(3, weight(entries, game, E1H1));
+        assertEquals(0, weight(entries, game, (4 << 6) | 6));
+    }
+
+    /**
+     * Book moves are found back and can be played.
+     */
+    @Test
+    public void probe() throws IOException {
+        OpeningBook book = new OpeningBook(book());
+        Chess game = new Chess();
+        Map<String, Integer> moves = book.lookup(game);
+
+        assertEquals(1, moves.size());
+        assertEquals(Integer.valueOf(6), moves.get("e2e4"));
+        assertEquals("e2e4", book.choose(game, new Random(38)));
+
+        game.applyAll(new String[] {"e4", "e5"});
+
+        assertEquals(Integer.valueOf(3), book.lookup(game).get("Ng1f3"));
+
+        game.applyAll(new String[] {"Nf3", "Nc6", "Bc4", "Bc5"});
+
+        assertEquals(Integer.valueOf(3), book.lookup(game).get("O-O"));
+
+        game = new Chess();
+        game.applyAll(new String[] {"e4", "c5", "d4"});
+
+        assertEquals(Integer.valueOf(1), book.lookup(game).get("c5xd4"));
+
+        game.applyAll(new String[] {"cxd4", "Nf3", "Nc6"});
+
+        assertTrue(book.lookup(game).isEmpty());
+        assertNull(book.choose(game, new Random(38)));
+    }
+
+    /**
+     * En passant file is in the key only if the pawn can be taken.
+     */
+    @Test
+    public void enpassantKey() {
+        String after = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq ";
+        String beside = "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq ";
+
+        assertEquals(Polyglot.key(new Chess(after + "- 0 1")),
+                     Polyglot.key(new Chess(after + "e3 0 1")));
+        assertFalse(Polyglot.key(new Chess(beside + "- 0 1"))
+                    == Polyglot.key(new Chess(beside + "e3 0 1")));
+        assertFalse(Polyglot.key(new Chess(after + "- 0 1"))
+                    == Polyglot.key(new Chess(after.replace(" b ", " w ") + "- 0 1")));
+    }
+}
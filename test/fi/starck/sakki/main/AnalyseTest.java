@@ -0,0 +1,78 @@
+package fi.starck.sakki.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class AnalyseTest {
+    private static final String[] INPUT = {
+        "6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - bm Ra8#; id \"mate\";",
+        "",
+        "8/4P3/8/8/8/8/k7/4K3 w - - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - id \"kiwi\"; pm e2e4; c0 \"a; b\";",
+        "4k3/8/8/8/8/8/8/4K3 b - - id \"bare\";"
+    };
+
+    private static String[] analyse(long offset) throws IOException {
+        StringBuilder input = new StringBuilder();
+
+        for (String line : INPUT) {
+            input.append(line).append('\n');
+        }
+
+        StringWriter out = new StringWriter();
+
+        Analyse.run(new BufferedReader(new StringReader(input.toString())), out, 3, 0, 2, offset);
+
+        return out.toString().split("\n", -1);
+    }
+
+    /**
+     * Results come in input order with SAN moves, and operations of
+     * the input other than the results are kept.
+     */
+    @Test
+    public void results() throws IOException {
+        String[] lines = analyse(0);
+
+        assertEquals(INPUT.length + 1, lines.length);
+        assertEquals("", lines[INPUT.length]);
+
+        assertTrue(lines[0], lines[0].startsWith(
+            "6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - bm Ra8#; id \"mate\"; acd "));
+        assertTrue(lines[0], lines[0].endsWith(" pm Ra8#; pv Ra8#;"));
+
+        assertEquals("", lines[1]);
+
+        assertTrue(lines[2], lines[2].startsWith("8/4P3/8/8/8/8/k7/4K3 w - - acd "));
+        assertTrue(lines[2], lines[2].contains(" pm e8=Q; pv e8=Q "));
+
+        assertTrue(lines[3], lines[3].startsWith("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R"
+            + " w KQkq - id \"kiwi\"; c0 \"a; b\"; acd "));
+        assertFalse(lines[3], lines[3].contains("e2e4"));
+        assertFalse(lines[3], lines[3].matches(".* p[mv] .*[a-h][1-8][a-h][1-8].*"));
+
+        assertTrue(lines[4], lines[4].startsWith("4k3/8/8/8/8/8/8/4K3 b - - id \"bare\"; acd "));
+    }
+
+    /**
+     * Skipping the lines already done resumes where the output ended.
+     */
+    @Test
+    public void resume() throws IOException {
+        String[] lines = analyse(2);
+
+        assertEquals(INPUT.length - 2 + 1, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("8/4P3/8/8/8/8/k7/4K3 w - - acd "));
+        assertTrue(lines[1], lines[1].startsWith("r3k2r/"));
+        assertTrue(lines[2], lines[2].startsWith("4k3/8/8/8/8/8/8/4K3 b - - id \"bare\";"));
+    }
+}
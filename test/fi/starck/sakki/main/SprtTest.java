@@ -0,0 +1,86 @@
+package fi.starck.sakki.main;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Expected values are worked out by hand from the trinomial model
+ * with <tt>elo0 = 0</tt>, <tt>elo1 = 5</tt> and error probabilities
+ * of 5%: <tt>score0 = 0.5</tt>, <tt>score1 = 0.5071950817</tt> and
+ * bounds <tt>ln(0.05 / 0.95) = -2.9444389792</tt> and its negation.
+ *
+ * @author Tuomas Starck
+ */
+public class SprtTest {
+    private static final double EPSILON = 1e-6;
+
+    private static Sprt sprt(int wins, int draws, int losses) {
+        Sprt sprt = new Sprt(0, 5, 0.05, 0.05);
+
+        for (int i=0; i<wins; i++) sprt.add(1);
+        for (int i=0; i<draws; i++) sprt.add(0.5);
+        for (int i=0; i<losses; i++) sprt.add(0);
+
+        return sprt;
+    }
+
+    @Test
+    public void bounds() {
+        Sprt sprt = sprt(0, 0, 0);
+
+        assertEquals(-2.9444389792, sprt.getLower(), EPSILON);
+        assertEquals(2.9444389792, sprt.getUpper(), EPSILON);
+        assertEquals(0.0, sprt.llr(), 0.0);
+        assertEquals(0, sprt.decision());
+    }
+
+    /**
+     * s = 1000/1800 = 5/9, variance = 800/1800 - 25/81 = 11/81,
+     * LLR = 0.0071950817 * (10/9 - 1.0071950817) / (2 * 11/81 / 1800).
+     */
+    @Test
+    public void acceptAlternative() {
+        Sprt sprt = sprt(600, 800, 400);
+
+        assertEquals(1800, sprt.getGames());
+        assertEquals(4.9551079186, sprt.llr(), EPSILON);
+        assertEquals(1, sprt.decision());
+        assertEquals(-400 * Math.log10(0.8), sprt.elo()[0], EPSILON);
+    }
+
+    /**
+     * s = 800/1800 = 4/9, variance = 600/1800 - 16/81 = 11/81,
+     * LLR = 0.0071950817 * (8/9 - 1.0071950817) / (2 * 11/81 / 1800).
+     */
+    @Test
+    public void acceptNull() {
+        Sprt sprt = sprt(400, 800, 600);
+
+        assertEquals(-5.6412851438, sprt.llr(), EPSILON);
+        assertEquals(-1, sprt.decision());
+    }
+
+    /**
+     * s = 500/950 = 10/19, variance = 400/950 - 100/361 = 52/361,
+     * LLR = 0.0071950817 * (20/19 - 1.0071950817) / (2 * 52/361 / 950).
+     */
+    @Test
+    public void goOn() {
+        Sprt sprt = sprt(300, 400, 250);
+
+        assertEquals(1.0780478599, sprt.llr(), EPSILON);
+        assertEquals(0, sprt.decision());
+
+        /* Even results: s = 0.5, variance = 0.125 */
+        assertEquals(-0.0082830721, sprt(10, 20, 10).llr(), EPSILON);
+    }
+
+    /**
+     * Five straight wins have no variance, so half a game of each
+     * result is added: s = 5.5/6.5, variance = 5.625/6.5 - s^2.
+     */
+    @Test
+    public void oneSided() {
+        assertEquals(0.2151062706, sprt(5, 0, 0).llr(), EPSILON);
+    }
+}
@@ -0,0 +1,228 @@
+package fi.starck.sakki.tablebase;
+
+import fi.starck.sakki.board.Chess;
+import fi.starck.sakki.board.X88Backend;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Tuomas Starck
+ */
+public class TablebaseTest {
+    private static final int KING = 6;
+    private static final int QUEEN = 5;
+    private static final int PAWN = 1;
+    private static final int BLACK = 8;
+
+    /* Tables up to KPvK, generated once for all the tests */
+    private static Tablebase tablebase;
+
+    public TablebaseTest() {
+    }
+
+    private static synchronized Tablebase tablebase() throws IOException {
+        if (tablebase == null) {
+            File dir = File.createTempFile("sakki", ".tb");
+
+            dir.delete();
+            dir.mkdir();
+            dir.deleteOnExit();
+
+            Generator generator = new Generator(dir, 2);
+
+            for (String name : generator.generate("KPvK")) {
+                generator.getTablebase().file(Signature.parse(name)).deleteOnExit();
+            }
+
+            tablebase = new Tablebase(dir);
+        }
+
+        return tablebase;
+    }
+
+    /**
+     * Counts of the legal positions of a signature by their values.
+     *
+     * @return Wins, losses and draws with white to move followed by
+     * the same with black to move, and the longest win and loss.
+     */
+    private static int[] count(String name) throws IOException {
+        Tablebase tb = tablebase();
+        Signature signature = Signature.parse(name);
+        X88Backend board = new X88Backend();
+        byte[] squares = new byte[64];
+        int[] counts = new int[8];
+
+        for (int i=0; i<signature.getSize(); i++) {
+            int[] pieces = signature.squares(i);
+
+            if (!signature.isPlaceable(pieces)) continue;
+
+            boolean turn = Signature.turn(i);
+
+            board.setSquares(signature.place(pieces, squares), turn);
+            board.makeNull();
+            boolean illegal = board.inCheck();
+            board.unmake();
+
+            if (illegal) continue;
+
+            int dtm = tb.probe(squares, turn);
+            int side = turn? 0: 3;
+
+            if (Tablebase.isWin(dtm)) {
+                counts[side]++;
+                counts[6] = Math.max(counts[6], dtm);
+            }
+            else if (Tablebase.isLoss(dtm)) {
+                counts[side+1]++;
+                counts[7] = Math.max(counts[7], dtm);
+            }
+            else {
+                assertEquals(Tablebase.DRAW, dtm);
+                counts[side+2]++;
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Longest mates are the known ones: queen mates in 10 moves and
+     * rook in 16 moves.
+     */
+    @Test
+    public void longestMates() throws IOException {
+        int[] kqk = count("KQvK");
+        int[] krk = count("KRvK");
+
+        assertEquals(19, kqk[6]);
+        assertEquals(20, kqk[7]);
+        assertEquals(31, krk[6]);
+        assertEquals(32, krk[7]);
+    }
+
+    /**
+     * Of the 163328 legal king and pawn positions with white to move,
+     * 124960 are won; with black to move, 97604 of 168024 are lost.
+     */
+    @Test
+    public void kingAndPawn() throws IOException {
+        int[] kpk = count("KPvK");
+
+        assertEquals(124960, kpk[0]);
+        assertEquals(0, kpk[1]);
+        assertEquals(38368, kpk[2]);
+        assertEquals(0, kpk[3]);
+        assertEquals(97604, kpk[4]);
+        assertEquals(70420, kpk[5]);
+    }
+
+    /**
+     * Values are read back as written, also when runs are cut at the
+     * ends of blocks and are longer than fit in one run.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] values = new byte[3 * Tablebase.BLOCK + 17];
+        Random random = new Random(34);
+
+        for (int i=0; i<values.length; i++) {
+            if (i < Tablebase.BLOCK / 2) {
+                values[i] = (byte) Tablebase.DRAW;
+            }
+            else if (i < 2 * Tablebase.BLOCK + 100) {
+                values[i] = (byte) (i / 700);
+            }
+            else {
+                values[i] = (byte) random.nextInt(4);
+            }
+        }
+
+        File file = File.createTempFile("sakki", Tablebase.SUFFIX);
+
+        file.deleteOnExit();
+        Tablebase.write(file, values);
+
+        MappedByteBuffer table = Tablebase.map(file);
+
+        assertEquals(Tablebase.MAGIC, table.getInt(0));
+        assertEquals(values.length, table.getInt(4));
+
+        for (int i=0; i<values.length; i++) {
+            assertEquals("index " + i, values[i] & 0xff, Tablebase.read(table, i));
+        }
+    }
+
+    /**
+     * Positions from either side's point of view are found.
+     */
+    @Test
+    public void probe() throws IOException {
+        Tablebase tb = tablebase();
+
+        assertTrue(Tablebase.isWin(tb.probe(new Chess("8/8/8/8/4k3/8/7Q/K7 w - - 0 1"))));
+        assertEquals(1, tb.probe(new Chess("k7/8/1K6/8/8/8/7Q/8 w - - 0 1")));
+        assertEquals(0, tb.probe(new Chess("k7/1Q6/1K6/8/8/8/8/8 b - - 0 1")));
+        assertEquals(1, tb.probe(new Chess("1q6/8/8/8/8/6k1/8/7K b - - 0 1")));
+        assertEquals(Tablebase.DRAW, tb.probe(new Chess("8/8/8/8/8/8/8/K1k5 w - - 0 1")));
+        assertEquals(Tablebase.DRAW, tb.probe(new Chess("k7/2Q5/1K6/8/8/8/8/8 b - - 0 1")));
+    }
+
+    /**
+     * Castling rights, en passant, too many pieces and missing tables
+     * are not covered.
+     */
+    @Test
+    public void uncovered() throws IOException {
+        Tablebase tb = tablebase();
+
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1")));
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1")));
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/8/8/8/8/RQ2K3 w - - 0 1")));
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/8/8/8/8/RR2K1B1 w - - 0 1")));
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/8/8/8/8/2BNK3 w - - 0 1")));
+        assertEquals(Tablebase.NONE, tb.probe(new Chess("4k3/8/8/3pP3/8/8/8/4K3 w - - 0 1")));
+    }
+
+    /**
+     * Positions which cannot arise in a game have no value of their
+     * own: they are stored as draws, or not covered at all if their
+     * material has no table.
+     */
+    @Test
+    public void illegal() throws IOException {
+        Tablebase tb = tablebase();
+        byte[] squares = new byte[64];
+
+        /* Side not to move is in check */
+        squares[0] = KING | BLACK;
+        squares[18] = QUEEN;
+        squares[63] = KING;
+        assertEquals(Tablebase.DRAW, tb.probe(squares, true));
+        assertTrue(Tablebase.isLoss(tb.probe(squares, false)));
+
+        /* Pawn on the last rank */
+        squares[18] = 0;
+        squares[7] = PAWN;
+        assertEquals(Tablebase.DRAW, tb.probe(squares, true));
+
+        /* Kings next to each other */
+        squares[7] = QUEEN;
+        squares[63] = 0;
+        squares[1] = KING;
+        assertEquals(Tablebase.DRAW, tb.probe(squares, false));
+
+        /* Missing or extra king */
+        squares[1] = 0;
+        assertEquals(Tablebase.NONE, tb.probe(squares, true));
+        squares[1] = KING;
+        squares[63] = KING;
+        assertEquals(Tablebase.NONE, tb.probe(squares, true));
+    }
+}